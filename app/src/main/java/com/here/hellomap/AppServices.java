@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Process-wide owner of the executors and the session journal. An activity is recreated on
+ * rotation while work it submitted is still running, so these outlive it and are never shut down:
+ * every file in the app's storage is written on the one I/O thread, one save after another.
+ */
+public final class AppServices {
+
+    private static AppServices instance;
+
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final ForkJoinPool computePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    // Only touched on ioExecutor.
+    private SessionJournal sessionJournal;
+
+    private AppServices() {
+    }
+
+    public static synchronized AppServices get() {
+        if (instance == null) {
+            instance = new AppServices();
+        }
+        return instance;
+    }
+
+    /**
+     * Single thread for file access, tasks run in submission order.
+     */
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Pool for CPU-bound work such as route geometry and engine creation.
+     */
+    public ForkJoinPool getComputePool() {
+        return computePool;
+    }
+
+    /**
+     * Returns the journal, opening it on first use. A recreated activity gets the instance
+     * the previous one wrote to. Must be called on the I/O executor.
+     */
+    public SessionJournal getSessionJournal(File file) throws IOException {
+        if (sessionJournal == null) {
+            sessionJournal = SessionJournal.open(file);
+        }
+        return sessionJournal;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates many-to-many route matrices, e.g. ETAs from every truck to every open job, on top of
+ * a single route {@link RouteComparator.Router}, the routing engine or a {@link StubRouter}.
+ * At most maxConcurrentRequests routes are in flight, the next cell is only requested when a running
+ * one completes, so a large batch never floods the engine.
+ * Must be used from the main thread, where the router delivers its callbacks.
+ */
+public class BatchRouter {
+
+    public interface Listener {
+        /**
+         * Called for every finished cell, failed ones included.
+         */
+        void onCellCompleted(RouteMatrix matrix, int origin, int destination);
+
+        void onBatchCompleted(RouteMatrix matrix);
+    }
+
+    private final RouteComparator.Router router;
+    private final int maxConcurrentRequests;
+    private final Metrics.Timer requestTimer;
+
+    public BatchRouter(RouteComparator.Router router, int maxConcurrentRequests, Metrics metrics) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed in flight.");
+        }
+        this.router = router;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requestTimer = metrics.timer("route.batchRequest");
+    }
+
+    /**
+     * Starts a batch and returns its matrix right away, cells are filled in as routes arrive.
+     */
+    public Batch calculate(List<GeoCoordinates> origins, List<GeoCoordinates> destinations,
+                           RouteComparator.Profile profile, Listener listener) {
+        Batch batch = new Batch(origins, destinations, profile, listener);
+        batch.dispatch();
+        return batch;
+    }
+
+    public class Batch {
+        private final List<Waypoint> origins;
+        private final List<Waypoint> destinations;
+        private final RouteComparator.Profile profile;
+        private final Listener listener;
+        private final RouteMatrix matrix;
+
+        private int nextCell;
+        private int inFlightCount;
+        private boolean cancelled;
+        private boolean dispatching;
+        private boolean completed;
+
+        Batch(List<GeoCoordinates> origins, List<GeoCoordinates> destinations, RouteComparator.Profile profile,
+              Listener listener) {
+            this.origins = toWaypoints(origins);
+            this.destinations = toWaypoints(destinations);
+            this.profile = profile;
+            this.listener = listener;
+            this.matrix = new RouteMatrix(origins.size(), destinations.size());
+        }
+
+        public RouteMatrix getMatrix() {
+            return matrix;
+        }
+
+        /**
+         * Stops requesting further cells, routes already in flight still fill in their cells.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void dispatch() {
+            // A router that answers right away calls back into here, the running loop picks up the free slot.
+            if (dispatching) {
+                return;
+            }
+            dispatching = true;
+            int cellCount = matrix.getOriginCount() * matrix.getDestinationCount();
+            while (!cancelled && inFlightCount < maxConcurrentRequests && nextCell < cellCount) {
+                request(nextCell++);
+            }
+            dispatching = false;
+            if (!completed && inFlightCount == 0 && (cancelled || nextCell == cellCount)) {
+                completed = true;
+                listener.onBatchCompleted(matrix);
+            }
+        }
+
+        private void request(final int cell) {
+            final int origin = cell / matrix.getDestinationCount();
+            final int destination = cell % matrix.getDestinationCount();
+            List<Waypoint> waypoints = new ArrayList<>(2);
+            waypoints.add(origins.get(origin));
+            waypoints.add(destinations.get(destination));
+
+            inFlightCount++;
+            final long startNanos = requestTimer.start();
+            router.calculate(waypoints, profile, 0, new RouteComparator.Router.Callback() {
+                @Override
+                public void onCalculated(@Nullable RoutingError routingError, List<RouteComparator.Candidate> candidates) {
+                    requestTimer.stop(startNanos);
+                    inFlightCount--;
+                    if (routingError == null && candidates != null && !candidates.isEmpty()) {
+                        RouteComparator.Candidate route = candidates.get(0);
+                        matrix.setRoute(cell, route.durationInSeconds, route.lengthInMeters);
+                    } else {
+                        matrix.setError(cell, routingError != null ? routingError : RoutingError.NO_ROUTE_FOUND);
+                    }
+                    listener.onCellCompleted(matrix, origin, destination);
+                    dispatch();
+                }
+            });
+        }
+    }
+
+    private static List<Waypoint> toWaypoints(List<GeoCoordinates> coordinates) {
+        List<Waypoint> waypoints = new ArrayList<>(coordinates.size());
+        for (GeoCoordinates coordinate : coordinates) {
+            waypoints.add(new Waypoint(coordinate));
+        }
+        return waypoints;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.view.Choreographer;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.mapview.MapCamera;
+
+/**
+ * Moves the camera smoothly, frame by frame. Fly-to animations follow the great circle between
+ * the two targets and pull the camera back on the way, follow mode keeps the camera on a moving
+ * vehicle by predicting it between position fixes. A new animation starts where the running one is,
+ * requests within one frame collapse into the last one. Nothing is allocated per frame.
+ * Main thread only.
+ */
+public class CameraAnimator implements Choreographer.FrameCallback {
+
+    private static final long FRAME_INTERVAL_NANOS = 16_666_667;
+    private static final int EASING_TABLE_SIZE = 256;
+    private static final double EARTH_RADIUS_IN_METERS = 6_371_000;
+    // Follow mode closes this share of the gap to the vehicle per time constant.
+    private static final double FOLLOW_TIME_CONSTANT_SECONDS = 0.25;
+    // Fixes are extrapolated at most this far, a vehicle that stops reporting should not run away.
+    private static final double MAX_PREDICTION_SECONDS = 1.5;
+    // A fly-to pulls back by up to this share of the distance covered, so the way is visible.
+    private static final double FLY_ZOOM_OUT_RATIO = 0.5;
+    private static final double MAX_FLY_DISTANCE_IN_METERS = 5_000_000;
+
+    private static final float[] EASE_IN_OUT = createEaseInOutTable();
+    // Bearings and tilts boxed once in tenths of a degree, OrientationUpdate only takes Double.
+    private static final Double[] DEGREES = createDegreeTable();
+
+    /**
+     * Source of frame times, the display in the app and a manual clock in a headless harness.
+     */
+    public interface FrameClock {
+        void postFrameCallback(Choreographer.FrameCallback callback);
+
+        void removeFrameCallback(Choreographer.FrameCallback callback);
+    }
+
+    /**
+     * Receives the camera position of every frame.
+     */
+    public interface CameraTarget {
+        void moveTo(double latitude, double longitude, double bearing, double tilt, double distanceInMeters);
+    }
+
+    private final FrameClock frameClock;
+    private final CameraTarget cameraTarget;
+    private final Metrics.Timer frameTimer;
+    private final Metrics.Counter frameCounter;
+    private final Metrics.Counter droppedFrameCounter;
+    private boolean frameRequested;
+    private long lastFrameTimeNanos;
+
+    // Current camera, as last passed to the target.
+    private double latitude;
+    private double longitude;
+    private double bearing;
+    private double tilt;
+    private double distance;
+    private boolean positioned;
+
+    private static final int MODE_IDLE = 0;
+    private static final int MODE_FLY = 1;
+    private static final int MODE_FOLLOW = 2;
+    private int mode = MODE_IDLE;
+
+    // Fly-to, set when requested and started with the next frame.
+    private boolean flightPending;
+    private long flightStartNanos;
+    private long flightDurationNanos;
+    private double toLatitude;
+    private double toLongitude;
+    private double toBearing;
+    private double toTilt;
+    private double toDistance;
+    private double fromBearing;
+    private double fromTilt;
+    private double fromDistance;
+    private double zoomOut;
+    // Great circle between start and end as unit vectors, with the angle between them.
+    private double fromX;
+    private double fromY;
+    private double fromZ;
+    private double toX;
+    private double toY;
+    private double toZ;
+    private double angle;
+    private double sinAngle;
+
+    // Follow mode, last two fixes for dead reckoning.
+    private double fixLatitude;
+    private double fixLongitude;
+    private double fixBearing;
+    private long fixTimeNanos;
+    private double latitudeRate;
+    private double longitudeRate;
+    private boolean hasFix;
+
+    public CameraAnimator(FrameClock frameClock, CameraTarget cameraTarget, Metrics metrics) {
+        this.frameClock = frameClock;
+        this.cameraTarget = cameraTarget;
+        this.frameTimer = metrics.timer("camera.frame");
+        this.frameCounter = metrics.counter("camera.frames");
+        this.droppedFrameCounter = metrics.counter("camera.droppedFrames");
+    }
+
+    /**
+     * Tells the animator where the camera is, needed before the first animation.
+     */
+    public void setPosition(double latitude, double longitude, double bearing, double tilt, double distanceInMeters) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.bearing = bearing;
+        this.tilt = tilt;
+        this.distance = distanceInMeters;
+        positioned = true;
+    }
+
+    public void flyTo(double latitude, double longitude, long durationMillis) {
+        flyTo(latitude, longitude, flightPending ? toBearing : bearing, flightPending ? toTilt : tilt,
+                flightPending ? toDistance : distance, durationMillis);
+    }
+
+    public void flyTo(double latitude, double longitude, double bearing, double tilt, double distanceInMeters,
+                      long durationMillis) {
+        toLatitude = latitude;
+        toLongitude = longitude;
+        toBearing = bearing;
+        toTilt = tilt;
+        toDistance = distanceInMeters;
+        flightDurationNanos = Math.max(1, durationMillis) * 1_000_000;
+        flightPending = true;
+        mode = MODE_FLY;
+        hasFix = false;
+        requestFrame();
+    }
+
+    /**
+     * Feeds a position fix of the vehicle to follow, switching to follow mode.
+     *
+     * @param bearing heading of the vehicle in degrees, NaN keeps the current camera bearing.
+     */
+    public void follow(double latitude, double longitude, double bearing, long fixTimeNanos) {
+        if (hasFix && fixTimeNanos > this.fixTimeNanos) {
+            double seconds = (fixTimeNanos - this.fixTimeNanos) / 1e9;
+            latitudeRate = (latitude - fixLatitude) / seconds;
+            longitudeRate = wrapLongitude(longitude - fixLongitude) / seconds;
+        } else {
+            latitudeRate = 0;
+            longitudeRate = 0;
+        }
+        fixLatitude = latitude;
+        fixLongitude = longitude;
+        fixBearing = Double.isNaN(bearing) ? this.bearing : bearing;
+        this.fixTimeNanos = fixTimeNanos;
+        hasFix = true;
+        flightPending = false;
+        if (!positioned) {
+            setPosition(latitude, longitude, fixBearing, tilt, distance);
+        }
+        mode = MODE_FOLLOW;
+        requestFrame();
+    }
+
+    /**
+     * Stops animating and leaves the camera where it is.
+     */
+    public void cancel() {
+        mode = MODE_IDLE;
+        flightPending = false;
+        hasFix = false;
+        if (frameRequested) {
+            frameClock.removeFrameCallback(this);
+            frameRequested = false;
+        }
+    }
+
+    public boolean isAnimating() {
+        return mode != MODE_IDLE;
+    }
+
+    public boolean isFollowing() {
+        return mode == MODE_FOLLOW;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameRequested = false;
+        long startNanos = frameTimer.start();
+        double frameSeconds = FRAME_INTERVAL_NANOS / 1e9;
+        if (lastFrameTimeNanos != 0) {
+            // A long stall should not make follow mode jump.
+            frameSeconds = Math.min(0.25, (frameTimeNanos - lastFrameTimeNanos) / 1e9);
+            // Frames that are more than half an interval late mean at least one vsync was missed.
+            long missed = (frameTimeNanos - lastFrameTimeNanos + FRAME_INTERVAL_NANOS / 2) / FRAME_INTERVAL_NANOS - 1;
+            if (missed > 0) {
+                droppedFrameCounter.add(missed);
+            }
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        frameCounter.increment();
+
+        if (mode == MODE_IDLE) {
+            lastFrameTimeNanos = 0;
+            frameTimer.stop(startNanos);
+            return;
+        }
+        if (mode == MODE_FLY) {
+            if (flightPending) {
+                startFlight(frameTimeNanos);
+            }
+            // Ends the flight on its last frame, which still has to move the camera.
+            updateFlight(frameTimeNanos);
+        } else {
+            updateFollow(frameTimeNanos, frameSeconds);
+        }
+        cameraTarget.moveTo(latitude, longitude, bearing, tilt, distance);
+        if (mode != MODE_IDLE) {
+            requestFrame();
+        } else {
+            lastFrameTimeNanos = 0;
+        }
+        frameTimer.stop(startNanos);
+    }
+
+    private void startFlight(long frameTimeNanos) {
+        flightPending = false;
+        if (!positioned) {
+            setPosition(toLatitude, toLongitude, toBearing, toTilt, toDistance);
+        }
+        flightStartNanos = frameTimeNanos;
+        fromBearing = bearing;
+        fromTilt = tilt;
+        fromDistance = distance;
+
+        double fromLatitude = Math.toRadians(latitude);
+        double fromLongitude = Math.toRadians(longitude);
+        double targetLatitude = Math.toRadians(toLatitude);
+        double targetLongitude = Math.toRadians(toLongitude);
+        fromX = Math.cos(fromLatitude) * Math.cos(fromLongitude);
+        fromY = Math.cos(fromLatitude) * Math.sin(fromLongitude);
+        fromZ = Math.sin(fromLatitude);
+        toX = Math.cos(targetLatitude) * Math.cos(targetLongitude);
+        toY = Math.cos(targetLatitude) * Math.sin(targetLongitude);
+        toZ = Math.sin(targetLatitude);
+        angle = Math.acos(Math.max(-1, Math.min(1, fromX * toX + fromY * toY + fromZ * toZ)));
+        sinAngle = Math.sin(angle);
+        double flightDistance = angle * EARTH_RADIUS_IN_METERS;
+        zoomOut = Math.min(MAX_FLY_DISTANCE_IN_METERS, flightDistance * FLY_ZOOM_OUT_RATIO);
+    }
+
+    private void updateFlight(long frameTimeNanos) {
+        double progress = Math.min(1, (double) (frameTimeNanos - flightStartNanos) / flightDurationNanos);
+        double t = ease(progress);
+        if (progress >= 1) {
+            latitude = toLatitude;
+            longitude = toLongitude;
+        } else if (sinAngle > 1e-9) {
+            double a = Math.sin((1 - t) * angle) / sinAngle;
+            double b = Math.sin(t * angle) / sinAngle;
+            double x = a * fromX + b * toX;
+            double y = a * fromY + b * toY;
+            double z = a * fromZ + b * toZ;
+            latitude = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+            longitude = Math.toDegrees(Math.atan2(y, x));
+        }
+        bearing = fromBearing + shortestTurn(fromBearing, toBearing) * t;
+        tilt = fromTilt + (toTilt - fromTilt) * t;
+        // The pull back peaks halfway and is gone at both ends.
+        distance = fromDistance + (toDistance - fromDistance) * t + zoomOut * Math.sin(Math.PI * t);
+        if (progress >= 1) {
+            bearing = normalizeBearing(toBearing);
+            mode = MODE_IDLE;
+        }
+    }
+
+    private void updateFollow(long frameTimeNanos, double frameSeconds) {
+        double predictionSeconds = Math.min(MAX_PREDICTION_SECONDS, Math.max(0, (frameTimeNanos - fixTimeNanos) / 1e9));
+        double targetLatitude = fixLatitude + latitudeRate * predictionSeconds;
+        double targetLongitude = fixLongitude + longitudeRate * predictionSeconds;
+
+        // Frame rate independent smoothing towards the predicted position.
+        double blend = 1 - Math.exp(-frameSeconds / FOLLOW_TIME_CONSTANT_SECONDS);
+        latitude += (targetLatitude - latitude) * blend;
+        longitude = wrapLongitude(longitude + wrapLongitude(targetLongitude - longitude) * blend);
+        bearing = normalizeBearing(bearing + shortestTurn(bearing, fixBearing) * blend);
+    }
+
+    private void requestFrame() {
+        if (!frameRequested) {
+            frameRequested = true;
+            frameClock.postFrameCallback(this);
+        }
+    }
+
+    // Table lookup with linear interpolation between entries.
+    static double ease(double progress) {
+        if (progress <= 0) {
+            return 0;
+        }
+        if (progress >= 1) {
+            return 1;
+        }
+        double position = progress * EASING_TABLE_SIZE;
+        int index = (int) position;
+        double fraction = position - index;
+        return EASE_IN_OUT[index] + (EASE_IN_OUT[index + 1] - EASE_IN_OUT[index]) * fraction;
+    }
+
+    private static float[] createEaseInOutTable() {
+        float[] table = new float[EASING_TABLE_SIZE + 1];
+        for (int i = 0; i <= EASING_TABLE_SIZE; i++) {
+            double t = (double) i / EASING_TABLE_SIZE;
+            // Cubic ease in and out.
+            table[i] = (float) (t < 0.5 ? 4 * t * t * t : 1 - Math.pow(-2 * t + 2, 3) / 2);
+        }
+        return table;
+    }
+
+    private static Double[] createDegreeTable() {
+        Double[] table = new Double[3600];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = i / 10.0;
+        }
+        return table;
+    }
+
+    private static double shortestTurn(double from, double to) {
+        double turn = (to - from) % 360;
+        if (turn > 180) {
+            turn -= 360;
+        } else if (turn < -180) {
+            turn += 360;
+        }
+        return turn;
+    }
+
+    private static double normalizeBearing(double bearing) {
+        bearing %= 360;
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude > 180) {
+            return longitude - 360;
+        }
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+
+    public static FrameClock choreographerClock() {
+        return new FrameClock() {
+            @Override
+            public void postFrameCallback(Choreographer.FrameCallback callback) {
+                Choreographer.getInstance().postFrameCallback(callback);
+            }
+
+            @Override
+            public void removeFrameCallback(Choreographer.FrameCallback callback) {
+                Choreographer.getInstance().removeFrameCallback(callback);
+            }
+        };
+    }
+
+    /**
+     * Moves a map camera, reusing the coordinates and orientation passed to it.
+     */
+    public static CameraTarget mapCameraTarget(final MapCamera camera) {
+        return new CameraTarget() {
+            private final GeoCoordinates coordinates = new GeoCoordinates(0, 0);
+            private final MapCamera.OrientationUpdate orientation = new MapCamera.OrientationUpdate();
+
+            @Override
+            public void moveTo(double latitude, double longitude, double bearing, double tilt, double distanceInMeters) {
+                coordinates.latitude = latitude;
+                coordinates.longitude = longitude;
+                orientation.bearing = DEGREES[(int) Math.round(normalizeBearing(bearing) * 10) % DEGREES.length];
+                orientation.tilt = DEGREES[(int) Math.round(Math.max(0, tilt) * 10) % DEGREES.length];
+                camera.lookAt(coordinates, orientation, distanceInMeters);
+            }
+        };
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import android.os.SystemClock;
+
+/**
+ * Source of monotonic time, replaced in tests so expiry and latency do not depend on the wall clock.
+ */
+public interface Clock {
+
+    Clock ELAPSED_REALTIME = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /**
+     * Milliseconds since boot, see {@link SystemClock#elapsedRealtime()}.
+     */
+    long elapsedRealtime();
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable list of coordinates packed into one {lat0, lon0, lat1, lon1, ...} array.
+ * Costs 16 bytes per vertex instead of a GeoCoordinates object each. Index based access and
+ * {@link #forEach(Visitor)} iterate without allocating. Slices are views that share the array.
+ */
+public class CoordinateBuffer {
+
+    private static final double EARTH_RADIUS_IN_METERS = 6_371_000;
+
+    private double[] latLon;
+    // Offset and size are counted in vertices, not array slots.
+    private final int offset;
+    private int size;
+    private final boolean isSlice;
+
+    public interface Visitor {
+        void visit(int index, double latitude, double longitude);
+    }
+
+    public CoordinateBuffer() {
+        this(16);
+    }
+
+    public CoordinateBuffer(int capacity) {
+        this(new double[Math.max(1, capacity) * 2], 0, 0, false);
+    }
+
+    private CoordinateBuffer(double[] latLon, int offset, int size, boolean isSlice) {
+        this.latLon = latLon;
+        this.offset = offset;
+        this.size = size;
+        this.isSlice = isSlice;
+    }
+
+    /**
+     * Wraps a packed array without copying it.
+     */
+    public static CoordinateBuffer wrap(double[] latLon) {
+        return new CoordinateBuffer(latLon, 0, latLon.length / 2, false);
+    }
+
+    public static CoordinateBuffer fromGeoCoordinates(List<GeoCoordinates> coordinates) {
+        CoordinateBuffer buffer = new CoordinateBuffer(coordinates.size());
+        for (int i = 0; i < coordinates.size(); i++) {
+            GeoCoordinates coordinate = coordinates.get(i);
+            buffer.add(coordinate.latitude, coordinate.longitude);
+        }
+        return buffer;
+    }
+
+    public void add(double latitude, double longitude) {
+        if (isSlice) {
+            throw new UnsupportedOperationException("Slices are read-only.");
+        }
+        if (size * 2 == latLon.length) {
+            latLon = Arrays.copyOf(latLon, latLon.length * 2);
+        }
+        latLon[size * 2] = latitude;
+        latLon[size * 2 + 1] = longitude;
+        size++;
+    }
+
+    public void clear() {
+        if (isSlice) {
+            throw new UnsupportedOperationException("Slices are read-only.");
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getLatitude(int index) {
+        return latLon[(offset + index) * 2];
+    }
+
+    public double getLongitude(int index) {
+        return latLon[(offset + index) * 2 + 1];
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < size; i++) {
+            int slot = (offset + i) * 2;
+            visitor.visit(i, latLon[slot], latLon[slot + 1]);
+        }
+    }
+
+    /**
+     * Returns a read-only view of the vertices from (inclusive) to (exclusive).
+     * The view reflects the vertices at the time of slicing, later growth of this buffer may detach it.
+     */
+    public CoordinateBuffer slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Slice " + from + ".." + to + " of " + size);
+        }
+        return new CoordinateBuffer(latLon, offset + from, to - from, true);
+    }
+
+    /**
+     * Writes {south, west, north, east} into the given array, which lets callers reuse it.
+     */
+    public void getBoundingBox(double[] southWestNorthEast) {
+        double south = Double.POSITIVE_INFINITY;
+        double west = Double.POSITIVE_INFINITY;
+        double north = Double.NEGATIVE_INFINITY;
+        double east = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            int slot = (offset + i) * 2;
+            south = Math.min(south, latLon[slot]);
+            north = Math.max(north, latLon[slot]);
+            west = Math.min(west, latLon[slot + 1]);
+            east = Math.max(east, latLon[slot + 1]);
+        }
+        southWestNorthEast[0] = south;
+        southWestNorthEast[1] = west;
+        southWestNorthEast[2] = north;
+        southWestNorthEast[3] = east;
+    }
+
+    /**
+     * Great circle length of the path through all vertices.
+     */
+    public double getLengthInMeters() {
+        double length = 0;
+        for (int i = 1; i < size; i++) {
+            length += distanceInMeters(getLatitude(i - 1), getLongitude(i - 1), getLatitude(i), getLongitude(i));
+        }
+        return length;
+    }
+
+    /**
+     * Returns a packed copy of the vertices.
+     */
+    public double[] toArray() {
+        return Arrays.copyOfRange(latLon, offset * 2, (offset + size) * 2);
+    }
+
+    /**
+     * Boxes the vertices for SDK calls such as the GeoPolyline constructor.
+     */
+    public List<GeoCoordinates> toGeoCoordinates() {
+        List<GeoCoordinates> coordinates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            coordinates.add(new GeoCoordinates(getLatitude(i), getLongitude(i)));
+        }
+        return coordinates;
+    }
+
+    public static double distanceInMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_IN_METERS * Math.asin(Math.sqrt(a));
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.Arrays;
+
+/**
+ * Works out which map tiles lie within a corridor around a route, so map data along it can be
+ * downloaded or warmed ahead of time. Tiles are Web Mercator tiles, identified by a packed key that
+ * converts to a quadkey, and listed in the order the route reaches them.
+ * The route is assumed not to cross the antimeridian.
+ */
+public final class CorridorTilePlanner {
+
+    public static final int MAX_ZOOM = 22;
+
+    private static final double EARTH_CIRCUMFERENCE_IN_METERS = 40_075_016.686;
+    private static final double MAX_LATITUDE = 85.05112878;
+    // Route vertices are thinned per zoom level to this fraction of a tile and the corridor is widened
+    // by the same amount, so a tile may be included that is up to this much farther than the buffer.
+    private static final double SIMPLIFICATION_TOLERANCE_IN_TILES = 1.0 / 32;
+
+    private CorridorTilePlanner() {
+    }
+
+    /**
+     * Tiles of a corridor per zoom level, each level in travel order.
+     */
+    public static class Plan {
+        private final int minZoom;
+        private final long[][] tiles;
+        private final double[][] distances;
+
+        Plan(int minZoom, long[][] tiles, double[][] distances) {
+            this.minZoom = minZoom;
+            this.tiles = tiles;
+            this.distances = distances;
+        }
+
+        public int getMinZoom() {
+            return minZoom;
+        }
+
+        public int getMaxZoom() {
+            return minZoom + tiles.length - 1;
+        }
+
+        /**
+         * Returns the tile keys of a zoom level, the array is shared, do not modify it.
+         */
+        public long[] getTiles(int zoom) {
+            return tiles[zoom - minZoom];
+        }
+
+        /**
+         * Returns the distance along the route in meters at which each tile of a zoom level is first needed.
+         */
+        public double[] getDistancesAlongRoute(int zoom) {
+            return distances[zoom - minZoom];
+        }
+
+        public int getTileCount() {
+            int count = 0;
+            for (long[] level : tiles) {
+                count += level.length;
+            }
+            return count;
+        }
+
+        /**
+         * Returns the tiles of all zoom levels merged by the distance at which they are first needed,
+         * for streaming downloads along the route. Lower zoom levels go first when distances tie.
+         */
+        public long[] getTilesInTravelOrder() {
+            long[] merged = new long[getTileCount()];
+            int[] next = new int[tiles.length];
+            for (int i = 0; i < merged.length; i++) {
+                int best = -1;
+                for (int level = 0; level < tiles.length; level++) {
+                    if (next[level] < tiles[level].length && (best == -1
+                            || distances[level][next[level]] < distances[best][next[best]])) {
+                        best = level;
+                    }
+                }
+                merged[i] = tiles[best][next[best]++];
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Plans the tiles of every zoom level from minZoom to maxZoom.
+     *
+     * @param bufferInMeters half width of the corridor, a tile is included if any part of it is this close to the route,
+     *                       give or take 1/32 of a tile.
+     */
+    public static Plan plan(CoordinateBuffer route, double bufferInMeters, int minZoom, int maxZoom) {
+        if (minZoom < 0 || maxZoom > MAX_ZOOM || minZoom > maxZoom || bufferInMeters < 0) {
+            throw new IllegalArgumentException("Invalid corridor parameters.");
+        }
+        // Project once, every zoom level works on the same normalized Mercator coordinates.
+        int vertexCount = route.size();
+        double[] x = new double[vertexCount];
+        double[] y = new double[vertexCount];
+        double[] bufferInUnits = new double[vertexCount];
+        double[] distanceAlong = new double[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            double latitude = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, route.getLatitude(i)));
+            double sinLatitude = Math.sin(Math.toRadians(latitude));
+            x[i] = route.getLongitude(i) / 360 + 0.5;
+            y[i] = 0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI);
+            // Mercator stretches distances by 1 / cos(latitude), the buffer has to stretch with them.
+            bufferInUnits[i] = bufferInMeters / (EARTH_CIRCUMFERENCE_IN_METERS * Math.cos(Math.toRadians(latitude)));
+            if (i > 0) {
+                distanceAlong[i] = distanceAlong[i - 1] + CoordinateBuffer.distanceInMeters(
+                        route.getLatitude(i - 1), route.getLongitude(i - 1), route.getLatitude(i), route.getLongitude(i));
+            }
+        }
+
+        long[][] tiles = new long[maxZoom - minZoom + 1][];
+        double[][] distances = new double[tiles.length][];
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            Level level = new Level(zoom);
+            // Routes have far more vertices than tiles at most zoom levels, testing the tiles around
+            // every short segment would mostly hit tiles that are already in the corridor.
+            double tolerance = SIMPLIFICATION_TOLERANCE_IN_TILES / level.tilesPerSide;
+            int[] kept = simplify(x, y, tolerance);
+            if (kept.length == 1) {
+                level.addSegment(x[0], y[0], x[0], y[0], bufferInUnits[0], 0, 0);
+            }
+            for (int k = 1; k < kept.length; k++) {
+                int from = kept[k - 1];
+                int to = kept[k];
+                level.addSegment(x[from], y[from], x[to], y[to],
+                        maxBuffer(bufferInUnits, from, to) + tolerance, distanceAlong[from], distanceAlong[to]);
+            }
+            tiles[zoom - minZoom] = Arrays.copyOf(level.tiles, level.size);
+            distances[zoom - minZoom] = Arrays.copyOf(level.distances, level.size);
+        }
+        return new Plan(minZoom, tiles, distances);
+    }
+
+    // The buffer grows towards the poles, a segment uses the widest of its vertices.
+    private static double maxBuffer(double[] bufferInUnits, int from, int to) {
+        double max = 0;
+        for (int i = from; i <= to; i++) {
+            max = Math.max(max, bufferInUnits[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Douglas-Peucker on the projected vertices, returns the indices of the vertices kept.
+     */
+    private static int[] simplify(double[] x, double[] y, double tolerance) {
+        int vertexCount = x.length;
+        if (vertexCount < 3) {
+            int[] all = new int[vertexCount];
+            for (int i = 0; i < vertexCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        double toleranceSquared = tolerance * tolerance;
+        boolean[] keep = new boolean[vertexCount];
+        keep[0] = true;
+        keep[vertexCount - 1] = true;
+        int keptCount = 2;
+
+        int[] stack = new int[64];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = vertexCount - 1;
+        while (stackSize > 0) {
+            int last = stack[--stackSize];
+            int first = stack[--stackSize];
+            double maxDistanceSquared = 0;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distanceSquared = Level.pointToSegment(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distanceSquared > maxDistanceSquared) {
+                    maxDistanceSquared = distanceSquared;
+                    farthest = i;
+                }
+            }
+            if (farthest != -1 && maxDistanceSquared > toleranceSquared) {
+                keep[farthest] = true;
+                keptCount++;
+                if (stackSize + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[stackSize++] = first;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = last;
+            }
+        }
+
+        int[] kept = new int[keptCount];
+        int count = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            if (keep[i]) {
+                kept[count++] = i;
+            }
+        }
+        return kept;
+    }
+
+    public static long createKey(int zoom, int x, int y) {
+        return ((long) zoom << 48) | ((long) x << 24) | y;
+    }
+
+    public static int getZoom(long key) {
+        return (int) (key >>> 48);
+    }
+
+    public static int getX(long key) {
+        return (int) (key >>> 24) & 0xFFFFFF;
+    }
+
+    public static int getY(long key) {
+        return (int) key & 0xFFFFFF;
+    }
+
+    public static String toQuadkey(long key) {
+        int zoom = getZoom(key);
+        int x = getX(key);
+        int y = getY(key);
+        char[] quadkey = new char[zoom];
+        for (int i = 0; i < zoom; i++) {
+            int mask = 1 << (zoom - 1 - i);
+            quadkey[i] = (char) ('0' + ((x & mask) != 0 ? 1 : 0) + ((y & mask) != 0 ? 2 : 0));
+        }
+        return new String(quadkey);
+    }
+
+    // Collects the tiles of one zoom level, segment by segment in route order.
+    private static class Level {
+        final int zoom;
+        final int tilesPerSide;
+        final LongSet seen = new LongSet();
+        long[] tiles = new long[64];
+        double[] distances = new double[64];
+        int size;
+        // Tiles new to the current piece, packed as (position along the piece << 32 | index) for sorting.
+        long[] order = new long[64];
+        long[] pieceTiles = new long[64];
+
+        Level(int zoom) {
+            this.zoom = zoom;
+            this.tilesPerSide = 1 << zoom;
+        }
+
+        void addSegment(double ax, double ay, double bx, double by, double buffer,
+                        double startDistance, double endDistance) {
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthInTiles = Math.sqrt(dx * dx + dy * dy) * tilesPerSide;
+            // Long segments are split so their bounding boxes stay tight. Pieces about as long as the
+            // corridor is wide keep the number of tiles tested per unit of route lowest.
+            double pieceLengthInTiles = Math.max(1, 2 * buffer * tilesPerSide);
+            int pieces = Math.max(1, (int) Math.ceil(lengthInTiles / pieceLengthInTiles));
+            for (int piece = 0; piece < pieces; piece++) {
+                double t0 = (double) piece / pieces;
+                double t1 = (double) (piece + 1) / pieces;
+                addPiece(ax + dx * t0, ay + dy * t0, ax + dx * t1, ay + dy * t1, buffer,
+                        startDistance + (endDistance - startDistance) * t0,
+                        startDistance + (endDistance - startDistance) * t1);
+            }
+        }
+
+        private void addPiece(double ax, double ay, double bx, double by, double buffer,
+                              double startDistance, double endDistance) {
+            // Everything in tile units from here on.
+            double n = tilesPerSide;
+            ax *= n;
+            ay *= n;
+            bx *= n;
+            by *= n;
+            buffer *= n;
+            double bufferSquared = buffer * buffer;
+            int minX = clamp((int) Math.floor(Math.min(ax, bx) - buffer));
+            int maxX = clamp((int) Math.floor(Math.max(ax, bx) + buffer));
+            int minY = clamp((int) Math.floor(Math.min(ay, by) - buffer));
+            int maxY = clamp((int) Math.floor(Math.max(ay, by) + buffer));
+
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            int newCount = 0;
+            for (int tileY = minY; tileY <= maxY; tileY++) {
+                for (int tileX = minX; tileX <= maxX; tileX++) {
+                    long key = createKey(zoom, tileX, tileY);
+                    if (seen.contains(key)
+                            || distanceSquared(ax, ay, bx, by, tileX, tileY) > bufferSquared) {
+                        continue;
+                    }
+                    seen.add(key);
+                    double t = 0;
+                    if (lengthSquared > 0) {
+                        t = ((tileX + 0.5 - ax) * dx + (tileY + 0.5 - ay) * dy) / lengthSquared;
+                        t = Math.max(0, Math.min(1, t));
+                    }
+                    if (newCount == order.length) {
+                        order = Arrays.copyOf(order, newCount * 2);
+                        pieceTiles = Arrays.copyOf(pieceTiles, newCount * 2);
+                    }
+                    order[newCount] = ((long) (t * Integer.MAX_VALUE) << 32) | newCount;
+                    pieceTiles[newCount] = key;
+                    newCount++;
+                }
+            }
+
+            Arrays.sort(order, 0, newCount);
+            if (size + newCount > tiles.length) {
+                int capacity = Math.max(size + newCount, tiles.length * 2);
+                tiles = Arrays.copyOf(tiles, capacity);
+                distances = Arrays.copyOf(distances, capacity);
+            }
+            for (int i = 0; i < newCount; i++) {
+                double t = (order[i] >>> 32) / (double) Integer.MAX_VALUE;
+                tiles[size] = pieceTiles[(int) order[i]];
+                distances[size] = startDistance + (endDistance - startDistance) * t;
+                size++;
+            }
+        }
+
+        private int clamp(int tile) {
+            return Math.max(0, Math.min(tilesPerSide - 1, tile));
+        }
+
+        // Squared distance between the segment and the unit square of a tile, zero if they touch.
+        private static double distanceSquared(double ax, double ay, double bx, double by, int tileX, int tileY) {
+            double left = tileX;
+            double top = tileY;
+            double right = tileX + 1;
+            double bottom = tileY + 1;
+            if (inside(ax, ay, left, top, right, bottom) || inside(bx, by, left, top, right, bottom)
+                    || intersects(ax, ay, bx, by, left, top, right, top)
+                    || intersects(ax, ay, bx, by, right, top, right, bottom)
+                    || intersects(ax, ay, bx, by, left, bottom, right, bottom)
+                    || intersects(ax, ay, bx, by, left, top, left, bottom)) {
+                return 0;
+            }
+            // Otherwise the closest points are an endpoint and the square, or a corner and the segment.
+            double distance = Math.min(pointToSquare(ax, ay, left, top, right, bottom),
+                    pointToSquare(bx, by, left, top, right, bottom));
+            distance = Math.min(distance, pointToSegment(left, top, ax, ay, bx, by));
+            distance = Math.min(distance, pointToSegment(right, top, ax, ay, bx, by));
+            distance = Math.min(distance, pointToSegment(left, bottom, ax, ay, bx, by));
+            return Math.min(distance, pointToSegment(right, bottom, ax, ay, bx, by));
+        }
+
+        private static boolean inside(double x, double y, double left, double top, double right, double bottom) {
+            return x >= left && x <= right && y >= top && y <= bottom;
+        }
+
+        private static boolean intersects(double ax, double ay, double bx, double by,
+                                          double cx, double cy, double dx, double dy) {
+            double d1 = cross(cx, cy, dx, dy, ax, ay);
+            double d2 = cross(cx, cy, dx, dy, bx, by);
+            double d3 = cross(ax, ay, bx, by, cx, cy);
+            double d4 = cross(ax, ay, bx, by, dx, dy);
+            return ((d1 > 0) != (d2 > 0)) && ((d3 > 0) != (d4 > 0));
+        }
+
+        private static double cross(double ax, double ay, double bx, double by, double px, double py) {
+            return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        }
+
+        private static double pointToSquare(double x, double y, double left, double top, double right, double bottom) {
+            double dx = Math.max(0, Math.max(left - x, x - right));
+            double dy = Math.max(0, Math.max(top - y, y - bottom));
+            return dx * dx + dy * dy;
+        }
+
+        private static double pointToSegment(double px, double py, double ax, double ay, double bx, double by) {
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = 0;
+            if (lengthSquared > 0) {
+                t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+            }
+            double ex = px - (ax + t * dx);
+            double ey = py - (ay + t * dy);
+            return ex * ex + ey * ey;
+        }
+    }
+
+    // Open addressing hash set of tile keys, a HashSet<Long> would box every tile tested.
+    private static class LongSet {
+        private static final long EMPTY = -1;
+
+        private long[] slots = newSlots(256);
+        private int size;
+
+        boolean contains(long key) {
+            int mask = slots.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (slots[slot] == EMPTY) {
+                    return false;
+                }
+                if (slots[slot] == key) {
+                    return true;
+                }
+            }
+        }
+
+        void add(long key) {
+            if ((size + 1) * 2 > slots.length) {
+                long[] old = slots;
+                slots = newSlots(old.length * 2);
+                size = 0;
+                for (long oldKey : old) {
+                    if (oldKey != EMPTY) {
+                        add(oldKey);
+                    }
+                }
+            }
+            int mask = slots.length - 1;
+            int slot = hash(key) & mask;
+            while (slots[slot] != EMPTY) {
+                if (slots[slot] == key) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = key;
+            size++;
+        }
+
+        private static int hash(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+
+        private static long[] newSlots(int capacity) {
+            long[] slots = new long[capacity];
+            Arrays.fill(slots, EMPTY);
+            return slots;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+/**
+ * Streaming encoder and decoder for HERE's flexible polyline format, see
+ * https://github.com/heremaps/flexible-polyline. Both directions work on primitives,
+ * vertices are never boxed on the way in or out.
+ */
+public final class FlexiblePolyline {
+
+    public static final int VERSION = 1;
+
+    public static final int THIRD_DIMENSION_ABSENT = 0;
+    public static final int THIRD_DIMENSION_LEVEL = 1;
+    public static final int THIRD_DIMENSION_ALTITUDE = 2;
+    public static final int THIRD_DIMENSION_ELEVATION = 3;
+    public static final int THIRD_DIMENSION_CUSTOM1 = 6;
+    public static final int THIRD_DIMENSION_CUSTOM2 = 7;
+
+    private static final char[] ENCODING_TABLE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int[] DECODING_TABLE = new int[128];
+
+    static {
+        java.util.Arrays.fill(DECODING_TABLE, -1);
+        for (int i = 0; i < ENCODING_TABLE.length; i++) {
+            DECODING_TABLE[ENCODING_TABLE[i]] = i;
+        }
+    }
+
+    private FlexiblePolyline() {
+    }
+
+    /**
+     * Encodes a two dimensional polyline.
+     */
+    public static String encode(CoordinateBuffer coordinates, int precision) {
+        // Most deltas of a road geometry fit into two or three characters per value.
+        StringBuilder builder = new StringBuilder(8 + coordinates.size() * 6);
+        Encoder encoder = new Encoder(builder, precision, THIRD_DIMENSION_ABSENT, 0);
+        for (int i = 0; i < coordinates.size(); i++) {
+            encoder.add(coordinates.getLatitude(i), coordinates.getLongitude(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decodes into the given buffer, third dimension values are skipped.
+     */
+    public static void decode(CharSequence encoded, CoordinateBuffer coordinates) {
+        Decoder decoder = new Decoder(encoded);
+        while (decoder.next()) {
+            coordinates.add(decoder.getLatitude(), decoder.getLongitude());
+        }
+    }
+
+    /**
+     * Appends vertices to a builder as they are added.
+     */
+    public static final class Encoder {
+        private final StringBuilder builder;
+        private final double multiplier;
+        private final double thirdDimensionMultiplier;
+        private final int thirdDimension;
+        private long lastLatitude;
+        private long lastLongitude;
+        private long lastThirdDimension;
+
+        public Encoder(StringBuilder builder, int precision, int thirdDimension, int thirdDimensionPrecision) {
+            if (precision < 0 || precision > 15 || thirdDimensionPrecision < 0 || thirdDimensionPrecision > 15) {
+                throw new IllegalArgumentException("Precision must be between 0 and 15.");
+            }
+            if (thirdDimension < 0 || thirdDimension > 7 || thirdDimension == 4 || thirdDimension == 5) {
+                throw new IllegalArgumentException("Invalid third dimension " + thirdDimension);
+            }
+            this.builder = builder;
+            this.multiplier = Math.pow(10, precision);
+            this.thirdDimensionMultiplier = Math.pow(10, thirdDimensionPrecision);
+            this.thirdDimension = thirdDimension;
+
+            encodeUnsigned(builder, VERSION);
+            encodeUnsigned(builder, precision | (thirdDimension << 4) | (thirdDimensionPrecision << 7));
+        }
+
+        public void add(double latitude, double longitude) {
+            if (thirdDimension != THIRD_DIMENSION_ABSENT) {
+                throw new IllegalStateException("This polyline needs a third dimension value.");
+            }
+            addLatLon(latitude, longitude);
+        }
+
+        public void add(double latitude, double longitude, double thirdDimensionValue) {
+            if (thirdDimension == THIRD_DIMENSION_ABSENT) {
+                throw new IllegalStateException("This polyline has no third dimension.");
+            }
+            addLatLon(latitude, longitude);
+            long value = scale(thirdDimensionValue, thirdDimensionMultiplier);
+            encodeSigned(builder, value - lastThirdDimension);
+            lastThirdDimension = value;
+        }
+
+        private void addLatLon(double latitude, double longitude) {
+            long scaledLatitude = scale(latitude, multiplier);
+            long scaledLongitude = scale(longitude, multiplier);
+            encodeSigned(builder, scaledLatitude - lastLatitude);
+            encodeSigned(builder, scaledLongitude - lastLongitude);
+            lastLatitude = scaledLatitude;
+            lastLongitude = scaledLongitude;
+        }
+    }
+
+    /**
+     * Reads one vertex per {@link #next()} call, the current vertex is exposed through primitive getters.
+     */
+    public static final class Decoder {
+        private final CharSequence encoded;
+        private final int precision;
+        private final int thirdDimension;
+        private final int thirdDimensionPrecision;
+        private final double divisor;
+        private final double thirdDimensionDivisor;
+
+        private int position;
+        private long latitude;
+        private long longitude;
+        private long thirdDimensionValue;
+
+        public Decoder(CharSequence encoded) {
+            this.encoded = encoded;
+            long version = decodeUnsigned();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported flexible polyline version " + version);
+            }
+            long header = decodeUnsigned();
+            precision = (int) (header & 15);
+            thirdDimension = (int) ((header >> 4) & 7);
+            thirdDimensionPrecision = (int) ((header >> 7) & 15);
+            divisor = Math.pow(10, precision);
+            thirdDimensionDivisor = Math.pow(10, thirdDimensionPrecision);
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        public int getThirdDimension() {
+            return thirdDimension;
+        }
+
+        public int getThirdDimensionPrecision() {
+            return thirdDimensionPrecision;
+        }
+
+        /**
+         * Advances to the next vertex, returns false at the end of the input.
+         */
+        public boolean next() {
+            if (position >= encoded.length()) {
+                return false;
+            }
+            latitude += decodeSigned();
+            longitude += decodeSigned();
+            if (thirdDimension != THIRD_DIMENSION_ABSENT) {
+                thirdDimensionValue += decodeSigned();
+            }
+            return true;
+        }
+
+        public double getLatitude() {
+            return latitude / divisor;
+        }
+
+        public double getLongitude() {
+            return longitude / divisor;
+        }
+
+        public double getThirdDimensionValue() {
+            return thirdDimensionValue / thirdDimensionDivisor;
+        }
+
+        private long decodeSigned() {
+            long value = decodeUnsigned();
+            if ((value & 1) != 0) {
+                value = ~value;
+            }
+            return value >> 1;
+        }
+
+        private long decodeUnsigned() {
+            long result = 0;
+            int shift = 0;
+            while (position < encoded.length()) {
+                char character = encoded.charAt(position++);
+                int value = character < 128 ? DECODING_TABLE[character] : -1;
+                if (value < 0) {
+                    throw new IllegalArgumentException("Invalid character '" + character + "' at " + (position - 1));
+                }
+                result |= ((long) (value & 0x1F)) << shift;
+                if ((value & 0x20) == 0) {
+                    return result;
+                }
+                shift += 5;
+                if (shift > 60) {
+                    throw new IllegalArgumentException("Value too long at " + position);
+                }
+            }
+            throw new IllegalArgumentException("Unexpected end of flexible polyline.");
+        }
+    }
+
+    // Rounds half away from zero like the reference implementations, so encoded strings match byte for byte.
+    private static long scale(double value, double multiplier) {
+        long scaled = Math.round(Math.abs(value * multiplier));
+        return value < 0 ? -scaled : scaled;
+    }
+
+    private static void encodeSigned(StringBuilder builder, long value) {
+        value <<= 1;
+        if (value < 0) {
+            value = ~value;
+        }
+        encodeUnsigned(builder, value);
+    }
+
+    private static void encodeUnsigned(StringBuilder builder, long value) {
+        while (value > 0x1F) {
+            builder.append(ENCODING_TABLE[(int) ((value & 0x1F) | 0x20)]);
+            value >>>= 5;
+        }
+        builder.append(ENCODING_TABLE[(int) value]);
+    }
+}
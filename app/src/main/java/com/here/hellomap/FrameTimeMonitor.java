@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.view.Choreographer;
+
+/**
+ * Measures the interval between display frames while started.
+ */
+public class FrameTimeMonitor implements Choreographer.FrameCallback {
+
+    private static final long FRAME_BUDGET_NANOS = 16_666_667;
+
+    private boolean running;
+    private long lastFrameTimeNanos;
+
+    private long frameCount;
+    private long totalFrameTimeNanos;
+    private long worstFrameTimeNanos;
+    private long slowFrameCount;
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastFrameTimeNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void stop() {
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        if (lastFrameTimeNanos != 0) {
+            long frameTime = frameTimeNanos - lastFrameTimeNanos;
+            frameCount++;
+            totalFrameTimeNanos += frameTime;
+            worstFrameTimeNanos = Math.max(worstFrameTimeNanos, frameTime);
+            // Anything longer than one and a half budgets means at least one vsync was missed.
+            if (frameTime > FRAME_BUDGET_NANOS * 3 / 2) {
+                slowFrameCount++;
+            }
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void reset() {
+        frameCount = 0;
+        totalFrameTimeNanos = 0;
+        worstFrameTimeNanos = 0;
+        slowFrameCount = 0;
+    }
+
+    public double getAverageFrameTimeMillis() {
+        return frameCount == 0 ? 0 : totalFrameTimeNanos / (frameCount * 1_000_000.0);
+    }
+
+    public double getWorstFrameTimeMillis() {
+        return worstFrameTimeNanos / 1_000_000.0;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getSlowFrameCount() {
+        return slowFrameCount;
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Persistent cache of address lookups, keyed by the normalized query text and the geohash cell
+ * of the search center, so the same address searched around the same place is answered without
+ * the engine. LRU bounded and entries expire after a TTL. Saved to a file like the suggestion index.
+ */
+public class GeocodingCache {
+
+    // Version 2 marks titles and address texts that may be missing.
+    private static final int FILE_MAGIC = 0x47434332; // "GCC2"
+    private static final String GEOHASH_ALPHABET = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    public static class Result {
+        @Nullable
+        public final String title;
+        @Nullable
+        public final String addressText;
+        public final double latitude;
+        public final double longitude;
+
+        public Result(@Nullable String title, @Nullable String addressText, double latitude, double longitude) {
+            this.title = title;
+            this.addressText = addressText;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * @param error description of the failure, null on success.
+         */
+        void onGeocoded(@Nullable String error, List<Result> results);
+    }
+
+    /**
+     * Resolves queries the cache does not know, backed by the search engine in the app.
+     */
+    public interface Geocoder {
+        void geocode(String query, double latitude, double longitude, Callback callback);
+    }
+
+    private final Geocoder geocoder;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final int geohashPrecision;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Metrics.Counter hitCounter;
+    private final Metrics.Counter missCounter;
+    private final Metrics.Timer hitTimer;
+    private final Metrics.Timer missTimer;
+    private boolean dirty;
+
+    /**
+     * @param geohashPrecision length of the geohash of the search center, 5 is a cell of about 5 by 5 km.
+     */
+    public GeocodingCache(Geocoder geocoder, int maxEntries, long ttlMillis, int geohashPrecision, Metrics metrics) {
+        if (maxEntries <= 0 || ttlMillis <= 0 || geohashPrecision < 1 || geohashPrecision > 12) {
+            throw new IllegalArgumentException("Invalid geocoding cache configuration.");
+        }
+        this.geocoder = geocoder;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.geohashPrecision = geohashPrecision;
+        this.hitCounter = metrics.counter("geocode.hits");
+        this.missCounter = metrics.counter("geocode.misses");
+        this.hitTimer = metrics.timer("geocode.hit");
+        this.missTimer = metrics.timer("geocode.miss");
+    }
+
+    /**
+     * Answers from the cache right away, otherwise asks the geocoder and stores what it finds.
+     * Failed and empty lookups are not cached.
+     */
+    public void geocode(String query, double latitude, double longitude, Callback callback) {
+        long startNanos = hitTimer.start();
+        String key = createKey(query, latitude, longitude);
+        List<Result> cachedResults = get(key);
+        if (cachedResults != null) {
+            hitCounter.increment();
+            hitTimer.stop(startNanos);
+            callback.onGeocoded(null, cachedResults);
+            return;
+        }
+        missCounter.increment();
+        geocoder.geocode(query, latitude, longitude, new Callback() {
+            @Override
+            public void onGeocoded(@Nullable String error, List<Result> results) {
+                missTimer.stop(startNanos);
+                if (error == null && !results.isEmpty()) {
+                    put(key, results);
+                }
+                callback.onGeocoded(error, results);
+            }
+        });
+    }
+
+    public String createKey(String query, double latitude, double longitude) {
+        return normalize(query) + '@' + geohash(latitude, longitude, geohashPrecision);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public double getHitRate() {
+        long requests = hitCounter.get() + missCounter.get();
+        return requests == 0 ? 0 : (double) hitCounter.get() / requests;
+    }
+
+    public LatencyHistogram getHitLatency() {
+        return hitTimer.getCurrent();
+    }
+
+    public LatencyHistogram getMissLatency() {
+        return missTimer.getCurrent();
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the live entries from least to most recently used, so loading restores the LRU order.
+     * Writes to a temporary file first and renames it.
+     */
+    public synchronized void save(File file) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        removeExpired();
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().createdAtMillis);
+                output.writeInt(entry.getValue().results.size());
+                for (Result result : entry.getValue().results) {
+                    writeNullableUTF(output, result.title);
+                    writeNullableUTF(output, result.addressText);
+                    output.writeDouble(result.latitude);
+                    output.writeDouble(result.longitude);
+                }
+            }
+        }
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Adds the entries of a saved cache, entries that expired in the meantime are skipped.
+     */
+    public synchronized void load(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (input.readInt() != FILE_MAGIC) {
+                throw new IOException("Unknown geocoding cache format.");
+            }
+            int count = input.readInt();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                String key = input.readUTF();
+                long createdAtMillis = input.readLong();
+                int resultCount = input.readInt();
+                List<Result> results = new ArrayList<>(resultCount);
+                for (int j = 0; j < resultCount; j++) {
+                    results.add(new Result(readNullableUTF(input), readNullableUTF(input),
+                            input.readDouble(), input.readDouble()));
+                }
+                // Lookups made while loading are newer, keep them.
+                if (now - createdAtMillis <= ttlMillis && !entries.containsKey(key)) {
+                    entries.put(key, new Entry(Collections.unmodifiableList(results), createdAtMillis));
+                }
+            }
+        }
+        evict();
+    }
+
+    // The engine may leave out the title or the address text, writeUTF() does not take null.
+    private static void writeNullableUTF(DataOutputStream output, @Nullable String text) throws IOException {
+        output.writeBoolean(text != null);
+        if (text != null) {
+            output.writeUTF(text);
+        }
+    }
+
+    @Nullable
+    private static String readNullableUTF(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    @Nullable
+    private synchronized List<Result> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.createdAtMillis > ttlMillis) {
+            entries.remove(key);
+            dirty = true;
+            return null;
+        }
+        return entry.results;
+    }
+
+    private synchronized void put(String key, List<Result> results) {
+        entries.put(key, new Entry(Collections.unmodifiableList(new ArrayList<>(results)), System.currentTimeMillis()));
+        evict();
+        dirty = true;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue().createdAtMillis > ttlMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Case, surrounding and repeated whitespace and trailing punctuation do not change an address.
+    static String normalize(String query) {
+        String trimmed = query.trim().toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(trimmed.length());
+        boolean space = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (Character.isWhitespace(c) || c == ',') {
+                space = normalized.length() > 0;
+                continue;
+            }
+            if (space) {
+                normalized.append(' ');
+                space = false;
+            }
+            normalized.append(c);
+        }
+        while (normalized.length() > 0 && ".;".indexOf(normalized.charAt(normalized.length() - 1)) != -1) {
+            normalized.setLength(normalized.length() - 1);
+        }
+        return normalized.toString();
+    }
+
+    static String geohash(double latitude, double longitude, int precision) {
+        double minLatitude = -90;
+        double maxLatitude = 90;
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int character = 0;
+        while (hash.length() < precision) {
+            // Bits alternate between longitude and latitude, starting with longitude.
+            if (evenBit) {
+                double middle = (minLongitude + maxLongitude) / 2;
+                if (longitude >= middle) {
+                    character = (character << 1) | 1;
+                    minLongitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLongitude = middle;
+                }
+            } else {
+                double middle = (minLatitude + maxLatitude) / 2;
+                if (latitude >= middle) {
+                    character = (character << 1) | 1;
+                    minLatitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLatitude = middle;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(GEOHASH_ALPHABET.charAt(character));
+                bit = 0;
+                character = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    private static class Entry {
+        final List<Result> results;
+        final long createdAtMillis;
+
+        Entry(List<Result> results, long createdAtMillis) {
+            this.results = results;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
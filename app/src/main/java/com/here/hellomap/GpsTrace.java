@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.Arrays;
+
+/**
+ * A recorded drive: timestamps, positions and headings packed into primitive arrays.
+ */
+public class GpsTrace {
+
+    private long[] timesInMillis;
+    private final CoordinateBuffer positions;
+    private double[] bearingsInDegrees;
+    private int size;
+
+    public GpsTrace() {
+        this(256);
+    }
+
+    public GpsTrace(int capacity) {
+        capacity = Math.max(1, capacity);
+        timesInMillis = new long[capacity];
+        positions = new CoordinateBuffer(capacity);
+        bearingsInDegrees = new double[capacity];
+    }
+
+    /**
+     * @param bearingInDegrees NaN if the source does not record a heading.
+     */
+    public void add(long timeInMillis, double latitude, double longitude, double bearingInDegrees) {
+        if (size == timesInMillis.length) {
+            timesInMillis = Arrays.copyOf(timesInMillis, size * 2);
+            bearingsInDegrees = Arrays.copyOf(bearingsInDegrees, size * 2);
+        }
+        timesInMillis[size] = timeInMillis;
+        bearingsInDegrees[size] = bearingInDegrees;
+        positions.add(latitude, longitude);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimeInMillis(int index) {
+        return timesInMillis[index];
+    }
+
+    public double getLatitude(int index) {
+        return positions.getLatitude(index);
+    }
+
+    public double getLongitude(int index) {
+        return positions.getLongitude(index);
+    }
+
+    public double getBearingInDegrees(int index) {
+        return bearingsInDegrees[index];
+    }
+
+    /**
+     * The positions of the trace, shared. Do not modify it.
+     */
+    public CoordinateBuffer getPositions() {
+        return positions;
+    }
+
+    public long getDurationInMillis() {
+        return size == 0 ? 0 : timesInMillis[size - 1] - timesInMillis[0];
+    }
+}
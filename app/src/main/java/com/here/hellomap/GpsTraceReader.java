@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads GPS traces from GPX track points, NMEA RMC sentences or CSV lines of
+ * "timeInMillis,latitude,longitude[,bearing]". Only uses the JVM, so traces can be parsed
+ * on a build machine as well as on the device.
+ */
+public final class GpsTraceReader {
+
+    public enum Format {
+        GPX, NMEA, CSV
+    }
+
+    private GpsTraceReader() {
+    }
+
+    /**
+     * Picks the format by file extension.
+     */
+    public static GpsTrace read(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        Format format;
+        if (name.endsWith(".gpx")) {
+            format = Format.GPX;
+        } else if (name.endsWith(".nmea") || name.endsWith(".nma") || name.endsWith(".log")) {
+            format = Format.NMEA;
+        } else if (name.endsWith(".csv")) {
+            format = Format.CSV;
+        } else {
+            throw new IOException("Unknown trace format: " + file);
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return read(reader, format);
+        }
+    }
+
+    public static GpsTrace read(Reader reader, Format format) throws IOException {
+        BufferedReader lines = new BufferedReader(reader, 64 * 1024);
+        GpsTrace trace = new GpsTrace();
+        switch (format) {
+            case GPX:
+                readGpx(lines, trace);
+                break;
+            case NMEA:
+                readNmea(lines, trace);
+                break;
+            case CSV:
+                readCsv(lines, trace);
+                break;
+        }
+        return trace;
+    }
+
+    // A small scanner instead of an XML parser, track points are all a trace needs and android.util.Xml
+    // is not available off the device. Track points may span several lines.
+    private static void readGpx(BufferedReader lines, GpsTrace trace) throws IOException {
+        StringBuilder point = new StringBuilder();
+        boolean inPoint = false;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int position = 0;
+            while (position < line.length()) {
+                if (!inPoint) {
+                    int start = line.indexOf("<trkpt", position);
+                    if (start == -1) {
+                        break;
+                    }
+                    inPoint = true;
+                    point.setLength(0);
+                    position = start;
+                }
+                int end = line.indexOf("</trkpt>", position);
+                if (end == -1) {
+                    point.append(line, position, line.length()).append(' ');
+                    break;
+                }
+                point.append(line, position, end);
+                addGpxPoint(point, trace);
+                inPoint = false;
+                position = end + "</trkpt>".length();
+            }
+        }
+    }
+
+    private static void addGpxPoint(StringBuilder point, GpsTrace trace) throws IOException {
+        String latitude = attribute(point, "lat");
+        String longitude = attribute(point, "lon");
+        String time = element(point, "time");
+        if (latitude == null || longitude == null || time == null) {
+            throw new IOException("Track point without position or time: " + point);
+        }
+        String course = element(point, "course");
+        trace.add(parseIsoTime(time), Double.parseDouble(latitude), Double.parseDouble(longitude),
+                course != null ? Double.parseDouble(course) : Double.NaN);
+    }
+
+    private static String attribute(StringBuilder text, String name) {
+        int start = text.indexOf(" " + name + "=");
+        if (start == -1) {
+            return null;
+        }
+        start += name.length() + 2;
+        char quote = text.charAt(start);
+        int end = text.indexOf(String.valueOf(quote), start + 1);
+        return end == -1 ? null : text.substring(start + 1, end).trim();
+    }
+
+    // Matches namespaced elements as well, e.g. <gpxtpx:course> inside extensions.
+    private static String element(StringBuilder text, String name) {
+        int start = text.indexOf(name + ">");
+        while (start > 0 && text.charAt(start - 1) != '<' && text.charAt(start - 1) != ':') {
+            start = text.indexOf(name + ">", start + 1);
+        }
+        if (start <= 0 || text.charAt(start - 1) == '/') {
+            return null;
+        }
+        start += name.length() + 1;
+        int end = text.indexOf("<", start);
+        return end == -1 ? null : text.substring(start, end).trim();
+    }
+
+    // RMC carries date, time, position and course in one sentence, other sentences are skipped.
+    private static void readNmea(BufferedReader lines, GpsTrace trace) throws IOException {
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.length() < 7 || line.charAt(0) != '$' || !line.startsWith("RMC", 3) || !hasValidChecksum(line)) {
+                continue;
+            }
+            int checksum = line.indexOf('*');
+            String[] fields = line.substring(1, checksum == -1 ? line.length() : checksum).split(",", -1);
+            // 1 time, 2 status, 3-4 latitude, 5-6 longitude, 7 speed, 8 course, 9 date
+            if (fields.length < 10 || !"A".equals(fields[2]) || fields[1].length() < 6 || fields[9].length() != 6) {
+                continue;
+            }
+            double latitude = parseNmeaAngle(fields[3], 2) * ("S".equals(fields[4]) ? -1 : 1);
+            double longitude = parseNmeaAngle(fields[5], 3) * ("W".equals(fields[6]) ? -1 : 1);
+            double course = fields[8].isEmpty() ? Double.NaN : Double.parseDouble(fields[8]);
+
+            String date = fields[9];
+            String time = fields[1];
+            // Two digit years, GPS dates start in 1980.
+            int year = Integer.parseInt(date.substring(4, 6));
+            long millis = toEpochMillis(year < 80 ? 2000 + year : 1900 + year,
+                    Integer.parseInt(date.substring(2, 4)), Integer.parseInt(date.substring(0, 2)),
+                    Integer.parseInt(time.substring(0, 2)), Integer.parseInt(time.substring(2, 4)),
+                    Double.parseDouble(time.substring(4)));
+            trace.add(millis, latitude, longitude, course);
+        }
+    }
+
+    private static boolean hasValidChecksum(String sentence) {
+        int star = sentence.indexOf('*');
+        if (star == -1) {
+            // Checksums are optional in NMEA 0183.
+            return true;
+        }
+        if (star + 3 > sentence.length()) {
+            return false;
+        }
+        int checksum = 0;
+        for (int i = 1; i < star; i++) {
+            checksum ^= sentence.charAt(i);
+        }
+        try {
+            return checksum == Integer.parseInt(sentence.substring(star + 1, star + 3), 16);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // NMEA angles are written as degrees followed by minutes, e.g. 4807.038 is 48 degrees 7.038 minutes.
+    private static double parseNmeaAngle(String value, int degreeDigits) {
+        return Integer.parseInt(value.substring(0, degreeDigits)) + Double.parseDouble(value.substring(degreeDigits)) / 60;
+    }
+
+    private static void readCsv(BufferedReader lines, GpsTrace trace) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#' || (lineNumber == 1 && !Character.isDigit(line.charAt(0)))) {
+                // Comments and a header line.
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3) {
+                throw new IOException("Line " + lineNumber + " needs time, latitude and longitude.");
+            }
+            try {
+                trace.add(Long.parseLong(fields[0].trim()), Double.parseDouble(fields[1].trim()),
+                        Double.parseDouble(fields[2].trim()),
+                        fields.length > 3 && !fields[3].trim().isEmpty() ? Double.parseDouble(fields[3].trim()) : Double.NaN);
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + " is not a trace point: " + line, e);
+            }
+        }
+    }
+
+    // Parses UTC timestamps like 2021-03-04T05:06:07Z or 2021-03-04T05:06:07.250Z. java.time needs API 26.
+    static long parseIsoTime(String text) throws IOException {
+        try {
+            int year = Integer.parseInt(text.substring(0, 4));
+            int month = Integer.parseInt(text.substring(5, 7));
+            int day = Integer.parseInt(text.substring(8, 10));
+            int hour = Integer.parseInt(text.substring(11, 13));
+            int minute = Integer.parseInt(text.substring(14, 16));
+            int end = 19;
+            while (end < text.length() && (Character.isDigit(text.charAt(end)) || text.charAt(end) == '.')) {
+                end++;
+            }
+            double second = Double.parseDouble(text.substring(17, end));
+            long millis = toEpochMillis(year, month, day, hour, minute, second);
+            if (end < text.length() && (text.charAt(end) == '+' || text.charAt(end) == '-')) {
+                int sign = text.charAt(end) == '+' ? 1 : -1;
+                int offsetHours = Integer.parseInt(text.substring(end + 1, end + 3));
+                int offsetMinutes = Integer.parseInt(text.substring(end + 4, end + 6));
+                millis -= sign * (offsetHours * 60L + offsetMinutes) * 60_000L;
+            }
+            return millis;
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid timestamp: " + text, e);
+        }
+    }
+
+    // Days since the epoch of a proleptic Gregorian date, after Howard Hinnant's days_from_civil.
+    private static long toEpochMillis(int year, int month, int day, int hour, int minute, double second) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return ((days * 24 + hour) * 60 + minute) * 60_000L + Math.round(second * 1000);
+    }
+}
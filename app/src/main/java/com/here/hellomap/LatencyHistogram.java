@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, similar to an HDR histogram.
+ * Every power of two range is split into equally sized sub-buckets, which bounds the relative error
+ * of reported percentiles to 1 / SUB_BUCKET_COUNT. Recording does not allocate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Covers values up to 2^40 nanoseconds, roughly 18 minutes.
+    private static final int MAGNITUDE_COUNT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAGNITUDE_COUNT + 1) * SUB_BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Adds the buckets of this histogram to the given one and resets this one.
+     */
+    public void drainTo(LatencyHistogram target) {
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                target.counts.addAndGet(i, count);
+            }
+        }
+        target.totalCount.addAndGet(totalCount.getAndSet(0));
+        target.totalNanos.addAndGet(totalNanos.getAndSet(0));
+        long max = maxNanos.getAndSet(0);
+        long targetMax = target.maxNanos.get();
+        while (max > targetMax && !target.maxNanos.compareAndSet(targetMax, max)) {
+            targetMax = target.maxNanos.get();
+        }
+    }
+
+    // Values below SUB_BUCKET_COUNT get one bucket each, larger ones are bucketed by magnitude and top bits.
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        if (magnitude > MAGNITUDE_COUNT) {
+            return (MAGNITUDE_COUNT + 1) * SUB_BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (magnitude - 1)) - SUB_BUCKET_COUNT;
+        return magnitude * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index == (MAGNITUDE_COUNT + 1) * SUB_BUCKET_COUNT - 1) {
+            // The last bucket also collects everything beyond the covered range.
+            return Long.MAX_VALUE;
+        }
+        int magnitude = index / SUB_BUCKET_COUNT;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << (magnitude - 1)) - 1;
+    }
+}
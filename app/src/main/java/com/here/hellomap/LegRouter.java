@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes a tour as separate legs between consecutive waypoints. Legs are kept by their snapped
+ * end points, so after a waypoint is inserted, moved or removed only the legs touching it are
+ * requested again and all other legs keep their geometry objects. Tours and single legs are both kept
+ * in the route cache, so stops that were routed before are not requested again.
+ * Must be used from the main thread, where the router delivers its callbacks.
+ */
+public class LegRouter {
+
+    // Above this share of missing legs one request for the whole tour is cheaper than one per leg.
+    private static final double FULL_ROUTE_THRESHOLD = 0.5;
+
+    public interface Listener {
+        /**
+         * @param legs geometry of the leg from waypoint i to waypoint i + 1 at index i, empty on error.
+         */
+        void onLegsCalculated(List<CoordinateBuffer> legs, @Nullable RoutingError routingError);
+    }
+
+    private final RouteComparator.Router router;
+    private final RouteCache<List<CoordinateBuffer>> routeCache;
+    private final Map<String, CoordinateBuffer> legsByKey = new HashMap<>();
+    private CarOptions legOptions;
+    private final Metrics.Counter reusedLegCounter;
+    private final Metrics.Counter recomputedLegCounter;
+    private final Metrics.Counter cacheHitCounter;
+    private final Metrics.Counter unmatchedLegCounter;
+    private final Metrics.Timer requestTimer;
+
+    // Bumped by every calculation, results of older ones still fill the leg store but are not reported.
+    private int generation;
+
+    /**
+     * @param router e.g. {@link RouteComparator#engineRouter}, only its first route is used.
+     * @param routeCache builds the leg keys and keeps the legs of every tour and single leg requested.
+     */
+    public LegRouter(RouteComparator.Router router, RouteCache<List<CoordinateBuffer>> routeCache, Metrics metrics) {
+        this.router = router;
+        this.routeCache = routeCache;
+        this.reusedLegCounter = metrics.counter("route.legsReused");
+        this.recomputedLegCounter = metrics.counter("route.legsRecomputed");
+        this.cacheHitCounter = metrics.counter("route.cacheHits");
+        this.unmatchedLegCounter = metrics.counter("route.legsUnmatched");
+        this.requestTimer = metrics.timer("route.request");
+    }
+
+    public void calculate(List<Waypoint> waypoints, CarOptions carOptions, Listener listener) {
+        int request = ++generation;
+        int legCount = waypoints.size() - 1;
+        if (legCount < 1) {
+            listener.onLegsCalculated(Collections.<CoordinateBuffer>emptyList(), null);
+            return;
+        }
+
+        // Leg keys only carry a hash of the options, legs routed with other options are not reused.
+        if (!carOptions.equals(legOptions)) {
+            legsByKey.clear();
+            legOptions = carOptions;
+        }
+        RouteComparator.Profile profile = RouteComparator.Profile.car("legs", carOptions);
+        // Set before the keys are built, the router sets the alternatives before it routes.
+        profile.setAlternatives(0);
+
+        String[] keys = new String[legCount];
+        CoordinateBuffer[] legs = new CoordinateBuffer[legCount];
+        List<Integer> missingLegs = new ArrayList<>();
+        for (int i = 0; i < legCount; i++) {
+            keys[i] = routeCache.createKey(waypoints.subList(i, i + 2), carOptions);
+            legs[i] = legsByKey.get(keys[i]);
+            if (legs[i] == null) {
+                missingLegs.add(i);
+            }
+        }
+        reusedLegCounter.add(legCount - missingLegs.size());
+        recomputedLegCounter.add(missingLegs.size());
+
+        if (missingLegs.isEmpty()) {
+            complete(request, keys, legs, listener);
+        } else if (legCount > 1 && missingLegs.size() > legCount * FULL_ROUTE_THRESHOLD) {
+            requestTour(request, new ArrayList<>(waypoints), profile, keys, legs, listener);
+        } else {
+            requestLegs(request, waypoints, profile, keys, legs, missingLegs, listener);
+        }
+    }
+
+    /**
+     * Drops the result of a calculation that is still running.
+     */
+    public void cancel() {
+        generation++;
+    }
+
+    // One request for all waypoints, the router splits the route into the legs.
+    private void requestTour(int request, List<Waypoint> waypoints, RouteComparator.Profile profile,
+                             String[] keys, CoordinateBuffer[] legs, Listener listener) {
+        String tourKey = routeCache.createKey(waypoints, profile.carOptions);
+        List<CoordinateBuffer> cachedLegs = routeCache.get(tourKey, profile.carOptions);
+        if (cachedLegs != null) {
+            cacheHitCounter.increment();
+            assignTourLegs(request, cachedLegs, waypoints, profile, keys, legs, listener);
+            return;
+        }
+
+        long startNanos = requestTimer.start();
+        router.calculate(waypoints, profile, 0, new RouteComparator.Router.Callback() {
+            @Override
+            public void onCalculated(@Nullable RoutingError routingError, List<RouteComparator.Candidate> candidates) {
+                requestTimer.stop(startNanos);
+                if (routingError != null || candidates.isEmpty()) {
+                    fail(request, routingError != null ? routingError : RoutingError.NO_ROUTE_FOUND, listener);
+                    return;
+                }
+                List<CoordinateBuffer> tourLegs = candidates.get(0).legs;
+                if (tourLegs == null) {
+                    tourLegs = Collections.nCopies(legs.length, null);
+                }
+                routeCache.put(tourKey, profile.carOptions, tourLegs);
+                assignTourLegs(request, tourLegs, waypoints, profile, keys, legs, listener);
+            }
+        });
+    }
+
+    // Legs the router could not tell apart are requested on their own.
+    private void assignTourLegs(int request, List<CoordinateBuffer> tourLegs, List<Waypoint> waypoints,
+                                RouteComparator.Profile profile, String[] keys, CoordinateBuffer[] legs,
+                                Listener listener) {
+        List<Integer> unmatchedLegs = new ArrayList<>();
+        for (int i = 0; i < legs.length; i++) {
+            // Legs that were already known keep their geometry object, so they are not redrawn.
+            if (legs[i] != null) {
+                continue;
+            }
+            CoordinateBuffer leg = tourLegs.get(i);
+            if (leg != null) {
+                legs[i] = leg;
+                legsByKey.put(keys[i], leg);
+                // A later single leg request between the same stops is answered from the cache.
+                routeCache.put(keys[i], profile.carOptions, Collections.singletonList(leg));
+            } else {
+                unmatchedLegs.add(i);
+            }
+        }
+        if (unmatchedLegs.isEmpty()) {
+            complete(request, keys, legs, listener);
+        } else {
+            unmatchedLegCounter.add(unmatchedLegs.size());
+            requestLegs(request, waypoints, profile, keys, legs, unmatchedLegs, listener);
+        }
+    }
+
+    private void requestLegs(int request, List<Waypoint> waypoints, RouteComparator.Profile profile, String[] keys,
+                             CoordinateBuffer[] legs, List<Integer> missingLegs, Listener listener) {
+        List<Integer> routedLegs = new ArrayList<>(missingLegs.size());
+        for (int leg : missingLegs) {
+            List<CoordinateBuffer> cachedLegs = routeCache.get(keys[leg], profile.carOptions);
+            if (cachedLegs != null) {
+                cacheHitCounter.increment();
+                legs[leg] = cachedLegs.get(0);
+                legsByKey.put(keys[leg], legs[leg]);
+            } else {
+                routedLegs.add(leg);
+            }
+        }
+        if (routedLegs.isEmpty()) {
+            complete(request, keys, legs, listener);
+            return;
+        }
+
+        int[] pendingCount = {routedLegs.size()};
+        RoutingError[] firstError = new RoutingError[1];
+        for (int leg : routedLegs) {
+            List<Waypoint> legWaypoints = new ArrayList<>(waypoints.subList(leg, leg + 2));
+            long startNanos = requestTimer.start();
+            router.calculate(legWaypoints, profile, 0, new RouteComparator.Router.Callback() {
+                @Override
+                public void onCalculated(@Nullable RoutingError routingError, List<RouteComparator.Candidate> candidates) {
+                    requestTimer.stop(startNanos);
+                    if (routingError == null && !candidates.isEmpty()) {
+                        legs[leg] = candidates.get(0).geometry;
+                        legsByKey.put(keys[leg], legs[leg]);
+                        routeCache.put(keys[leg], profile.carOptions, Collections.singletonList(legs[leg]));
+                    } else if (firstError[0] == null) {
+                        firstError[0] = routingError != null ? routingError : RoutingError.NO_ROUTE_FOUND;
+                    }
+                    if (--pendingCount[0] > 0) {
+                        return;
+                    }
+                    if (firstError[0] != null) {
+                        fail(request, firstError[0], listener);
+                    } else {
+                        complete(request, keys, legs, listener);
+                    }
+                }
+            });
+        }
+    }
+
+    private void complete(int request, String[] keys, CoordinateBuffer[] legs, Listener listener) {
+        if (request != generation) {
+            return;
+        }
+        // Only the legs of the current tour are worth keeping.
+        legsByKey.keySet().retainAll(new HashSet<>(Arrays.asList(keys)));
+        listener.onLegsCalculated(Arrays.asList(legs), null);
+    }
+
+    private void fail(int request, RoutingError routingError, Listener listener) {
+        if (request == generation) {
+            listener.onLegsCalculated(Collections.<CoordinateBuffer>emptyList(), routingError);
+        }
+    }
+}
@@ -22,6 +22,10 @@ package com.here.hellomap;
 import android.arch.lifecycle.ViewModelProvider;
 import android.content.res.AssetManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
@@ -62,11 +66,11 @@ import com.here.sdk.routing.CalculateRouteCallback;
 import com.here.sdk.routing.CarOptions;
 import com.here.sdk.routing.HazardousGood;
 import com.here.sdk.routing.OptimizationMode;
-import com.here.sdk.routing.Route;
 import com.here.sdk.routing.RouteOptions;
 import com.here.sdk.routing.RouteTextOptions;
 import com.here.sdk.routing.RoutingEngine;
 import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.TruckOptions;
 import com.here.sdk.routing.Waypoint;
 import com.here.sdk.search.AddressQuery;
 import com.here.sdk.search.Place;
@@ -81,18 +85,48 @@ import com.here.sdk.search.TextQuery;
 
 import org.w3c.dom.Text;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = MainActivity.class.getSimpleName();
+    private static final int TAP_RADIUS_IN_PIXELS = 48;
+    private static final long STOP_SEQUENCE_BUDGET_MILLIS = 250;
+    private static final String MAP_VIEW_READY = "mapViewReady";
+    private static final String ROUTING_ENGINE_READY = "routingEngineReady";
+    private static final String SEARCH_ENGINE_READY = "searchEngineReady";
+    private static final long METRICS_OVERLAY_INTERVAL_MILLIS = 1000;
+    private static final long METRICS_EXPORT_INTERVAL_MILLIS = 60 * 1000;
+    private static final double CORRIDOR_BUFFER_IN_METERS = 1000;
+    private static final int CORRIDOR_MIN_ZOOM = 8;
+    private static final int CORRIDOR_MAX_ZOOM = 16;
+    private static final long ROUTE_COMPARISON_BUDGET_MILLIS = 3000;
+    private static final int ROUTE_ALTERNATIVES = 3;
+    private static final long CAMERA_FLIGHT_MILLIS = 1500;
+    private static final long STUB_LATENCY_MILLIS = 200;
     private PermissionsRequestor permissionsRequestor;
     private MapView mapView;
 
+    private static final String CUSTOM_STYLE_FILENAME = "omv-traffic-traffic-normal-night.scene.json";
+    // Scenes cycled by changeMapStyle, either a MapScheme or the file name of a custom style.
+    private static final Object[] STYLE_CYCLE = {
+            MapScheme.NORMAL_DAY, MapScheme.SATELLITE, MapScheme.NORMAL_NIGHT, MapScheme.HYBRID_DAY, CUSTOM_STYLE_FILENAME
+    };
+
     private int styleCounter = 0;
-    private MapScheme scheme = MapScheme.NORMAL_DAY;
+    private MapSceneManager mapSceneManager;
 
     private int cameraCounter = 0;
     private GeoCoordinates cameraCoordinates;
@@ -101,21 +135,131 @@ public class MainActivity extends AppCompatActivity {
     private MapCamera.OrientationUpdate cameraOrientation;
     private double distanceInMeters;
 
+    private StartupTrace startupTrace;
+    // Engines are created in the background, work that needs one before it exists is queued on these.
+    private ReadinessFuture<SearchEngine> searchEngineFuture;
+    private ReadinessFuture<RoutingEngine> routingEngineFuture;
+
     private SearchEngine searchEngine;
+    private SearchDispatcher searchDispatcher;
+    private SuggestionIndex suggestionIndex = new SuggestionIndex();
+    // Shared with the activity instances before and after a rotation, see AppServices.
+    private final ExecutorService ioExecutor = AppServices.get().getIoExecutor();
+    private final ForkJoinPool computePool = AppServices.get().getComputePool();
+    private final StopSequenceOptimizer stopSequenceOptimizer = new StopSequenceOptimizer(computePool);
 
     private RoutingEngine routingEngine;
     private List<Waypoint> waypoints = new ArrayList<>();
     private List<MapMarker> waypointMarkers = new ArrayList<>();
-    private MapPolyline routePolyline;
+    // Created once the routing engine is ready.
+    private LegRouter legRouter;
+    private RouteComparator routeComparator;
+    private RouteComparator.Request routeComparison;
+    private RouteLayer routeLayer;
+    // Matches positions against the route on screen, replaced whenever the route changes.
+    private RouteMatcher routeMatcher;
+    private int routeVersion;
+    // Tiles within the corridor of the current route in travel order, to be prefetched before a long drive.
+    private CorridorTilePlanner.Plan corridorTilePlan;
+    // Plays back a recorded drive in debug builds, see startTraceReplay().
+    private TraceLocationSource traceLocationSource;
+
+    // Owns the markers, polylines and pinned views on the map and applies changes to them once per frame.
+    private MapObjectRegistry mapObjects;
+    private MapObjectRegistry.Layer demoLayer;
+    private MapObjectRegistry.Layer waypointLayer;
+    // Flies the camera to search results and follows the vehicle while positions arrive.
+    private CameraAnimator cameraAnimator;
+
+    // Everything the app places on the map, so taps resolve without a pickMapItems round trip.
+    private final SpatialIndex<Object> mapItemIndex = new SpatialIndex<>();
+
+    // Place results are pinned per cluster instead of one view per place.
+    private final List<Place> placeResults = new ArrayList<>();
+    private final MarkerClusterer<Place> placeClusterer = new MarkerClusterer<>(0, 18, 80);
+    private final Map<MarkerClusterer.Cluster<Place>, View> pinnedClusters = new HashMap<>();
+    private PinnedViewPool pinnedViewPool;
+    private View pinnedAddressView;
+    private GeocodingCache.Result pinnedAddressResult;
+    private final FrameTimeMonitor frameTimeMonitor = new FrameTimeMonitor();
+    // Repeated presses of "Routing" with unchanged stops are served from memory.
+    private final RouteCache<List<CoordinateBuffer>> routeCache = new RouteCache<>(32, 30 * 60 * 1000, 0.0001);
+    // Routes of every profile for the stops compared last, a repeated comparison does not route again.
+    private final RouteCache<List<RouteComparator.Candidate>> comparisonCache = new RouteCache<>(16, 30 * 60 * 1000, 0.0001);
+    // Waypoints and the last route survive the activity being killed. Only touched on ioExecutor.
+    private SessionJournal sessionJournal;
+
+    // Latency of the calls whose results arrive asynchronously or that touch the map scene.
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Timer searchPlacesTimer = metrics.timer("search.places");
+    private final Metrics.Timer searchAddressTimer = metrics.timer("search.address");
+    private final Metrics.Timer suggestTimer = metrics.timer("search.suggest");
+    private final Metrics.Timer routeTimer = metrics.timer("route.editToRedraw");
+    private final Metrics.Timer pickTimer = metrics.timer("map.pick");
+    private final Metrics.Timer matchTimer = metrics.timer("nav.match");
+    private final Metrics.Timer corridorPlanTimer = metrics.timer("map.corridorPlan");
+    private final Metrics.Counter searchErrorCounter = metrics.counter("search.errors");
+    private final Metrics.Counter routeErrorCounter = metrics.counter("route.errors");
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private MetricsExporter metricsExporter;
+    // Addresses already looked up near the same place are not sent to the search engine again.
+    private final GeocodingCache geocodingCache = new GeocodingCache(this::geocodeWithSearchEngine,
+            5000, 7L * 24 * 60 * 60 * 1000, 5, metrics);
+    private boolean initialSceneLoaded;
+
+    private interface SessionWrite {
+        void write(SessionJournal journal) throws IOException;
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        startupTrace = new StartupTrace(new StartupTrace.Listener() {
+            @Override
+            public void onComplete(StartupTrace trace) {
+                Log.i(TAG, "Startup trace: " + trace + " (engine creation: routing "
+                        + routingEngineFuture.getInitializationMillis() + "ms, search "
+                        + searchEngineFuture.getInitializationMillis() + "ms)");
+            }
+        }, StartupTrace.FIRST_FRAME, MAP_VIEW_READY, ROUTING_ENGINE_READY, SEARCH_ENGINE_READY);
+        startupTrace.traceFirstFrame();
+        // Start the engines first so their creation overlaps with setting up the map view.
+        initializeEngines();
 
         // Get a MapView instance from the layout.
         mapView = findViewById(R.id.map_view);
         mapView.onCreate(savedInstanceState);
+        mapObjects = new MapObjectRegistry(mapView, metrics);
+        demoLayer = mapObjects.createLayer("demo");
+        waypointLayer = mapObjects.createLayer("waypoints");
+        routeLayer = new RouteLayer(mapObjects.createLayer("route"));
+        cameraAnimator = new CameraAnimator(CameraAnimator.choreographerClock(),
+                CameraAnimator.mapCameraTarget(mapView.getCamera()), metrics);
+        pinnedViewPool = new PinnedViewPool(getApplicationContext(), mapObjects.createLayer("labels"), 64);
+        metricsExporter = new MetricsExporter(new File(getFilesDir(), "metrics.csv"), 256 * 1024, 3);
+        if(BuildConfig.DEBUG) {
+            findViewById(R.id.debugOverlay).setVisibility(View.VISIBLE);
+        }
+        mapSceneManager = new MapSceneManager(mapView.getMapScene(), getAssets(),
+                new File(getNoBackupFilesDir(), "map-styles"), ioExecutor, metrics, new MapSceneManager.Listener() {
+            @Override
+            public void onSceneLoaded(String sceneName, long switchNanos, @Nullable MapError mapError) {
+                if(mapError != null) {
+                    Log.d(TAG, "Loading map scene " + sceneName + " failed: mapError: " + mapError.name());
+                    return;
+                }
+                Log.d(TAG, "Map scene " + sceneName + " loaded in " + switchNanos / 1_000_000 + " ms.");
+                if(!initialSceneLoaded) {
+                    initialSceneLoaded = true;
+                    double distanceInMeters = 1000 * 10;
+                    mapView.getCamera().lookAt(
+                            new GeoCoordinates(40.7831, -73.9712), distanceInMeters);
+                    // Make the first switch cheap as well.
+                    mapSceneManager.preload(STYLE_CYCLE[(styleCounter + 1) % STYLE_CYCLE.length]);
+                }
+            }
+        });
 
         mapView.setOnReadyListener(new MapView.OnReadyListener() {
             @Override
@@ -124,27 +268,111 @@ public class MainActivity extends AppCompatActivity {
                 // It will not be called before the first map scene was loaded.
                 // Any code that requires map data may not work as expected beforehand.
                 Log.d(TAG, "HERE Rendering Engine attached.");
+                startupTrace.mark(MAP_VIEW_READY);
             }
         });
 
         handleAndroidPermissions();
 
-        try {
-            routingEngine = new RoutingEngine();
-        } catch(InstantiationErrorException e) {
-            // error handling :p
-        }
+        mapView.getCamera().addObserver(new MapCamera.Observer() {
+            @Override
+            public void onCameraUpdated(@NonNull MapCamera.State state) {
+                // Gestures move the camera as well, animations have to start from where it is.
+                if(!cameraAnimator.isAnimating()) {
+                    cameraAnimator.setPosition(state.targetCoordinates.latitude, state.targetCoordinates.longitude,
+                            state.targetOrientation.bearing, state.targetOrientation.tilt, state.distanceToTargetInMeters);
+                }
+                routeLayer.setCameraDistance(state.distanceToTargetInMeters);
+                updatePlaceClusters(state.zoomLevel);
+            }
+        });
 
         setLongPressGestureHandler();
+        setTapGestureHandler();
+        setSearchTextWatcher();
+        loadSuggestionIndex();
+        loadGeocodingCache();
+        restoreSession();
+        if(BuildConfig.DEBUG) {
+            startTraceReplay();
+        }
+    }
 
-        try {
-            searchEngine = new SearchEngine();
+    // Replays a GPX, NMEA or CSV trace instead of live positions, e.g.
+    // adb shell am start -n com.here.hellomap/.MainActivity --es replayTrace /sdcard/drive.gpx --ed replaySpeed 4
+    private void startTraceReplay() {
+        String path = getIntent().getStringExtra("replayTrace");
+        if(path == null) {
+            return;
+        }
+        double speedFactor = getIntent().getDoubleExtra("replaySpeed", TraceReplayer.REAL_TIME);
+        traceLocationSource = new TraceLocationSource(command -> runOnUiThread(command));
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                GpsTrace trace;
+                try {
+                    trace = GpsTraceReader.read(new File(path));
+                } catch(IOException e) {
+                    Log.e(TAG, "Reading trace " + path + " failed.", e);
+                    return;
+                }
+                Log.d(TAG, "Replaying " + trace.size() + " fixes from " + path + " at speed " + speedFactor + ".");
+                traceLocationSource.start(trace, speedFactor, (timeInMillis, latitude, longitude, bearingInDegrees) ->
+                        onPositionUpdate(latitude, longitude, bearingInDegrees), new TraceLocationSource.ReplayListener() {
+                    @Override
+                    public void onReplayFinished(TraceReplayer.Report report) {
+                        Log.d(TAG, "Replay finished: " + report);
+                        for(String event : report.getTimeline()) {
+                            Log.d(TAG, "Replay event at " + event);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        } catch (InstantiationErrorException e) {
-           throw new RuntimeException("Something went wrong: " + e);
+    private void recordNavigationEvent(String event) {
+        if(traceLocationSource != null) {
+            traceLocationSource.recordEvent(event);
         }
     }
 
+    private void initializeEngines() {
+        routingEngineFuture = ReadinessFuture.create(computePool, RoutingEngine::new);
+        routingEngineFuture.whenReady(engine -> {
+            routingEngine = engine;
+            RouteComparator.Router router = useStubBackends()
+                    ? new StubRouter(STUB_LATENCY_MILLIS, 50) : RouteComparator.engineRouter(routingEngine);
+            legRouter = new LegRouter(router, routeCache, metrics);
+            routeComparator = new RouteComparator(RouteComparator.cachingRouter(router, comparisonCache),
+                    computePool, metrics);
+            startupTrace.mark(ROUTING_ENGINE_READY);
+        });
+        routingEngineFuture.whenFailed(exception -> showEngineError("Routing", exception));
+
+        searchEngineFuture = ReadinessFuture.create(computePool, SearchEngine::new);
+        searchEngineFuture.whenReady(engine -> {
+            searchEngine = engine;
+            SearchDispatcher.Backend searchBackend = useStubBackends()
+                    ? new StubSearchBackend(STUB_LATENCY_MILLIS) : SearchDispatcher.engineBackend(searchEngine);
+            searchDispatcher = new SearchDispatcher(searchBackend, 300);
+            startupTrace.mark(SEARCH_ENGINE_READY);
+        });
+        searchEngineFuture.whenFailed(exception -> showEngineError("Search", exception));
+    }
+
+    // Debug builds can answer from stubs with a fixed latency instead of the engines, e.g.
+    // adb shell am start -n com.here.hellomap/.MainActivity --ez stubBackends true
+    private boolean useStubBackends() {
+        return BuildConfig.DEBUG && getIntent().getBooleanExtra("stubBackends", false);
+    }
+
+    private void showEngineError(String feature, Exception exception) {
+        Log.e(TAG, feature + " engine could not be created.", exception);
+        Toast.makeText(getApplicationContext(), feature + " is not available.", Toast.LENGTH_LONG).show();
+    }
+
     private void handleAndroidPermissions() {
         permissionsRequestor = new PermissionsRequestor(this);
         permissionsRequestor.request(new ResultListener(){
@@ -167,64 +395,27 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void loadMapScene() {
-        // Load a scene from the HERE SDK to render the map with a map scheme.
-        mapView.getMapScene().loadScene(MapScheme.NORMAL_DAY, new MapScene.LoadSceneCallback() {
-            @Override
-            public void onLoadScene(@Nullable MapError mapError) {
-                if (mapError == null) {
-                    double distanceInMeters = 1000 * 10;
-                    mapView.getCamera().lookAt(
-                            new GeoCoordinates(40.7831, -73.9712), distanceInMeters);
-                } else {
-                    Log.d(TAG, "Loading map failed: mapError: " + mapError.name());
-                }
-            }
-        });
+        // Load a scene from the HERE SDK to render the map with a map scheme. It goes through the manager,
+        // so a style switch pressed while it loads waits for it.
+        mapSceneManager.load(MapScheme.NORMAL_DAY);
     }
 
     public void changeMapStyle(View view) {
         styleCounter++;
-        if(styleCounter == 4) styleCounter = 0;
-
-        if(styleCounter == 0) scheme = MapScheme.NORMAL_DAY;
-        if(styleCounter == 1) scheme = MapScheme.SATELLITE;
-        if(styleCounter == 2) scheme = MapScheme.NORMAL_NIGHT;
-        if(styleCounter == 3) scheme = MapScheme.HYBRID_DAY;
+        if(styleCounter == STYLE_CYCLE.length) styleCounter = 0;
 
-        mapView.getMapScene().loadScene(scheme, new MapScene.LoadSceneCallback() {
-            @Override
-            public void onLoadScene(MapError mapError) {
-                if(mapError == null) {
-                    // do something
-                    // TODO: Write onLoadScene method
-                } else {
-                    // error handling
-                }
-            }
-        });
+        Object scene = STYLE_CYCLE[styleCounter];
+        if(scene instanceof MapScheme) {
+            mapSceneManager.load((MapScheme) scene);
+        } else {
+            mapSceneManager.loadCustomStyle((String) scene);
+        }
+        mapSceneManager.preload(STYLE_CYCLE[(styleCounter + 1) % STYLE_CYCLE.length]);
     }
 
     public void loadStyle(View view) {
         // Method to add a custom map style. Use style editor offered by HERE
-        String filename = "omv-traffic-traffic-normal-night.scene.json";
-        AssetManager assetManager = this.getAssets();
-
-        try {
-            assetManager.open(filename);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        mapView.getMapScene().loadScene("" + filename, new MapScene.LoadSceneCallback() {
-            @Override
-            public void onLoadScene(MapError mapError) {
-                if(mapError == null) {
-                    // do something
-                } else {
-                    // error handling
-                }
-            }
-        });
+        mapSceneManager.loadCustomStyle(CUSTOM_STYLE_FILENAME);
     }
 
     public void changeCamera(View view) {
@@ -241,26 +432,29 @@ public class MainActivity extends AppCompatActivity {
         distanceInMeters = 1000 * 10;
 
         if(cameraCounter == 0) {
-            mapView.getCamera().lookAt(cameraCoordinates, cameraOrientation, distanceInMeters);
+            cameraAnimator.flyTo(cameraCoordinates.latitude, cameraCoordinates.longitude, bearingInDegrees,
+                    tiltInDegrees, distanceInMeters, CAMERA_FLIGHT_MILLIS);
 
         } else if(cameraCounter == 1) {
 
             bearingInDegrees = 90;
-            cameraOrientation = new MapCamera.OrientationUpdate(bearingInDegrees, tiltInDegrees);
-            mapView.getCamera().lookAt(cameraCoordinates, cameraOrientation, distanceInMeters);
+            cameraAnimator.flyTo(cameraCoordinates.latitude, cameraCoordinates.longitude, bearingInDegrees,
+                    tiltInDegrees, distanceInMeters, CAMERA_FLIGHT_MILLIS);
 
         } else if(cameraCounter == 2) {
 
             tiltInDegrees = 45;
             distanceInMeters = 1000 * 2;
-            cameraOrientation = new MapCamera.OrientationUpdate(bearingInDegrees, tiltInDegrees);
-            mapView.getCamera().lookAt(cameraCoordinates, cameraOrientation, distanceInMeters);
+            cameraAnimator.flyTo(cameraCoordinates.latitude, cameraCoordinates.longitude, bearingInDegrees,
+                    tiltInDegrees, distanceInMeters, CAMERA_FLIGHT_MILLIS);
 
         } else if(cameraCounter == 3) {
 
             // create a rectangle with two sets of coordinates
             GeoBox cameraBox = new GeoBox(new GeoCoordinates(40.72537, -73.98401), new GeoCoordinates(40.72757, -73.9793));
 
+            // A bounding box is left to the SDK, stop any animation so it does not override it.
+            cameraAnimator.cancel();
             mapView.getCamera().lookAt(cameraBox, cameraOrientation);
 
         }
@@ -282,21 +476,21 @@ public class MainActivity extends AppCompatActivity {
         mapMarker.setMetadata(metadata);
 
         // Add the marker to the map
-        mapView.getMapScene().addMapMarker(mapMarker);
-        setTapGestureHandler();
+        demoLayer.addMarker(mapMarker);
+        mapItemIndex.add(40.70055, -74.0086, mapMarker);
     }
 
     public void addPolyline(View view) {
         // Create a GeoPolyline
-        ArrayList<GeoCoordinates> polylineCoordinates = new ArrayList();
-        polylineCoordinates.add(new GeoCoordinates(40.70638, -74.01896));
-        polylineCoordinates.add(new GeoCoordinates(40.70127, -74.01497));
-        polylineCoordinates.add(new GeoCoordinates(40.70329, -74.00746));
-        polylineCoordinates.add(new GeoCoordinates(40.70797, -73.99961));
+        CoordinateBuffer polylineCoordinates = new CoordinateBuffer(4);
+        polylineCoordinates.add(40.70638, -74.01896);
+        polylineCoordinates.add(40.70127, -74.01497);
+        polylineCoordinates.add(40.70329, -74.00746);
+        polylineCoordinates.add(40.70797, -73.99961);
 
         GeoPolyline geoPolyline;
         try {
-            geoPolyline = new GeoPolyline(polylineCoordinates);
+            geoPolyline = new GeoPolyline(polylineCoordinates.toGeoCoordinates());
         } catch(InstantiationErrorException e) {
             // Only for now. Right error handling later
             geoPolyline = null;
@@ -310,38 +504,44 @@ public class MainActivity extends AppCompatActivity {
         MapPolyline mapPolyline = new MapPolyline(geoPolyline, widthInPixels, lineColor);
 
         // Add that to the map
-        mapView.getMapScene().addMapPolyline(mapPolyline);
+        demoLayer.addPolyline(mapPolyline);
     }
 
     public void setTapGestureHandler() {
         mapView.getGestures().setTapListener(new TapListener() {
             @Override
             public void onTap(Point2D touchPoint) {
-                mapView.pickMapItems(touchPoint, 2, new MapViewBase.PickMapItemsCallback() {
-                    @Override
-                    public void onPickMapItems(PickMapItemsResult pickMapItemsResult) {
-                        List<MapMarker> mapMarkerList = pickMapItemsResult.getMarkers();
-                        MapMarker pickedMarker = mapMarkerList.get(0);
-                        Metadata metadata = pickedMarker.getMetadata();
-
-                        if(metadata != null) {
-                            String message = "No message found.";
-                            String string = metadata.getString("key_poi");
-                            if(string != null) {
-                                message = string;
-                            }
-                            Toast toast = Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT);
-                            toast.show();
+                GeoCoordinates tapCoordinates = mapView.viewToGeoCoordinates(touchPoint);
+                GeoCoordinates edgeCoordinates = mapView.viewToGeoCoordinates(
+                        new Point2D(touchPoint.x + TAP_RADIUS_IN_PIXELS, touchPoint.y));
+                if(tapCoordinates == null || edgeCoordinates == null) {
+                    return;
+                }
+
+                long startNanos = pickTimer.start();
+                Object pickedItem = mapItemIndex.nearest(tapCoordinates.latitude, tapCoordinates.longitude,
+                        tapCoordinates.distanceTo(edgeCoordinates));
+                pickTimer.stop(startNanos);
+                String message = null;
+                if(pickedItem instanceof MapMarker) {
+                    Metadata metadata = ((MapMarker) pickedItem).getMetadata();
+                    if(metadata != null) {
+                        message = "No message found.";
+                        String string = metadata.getString("key_poi");
+                        if(string != null) {
+                            message = string;
                         }
-//                        if(metadata == null) {
-//                            Toast toast = Toast.makeText(getApplicationContext(), "Not here", Toast.LENGTH_SHORT);
-//                            toast.show();
-//                        } else if(metadata.getString("New York").equals("New York")) {
-//                            Toast toast = Toast.makeText(getApplicationContext(), "You found New York", Toast.LENGTH_SHORT);
-//                            toast.show();
-//                        }
                     }
-                });
+                } else if(pickedItem instanceof Place) {
+                    message = ((Place) pickedItem).getTitle();
+                } else if(pickedItem instanceof GeocodingCache.Result) {
+                    message = ((GeocodingCache.Result) pickedItem).title;
+                }
+
+                if(message != null) {
+                    Toast toast = Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT);
+                    toast.show();
+                }
             }
         });
     }
@@ -351,153 +551,754 @@ public class MainActivity extends AppCompatActivity {
         int maxItems = 5;
         SearchOptions searchOptions = new SearchOptions(LanguageCode.EN_US, maxItems);
         EditText editText = findViewById(R.id.searchText);
-        TextQuery textQuery = new TextQuery(editText.getText().toString(), getScreenCenter());
+        String query = editText.getText().toString();
+        GeoCoordinates center = getScreenCenter();
+
+        // Searches made before the engine is ready run once it is.
+        searchEngineFuture.whenReady(engine -> searchDispatcher.searchPlaces(query, center, searchOptions, new SearchCallback() {
+            final long startNanos = searchPlacesTimer.start();
 
-        searchEngine.search(textQuery, searchOptions, new SearchCallback() {
             @Override
             public void onSearchCompleted(SearchError searchError, List<Place> list) {
+                searchPlacesTimer.stop(startNanos);
+                if(searchError != null) {
+                    searchErrorCounter.increment();
+                    Log.d(TAG, "Search failed: " + searchError.name());
+                    return;
+                }
+                long allocationsBefore = pinnedViewPool.getAllocationCount();
+                // The new results replace the ones of the previous search, a place listed twice is shown once.
+                clearPlaceResults();
+                Set<String> placeIds = new HashSet<>();
                 for(Place result : list) {
-                    TextView textView = new TextView(getApplicationContext());
-                    textView.setTextColor(android.graphics.Color.parseColor("#FFFFFF"));
-                    textView.setText(result.getTitle() + "\n" + result.getAddress().addressText);
+                    if(!placeIds.add(getPlaceId(result))) {
+                        continue;
+                    }
+                    addToSuggestionIndex(result);
+                    placeResults.add(result);
+                    mapItemIndex.add(result.getGeoCoordinates().latitude, result.getGeoCoordinates().longitude, result);
+                }
+                loadPlaceClusters();
+                logOverlayStats(pinnedViewPool.getAllocationCount() - allocationsBefore);
+            }
+        }));
+    }
 
-                    LinearLayout linearLayout = new LinearLayout(getApplicationContext());
-                    linearLayout.setBackgroundResource(R.color.colorPrimary);
-                    linearLayout.setPadding(10, 10, 10, 10);
-                    linearLayout.addView(textView);
+    public void searchAddress(View view) {
+        // Search by specific text input, repeated lookups are answered by the geocoding cache.
+        EditText editText = findViewById(R.id.searchText);
+        String query = editText.getText().toString();
+        GeoCoordinates center = getScreenCenter();
 
-                    mapView.pinView(linearLayout, result.getGeoCoordinates());
+        geocodingCache.geocode(query, center.latitude, center.longitude, new GeocodingCache.Callback() {
+            @Override
+            public void onGeocoded(@Nullable String error, List<GeocodingCache.Result> results) {
+                if(error != null) {
+                    Log.d(TAG, "Search failed: " + error);
+                    return;
                 }
+                long allocationsBefore = pinnedViewPool.getAllocationCount();
+                for(GeocodingCache.Result result : results) {
+                    addToSuggestionIndex(result.title, result.addressText, result.latitude, result.longitude);
+                    GeoCoordinates coordinates = new GeoCoordinates(result.latitude, result.longitude);
+                    // Only the latest address stays pinned, its view is recycled for the next one.
+                    clearAddressResult();
+                    pinnedAddressView = pinnedViewPool.pin(result.title + "\n" + result.addressText, coordinates);
+                    pinnedAddressResult = result;
+                    mapItemIndex.add(result.latitude, result.longitude, result);
+
+                    cameraAnimator.flyTo(result.latitude, result.longitude, CAMERA_FLIGHT_MILLIS);
+                }
+                logOverlayStats(pinnedViewPool.getAllocationCount() - allocationsBefore);
             }
         });
     }
 
-    public void searchAddress(View view) {
-        // Search by specific text input
+    // Address lookups the geocoding cache can not answer go to the search engine.
+    private void geocodeWithSearchEngine(String query, double latitude, double longitude,
+                                         GeocodingCache.Callback callback) {
         int maxItems = 1;
         SearchOptions searchOptions = new SearchOptions(LanguageCode.EN_US, maxItems);
-        EditText editText = findViewById(R.id.searchText);
-        AddressQuery addressQuery = new AddressQuery(editText.getText().toString(), getScreenCenter());
+        GeoCoordinates center = new GeoCoordinates(latitude, longitude);
+        searchEngineFuture.whenReady(engine -> searchDispatcher.searchAddress(query, center, searchOptions, new SearchCallback() {
+            final long startNanos = searchAddressTimer.start();
 
-        searchEngine.search(addressQuery, searchOptions, new SearchCallback() {
             @Override
             public void onSearchCompleted(SearchError searchError, List<Place> list) {
-                for(Place result : list) {
-                    TextView textView = new TextView(getApplicationContext());
-                    textView.setTextColor(android.graphics.Color.parseColor("#FFFFFF"));
-                    textView.setText(result.getTitle() + "\n" + result.getAddress().addressText);
+                searchAddressTimer.stop(startNanos);
+                if(searchError != null) {
+                    searchErrorCounter.increment();
+                    callback.onGeocoded(searchError.name(), Collections.<GeocodingCache.Result>emptyList());
+                    return;
+                }
+                List<GeocodingCache.Result> results = new ArrayList<>(list.size());
+                for(Place place : list) {
+                    results.add(new GeocodingCache.Result(place.getTitle(), place.getAddress().addressText,
+                            place.getGeoCoordinates().latitude, place.getGeoCoordinates().longitude));
+                }
+                callback.onGeocoded(null, results);
+            }
+        }));
+    }
+
+    // Places without an id are told apart by title and position.
+    private static String getPlaceId(Place place) {
+        String id = place.getId();
+        if(id != null && !id.isEmpty()) {
+            return id;
+        }
+        GeoCoordinates coordinates = place.getGeoCoordinates();
+        return place.getTitle() + '@' + coordinates.latitude + ',' + coordinates.longitude;
+    }
+
+    private void clearPlaceResults() {
+        for(Place place : placeResults) {
+            mapItemIndex.remove(place);
+        }
+        placeResults.clear();
+        for(View view : pinnedClusters.values()) {
+            pinnedViewPool.unpin(view);
+        }
+        pinnedClusters.clear();
+    }
+
+    private void clearAddressResult() {
+        if(pinnedAddressView != null) {
+            pinnedViewPool.unpin(pinnedAddressView);
+            pinnedAddressView = null;
+        }
+        if(pinnedAddressResult != null) {
+            mapItemIndex.remove(pinnedAddressResult);
+            pinnedAddressResult = null;
+        }
+    }
+
+    private void logOverlayStats(long allocations) {
+        Log.d(TAG, "Pinned views: " + pinnedViewPool.getLiveViewCount() + " live, "
+                + pinnedViewPool.getPooledViewCount() + " pooled, " + allocations + " allocated by this search. "
+                + "Frame time: " + frameTimeMonitor.getAverageFrameTimeMillis() + " ms avg, "
+                + frameTimeMonitor.getWorstFrameTimeMillis() + " ms worst, "
+                + frameTimeMonitor.getSlowFrameCount() + "/" + frameTimeMonitor.getFrameCount() + " slow.");
+        frameTimeMonitor.reset();
+    }
+
+    private void loadPlaceClusters() {
+        CoordinateBuffer positions = new CoordinateBuffer(placeResults.size());
+        for(Place place : placeResults) {
+            positions.add(place.getGeoCoordinates().latitude, place.getGeoCoordinates().longitude);
+        }
+        placeClusterer.load(positions, placeResults);
+        updatePlaceClusters(mapView.getCamera().getState().zoomLevel);
+    }
+
+    // Pins only clusters that became visible and unpins the ones that left the viewport or were merged.
+    private void updatePlaceClusters(double zoomLevel) {
+        if(placeResults.isEmpty()) {
+            return;
+        }
+        List<MarkerClusterer.Cluster<Place>> visibleClusters = new ArrayList<>();
+        GeoBox viewport = mapView.getCamera().getBoundingBox();
+        if(viewport != null) {
+            placeClusterer.getClusters(zoomLevel,
+                    viewport.southWestCorner.latitude, viewport.southWestCorner.longitude,
+                    viewport.northEastCorner.latitude, viewport.northEastCorner.longitude, visibleClusters);
+        } else {
+            // The bounding box is not defined when the horizon is visible, fall back to all clusters.
+            placeClusterer.getClusters(zoomLevel, -90, -180, 90, 180, visibleClusters);
+        }
+
+        Set<MarkerClusterer.Cluster<Place>> visibleSet = new HashSet<>(visibleClusters);
+        Iterator<Map.Entry<MarkerClusterer.Cluster<Place>, View>> pinned = pinnedClusters.entrySet().iterator();
+        while(pinned.hasNext()) {
+            Map.Entry<MarkerClusterer.Cluster<Place>, View> entry = pinned.next();
+            if(!visibleSet.contains(entry.getKey())) {
+                pinnedViewPool.unpin(entry.getValue());
+                pinned.remove();
+            }
+        }
+
+        for(MarkerClusterer.Cluster<Place> cluster : visibleClusters) {
+            if(pinnedClusters.containsKey(cluster)) {
+                continue;
+            }
+            String text = cluster.count == 1
+                    ? cluster.item.getTitle() + "\n" + cluster.item.getAddress().addressText
+                    : cluster.count + " places";
+            pinnedClusters.put(cluster, pinnedViewPool.pin(text, new GeoCoordinates(cluster.latitude, cluster.longitude)));
+        }
+    }
+
+    public void searchAutoSuggest(View view) {
+        EditText editText = findViewById(R.id.searchText);
+        requestSuggestions(editText.getText().toString());
+    }
+
+    private void setSearchTextWatcher() {
+        EditText editText = findViewById(R.id.searchText);
+        editText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence charSequence, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence charSequence, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable editable) {
+                // Every keystroke goes through the dispatcher, it only asks the engine once typing pauses.
+                requestSuggestions(editable.toString());
+            }
+        });
+    }
+
+    private void requestSuggestions(String text) {
+        ListView listView = findViewById(R.id.suggestionsListView);
+        if(text.trim().length() < 2) {
+            // Place and address searches started meanwhile keep running.
+            if(searchDispatcher != null) {
+                searchDispatcher.cancelSuggestions();
+            }
+            listView.setVisibility(View.GONE);
+            return;
+        }
+
+        int maxItems = 3;
+        SearchOptions searchOptions = new SearchOptions(LanguageCode.EN_US, maxItems);
+        GeoCoordinates center = getScreenCenter();
+
+        // Show what we already know right away, the engine results are merged in when they arrive.
+        List<String> localSuggestions = suggestionIndex.suggest(text, center.latitude, center.longitude, maxItems);
+        showSuggestions(localSuggestions);
 
-                    LinearLayout linearLayout = new LinearLayout(getApplicationContext());
-                    linearLayout.setBackgroundResource(R.color.colorPrimary);
-                    linearLayout.setPadding(10, 10, 10, 10);
-                    linearLayout.addView(textView);
+        searchEngineFuture.whenReady(engine -> searchDispatcher.suggest(text, center, searchOptions, new SuggestCallback() {
+            final long startNanos = suggestTimer.start();
 
-                    mapView.pinView(linearLayout, result.getGeoCoordinates());
+            @Override
+            public void onSuggestCompleted(SearchError searchError, List<Suggestion> list) {
+                suggestTimer.stop(startNanos);
+                if(searchError != null) {
+                    searchErrorCounter.increment();
+                    Log.d(TAG, "Suggest failed: " + searchError.name());
+                    return;
+                }
+                ArrayList<String> arrayList = new ArrayList<>(localSuggestions);
 
-                    mapView.getCamera().lookAt(result.getGeoCoordinates());
+                for(Suggestion suggestResult : list) {
+                    Place place = suggestResult.getPlace();
+                    String title = place != null ? place.getTitle() : suggestResult.getTitle();
+                    if(!arrayList.contains(title)) {
+                        arrayList.add(title);
+                    }
                 }
+                showSuggestions(arrayList);
+
+                Log.d(TAG, "Suggestions after " + searchDispatcher.getLastSuggestionLatencyMillis() + " ms, "
+                        + "request amplification: " + searchDispatcher.getRequestAmplification());
+            }
+        }));
+    }
+
+    private void showSuggestions(List<String> suggestions) {
+        ArrayAdapter<String> arrayAdapter = new ArrayAdapter<>(getApplicationContext(), android.R.layout.simple_list_item_1, suggestions);
+
+        ListView listView = findViewById(R.id.suggestionsListView);
+        listView.setAdapter(arrayAdapter);
+        listView.setVisibility(suggestions.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    private void addToSuggestionIndex(Place place) {
+        GeoCoordinates coordinates = place.getGeoCoordinates();
+        addToSuggestionIndex(place.getTitle(), place.getAddress().addressText, coordinates.latitude, coordinates.longitude);
+    }
+
+    private void addToSuggestionIndex(String title, String addressText, double latitude, double longitude) {
+        suggestionIndex.add(title, latitude, longitude);
+        suggestionIndex.add(addressText, latitude, longitude);
+    }
+
+    private File getSuggestionIndexFile() {
+        return new File(getFilesDir(), "suggestions.bin");
+    }
+
+    private void loadSuggestionIndex() {
+        File file = getSuggestionIndexFile();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SuggestionIndex loadedIndex = SuggestionIndex.load(file);
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Results recorded while loading are folded into the loaded index, the next save keeps both.
+                            loadedIndex.merge(suggestionIndex);
+                            suggestionIndex = loadedIndex;
+                            Log.d(TAG, "Loaded " + suggestionIndex.size() + " suggestions.");
+                        }
+                    });
+                } catch(IOException e) {
+                    Log.e(TAG, "Loading suggestions failed.", e);
+                }
+            }
+        });
+    }
+
+    private void saveSuggestionIndex() {
+        if(!suggestionIndex.isDirty()) {
+            return;
+        }
+        SuggestionIndex indexToSave = suggestionIndex;
+        File file = getSuggestionIndexFile();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    indexToSave.save(file);
+                } catch(IOException e) {
+                    Log.e(TAG, "Saving suggestions failed.", e);
+                }
+            }
+        });
+    }
+
+    private File getGeocodingCacheFile() {
+        return new File(getFilesDir(), "geocoding.bin");
+    }
+
+    private void loadGeocodingCache() {
+        File file = getGeocodingCacheFile();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    geocodingCache.load(file);
+                    Log.d(TAG, "Loaded " + geocodingCache.size() + " geocoded addresses.");
+                } catch(IOException e) {
+                    Log.e(TAG, "Loading geocoded addresses failed.", e);
+                }
+            }
+        });
+    }
+
+    private void saveGeocodingCache() {
+        if(!geocodingCache.isDirty()) {
+            return;
+        }
+        File file = getGeocodingCacheFile();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    geocodingCache.save(file);
+                } catch(IOException e) {
+                    Log.e(TAG, "Saving geocoded addresses failed.", e);
+                }
+            }
+        });
+    }
+
+    private File getSessionJournalFile() {
+        return new File(getFilesDir(), "session.journal");
+    }
+
+    // Replays the journal off the main thread and puts the stops and the last route back without routing again.
+    private void restoreSession() {
+        File file = getSessionJournalFile();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                SessionJournal.Session session;
+                try {
+                    sessionJournal = AppServices.get().getSessionJournal(file);
+                    session = sessionJournal.getSession();
+                } catch(IOException e) {
+                    Log.e(TAG, "Restoring session failed.", e);
+                    return;
+                }
+                long restoreMillis = (System.nanoTime() - startNanos) / 1_000_000;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        applySession(session);
+                        Log.d(TAG, "Restored " + session.waypoints.size() + " waypoints and "
+                                + (session.route != null ? session.route.size() : 0) + " route vertices in "
+                                + restoreMillis + " ms.");
+                    }
+                });
             }
         });
+    }
+
+    private void applySession(SessionJournal.Session session) {
+        // Stops tapped while the journal was read were appended after the restored ones, keep that order.
+        List<Waypoint> tappedWaypoints = new ArrayList<>(waypoints);
+        List<MapMarker> tappedMarkers = new ArrayList<>(waypointMarkers);
+        waypoints.clear();
+        waypointMarkers.clear();
+        MapImage waypointImage = MapImageFactory.fromResource(this.getResources(), R.drawable.marker);
+        for(int i = 0; i < session.waypoints.size(); i++) {
+            addWaypoint(new GeoCoordinates(session.waypoints.getLatitude(i), session.waypoints.getLongitude(i)), waypointImage);
+        }
+        waypoints.addAll(tappedWaypoints);
+        waypointMarkers.addAll(tappedMarkers);
 
+        // A route drawn, still being drawn or cleared since start is newer than the journaled one.
+        if(session.route != null && routeVersion == 0) {
+            drawRouteGeometry(session.route);
+        }
     }
 
-//    public void searchAutoSuggest(View view) {
-//
-//        int maxItems = 3;
-//        SearchOptions searchOptions = new SearchOptions(LanguageCode.EN_US, maxItems);
-//        EditText editText = findViewById(R.id.searchText);
-//        TextQuery textQuery = new TextQuery(editText.getText().toString(), getScreenCenter());
-//
-//        searchEngine.suggest(textQuery, searchOptions, new SuggestCallback() {
-//            @Override
-//            public void onSuggestCompleted(SearchError searchError, List<Suggestion> list) {
-//                // Error
-//                ArrayList<String> arrayList = new ArrayList<>();
-//
-//                for(Suggestion suggestResult : list) {
-//                    Place place = suggestResult.getPlace();
-//                    if(place != null) {
-//                        arrayList.add(place.getTitle());
-//                    } else {
-//                        arrayList.add(suggestResult.getTitle());
-//                    }
-//                }
-//
-//                ArrayAdapter<String> arrayAdapter = new ArrayAdapter<>(getApplicationContext(), android.R.layout.simple_list_item_1, arrayList);
-//
-//                ListView listView = findViewById(R.id.suggestionsListView);
-//                listView.setAdapter(arrayAdapter);
-//
-//            }
-//        });
-//    }
+    private void writeSession(SessionWrite write) {
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(sessionJournal == null) {
+                    return;
+                }
+                try {
+                    write.write(sessionJournal);
+                } catch(IOException e) {
+                    Log.e(TAG, "Writing session failed.", e);
+                }
+            }
+        });
+    }
 
     private void setLongPressGestureHandler() {
         mapView.getGestures().setLongPressListener(((gestureState, touchPoint) -> {
          if(gestureState == GestureState.BEGIN) {
              MapImage waypointImage = MapImageFactory.fromResource(this.getResources(), R.drawable.marker);
-             MapMarker waypointMarker = new MapMarker(mapView.viewToGeoCoordinates(touchPoint), waypointImage);
-             mapView.getMapScene().addMapMarker(waypointMarker);
-
-             waypointMarkers.add(waypointMarker);
-
-             waypoints.add(new Waypoint(mapView.viewToGeoCoordinates(touchPoint)));
+             GeoCoordinates waypointCoordinates = mapView.viewToGeoCoordinates(touchPoint);
+             addWaypoint(waypointCoordinates, waypointImage);
+             writeSession(journal -> journal.appendWaypoint(waypointCoordinates.latitude, waypointCoordinates.longitude));
+             // Extending a shown route only needs the new last leg.
+             if(!routeLayer.isEmpty() && legRouter != null) {
+                 requestRoute();
+             }
          }
             }));
     }
 
-    public void calculateRoute(View view) {
+    private void addWaypoint(GeoCoordinates waypointCoordinates, MapImage waypointImage) {
+        MapMarker waypointMarker = new MapMarker(waypointCoordinates, waypointImage);
+        waypointLayer.addMarker(waypointMarker);
+        mapItemIndex.add(waypointCoordinates.latitude, waypointCoordinates.longitude, waypointMarker);
 
-        // Check out the code below for customized routing
+        waypointMarkers.add(waypointMarker);
 
-//        RouteOptions routeOptions = new RouteOptions();
-//        routeOptions.alternatives = 3;
-//        routeOptions.optimizationMode = OptimizationMode.FASTEST;
-//
-////        HazardousGood.COMBUSTIBLE;
-//
-//        CarOptions options = new CarOptions(routeOptions, new RouteTextOptions(), new AvoidanceOptions());
+        waypoints.add(new Waypoint(waypointCoordinates));
+    }
 
-        routingEngine.calculateRoute(
-                waypoints,
-                new CarOptions(), // This will be TruckOptions in the main app!!
-                new CalculateRouteCallback() {
-                    @Override
-                    public void onRouteCalculated(RoutingError routingError, List<Route> routes) {
-                        if(routingError == null) {
-                            Route route = routes.get(0);
-                            drawRoute(route);
-                        } else {
+    public void calculateRoute(View view) {
+        // A press before the engine is ready is replayed once it is, with the stops known by then.
+        routingEngineFuture.whenReady(engine -> optimizeAndRequestRoute());
+    }
 
+    private void optimizeAndRequestRoute() {
+        if(waypoints.size() < 4) {
+            requestRoute();
+            return;
+        }
+
+        // Reorder the stops off the main thread, the first tapped stop stays the start of the tour.
+        CoordinateBuffer stops = new CoordinateBuffer(waypoints.size());
+        for(Waypoint waypoint : waypoints) {
+            stops.add(waypoint.coordinates.latitude, waypoint.coordinates.longitude);
+        }
+        List<Waypoint> tappedWaypoints = new ArrayList<>(waypoints);
+        // Runs on computePool, ioExecutor stays free for the journal and the caches.
+        stopSequenceOptimizer.optimize(stops, true, false, STOP_SEQUENCE_BUDGET_MILLIS, new StopSequenceOptimizer.Callback() {
+            @Override
+            public void onOptimized(int[] order) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Stops may have been added or cleared in the meantime, then the order no longer applies.
+                        if(waypoints.equals(tappedWaypoints)) {
+                            applyStopSequence(order);
                         }
+                        requestRoute();
                     }
+                });
+            }
+        });
+    }
+
+    private void applyStopSequence(int[] order) {
+        List<Waypoint> orderedWaypoints = new ArrayList<>(order.length);
+        List<MapMarker> orderedMarkers = new ArrayList<>(order.length);
+        for(int index : order) {
+            orderedWaypoints.add(waypoints.get(index));
+            orderedMarkers.add(waypointMarkers.get(index));
+        }
+        waypoints.clear();
+        waypoints.addAll(orderedWaypoints);
+        waypointMarkers.clear();
+        waypointMarkers.addAll(orderedMarkers);
+
+        CoordinateBuffer orderedStops = new CoordinateBuffer(waypoints.size());
+        for(Waypoint waypoint : waypoints) {
+            orderedStops.add(waypoint.coordinates.latitude, waypoint.coordinates.longitude);
+        }
+        writeSession(journal -> journal.setWaypoints(orderedStops));
+    }
+
+    private void requestRoute() {
+        // The route on the map is the car route, compareRoutes() weighs it against the truck profiles on request.
+        CarOptions carOptions = new CarOptions();
+        long startNanos = routeTimer.start();
+        // Only legs whose end points changed since the last request are routed again.
+        legRouter.calculate(waypoints, carOptions, new LegRouter.Listener() {
+            @Override
+            public void onLegsCalculated(List<CoordinateBuffer> legs, @Nullable RoutingError routingError) {
+                if(routingError != null) {
+                    routeErrorCounter.increment();
+                    Log.d(TAG, "Routing failed: " + routingError.name());
+                    return;
                 }
-        );
+                drawLegs(legs, startNanos);
+            }
+        });
     }
 
-    private void drawRoute(Route route) {
-        GeoPolyline routeGeoPolyline;
+    public void compareRoutes(View view) {
+        // Only on request, a comparison asks the engine once per profile unless the stops were compared before.
+        routingEngineFuture.whenReady(engine -> compareRoutes());
+    }
 
-        try {
-            routeGeoPolyline = new GeoPolyline(route.getPolyline());
-        } catch(InstantiationErrorException e) {
+    // Routes the stops for every vehicle profile with alternatives and reports the best one.
+    private void compareRoutes() {
+        if(waypoints.size() < 2 || routeComparator == null) {
             return;
         }
-        routePolyline = new MapPolyline(routeGeoPolyline, 20, Color.valueOf(0, 0.56f, 0.54f, 0.63f));
+        if(routeComparison != null) {
+            routeComparison.cancel();
+        }
+        RouteComparator.Scorer scorer = new RouteComparator.WeightedScorer(1, 0.01, 60,
+                Collections.<HazardousGood>emptyList());
+        routeComparison = routeComparator.compare(new ArrayList<>(waypoints), createRouteProfiles(), ROUTE_ALTERNATIVES,
+                scorer, ROUTE_COMPARISON_BUDGET_MILLIS, new RouteComparator.Listener() {
+            @Override
+            public void onCompared(RouteComparator.Comparison comparison) {
+                routeComparison = null;
+                Log.d(TAG, "Route comparison in " + comparison.elapsedMillis + " ms: " + comparison.ranking
+                        + ", " + comparison.duplicateCount + " duplicates, " + comparison.ruledOutCount + " ruled out, failed "
+                        + comparison.failedProfiles + ", late " + comparison.lateProfiles + ".");
+                RouteComparator.Candidate best = comparison.getBest();
+                if(best != null) {
+                    Toast.makeText(getApplicationContext(), "Best: " + best.profile.name + ", "
+                            + best.durationInSeconds / 60 + " min", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    private List<RouteComparator.Profile> createRouteProfiles() {
+        RouteOptions routeOptions = new RouteOptions();
+        routeOptions.optimizationMode = OptimizationMode.FASTEST;
+        CarOptions carOptions = new CarOptions(routeOptions, new RouteTextOptions(), new AvoidanceOptions());
+
+        TruckOptions truckOptions = new TruckOptions();
+        TruckOptions hazardousTruckOptions = new TruckOptions();
+        hazardousTruckOptions.hazardousGoods = new ArrayList<>();
+        hazardousTruckOptions.hazardousGoods.add(HazardousGood.COMBUSTIBLE);
+
+        List<RouteComparator.Profile> profiles = new ArrayList<>(3);
+        profiles.add(RouteComparator.Profile.car("car", carOptions));
+        profiles.add(RouteComparator.Profile.truck("truck", truckOptions));
+        profiles.add(RouteComparator.Profile.truck("truck (combustible)", hazardousTruckOptions));
+        return profiles;
+    }
 
-        mapView.getMapScene().addMapPolyline(routePolyline);
+    // Simplifying long legs takes a while, the main thread only adds the finished polylines.
+    private void drawLegs(List<CoordinateBuffer> legs, long editStartNanos) {
+        RouteLayer.PreparedLegs preparedLegs = routeLayer.prepare(legs);
+        int version = ++routeVersion;
+        computePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                preparedLegs.build();
+                // The joined geometry is only needed for the journal and map matching.
+                CoordinateBuffer geometry = RouteLayer.join(preparedLegs.getGeometries());
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(version != routeVersion) {
+                            return;
+                        }
+                        routeLayer.setLegs(preparedLegs);
+                        routeTimer.stop(editStartNanos);
+                        Log.d(TAG, "Route has " + routeLayer.getLegCount() + " legs, " + routeLayer.getLastAddedLegCount()
+                                + " redrawn, " + routeLayer.getRenderedVertexCount() + " vertices rendered.");
+                        // Queued from here so a newer route or a clearMap() always writes after this one.
+                        writeSession(journal -> journal.setRoute(geometry));
+                    }
+                });
+                createRouteMatcher(geometry, version);
+                planCorridorTiles(geometry, version);
+            }
+        });
 
 //        routeTextView.append("Currently " + route.getTrafficDelayInSeconds() + " seconds slow due to traffic.");
     }
 
+    private void drawRouteGeometry(CoordinateBuffer polyline) {
+        RouteLayer.PreparedLegs preparedLegs = routeLayer.prepare(Collections.singletonList(polyline));
+        int version = ++routeVersion;
+        computePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                preparedLegs.build();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(version == routeVersion) {
+                            routeLayer.setLegs(preparedLegs);
+                        }
+                    }
+                });
+                createRouteMatcher(polyline, version);
+                planCorridorTiles(polyline, version);
+            }
+        });
+    }
+
+    // Builds the segment index in the background, it is dropped if the route changed meanwhile.
+    private void createRouteMatcher(CoordinateBuffer geometry, int version) {
+        if(geometry.size() < 2) {
+            return;
+        }
+        RouteMatcher matcher = new RouteMatcher(geometry, new RouteMatcher.Listener() {
+            @Override
+            public void onOffRoute(double distanceFromRouteInMeters) {
+                Log.d(TAG, "Off route by " + Math.round(distanceFromRouteInMeters) + " m.");
+                recordNavigationEvent("offRoute");
+                Toast.makeText(getApplicationContext(), "Off route", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onBackOnRoute() {
+                Log.d(TAG, "Back on route.");
+                recordNavigationEvent("backOnRoute");
+            }
+
+            @Override
+            public void onArrived() {
+                recordNavigationEvent("arrived");
+                Toast.makeText(getApplicationContext(), "Arrived", Toast.LENGTH_SHORT).show();
+            }
+        });
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if(version == routeVersion) {
+                    routeMatcher = matcher;
+                }
+            }
+        });
+    }
+
+    // Works out the map tiles along the route, the order in which a prefetch should fetch them.
+    private void planCorridorTiles(CoordinateBuffer geometry, int version) {
+        if(geometry.isEmpty()) {
+            return;
+        }
+        long startNanos = corridorPlanTimer.start();
+        CorridorTilePlanner.Plan plan = CorridorTilePlanner.plan(geometry, CORRIDOR_BUFFER_IN_METERS,
+                CORRIDOR_MIN_ZOOM, CORRIDOR_MAX_ZOOM);
+        corridorPlanTimer.stop(startNanos);
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if(version == routeVersion) {
+                    corridorTilePlan = plan;
+                    Log.d(TAG, "Route corridor covers " + plan.getTileCount() + " tiles, "
+                            + plan.getTiles(CORRIDOR_MAX_ZOOM).length + " at zoom " + CORRIDOR_MAX_ZOOM + ".");
+                }
+            }
+        });
+    }
+
+    /**
+     * Entry point for position fixes, called on the main thread by the location source.
+     *
+     * @param bearingInDegrees heading of the fix, NaN if unknown.
+     */
+    public void onPositionUpdate(double latitude, double longitude, double bearingInDegrees) {
+        cameraAnimator.follow(latitude, longitude, bearingInDegrees, System.nanoTime());
+        if(routeMatcher == null) {
+            return;
+        }
+        long startNanos = matchTimer.start();
+        routeMatcher.update(latitude, longitude, bearingInDegrees);
+        matchTimer.stop(startNanos);
+    }
+
     public void clearMap(View view) {
         for(MapMarker marker : waypointMarkers) {
-            mapView.getMapScene().removeMapMarker(marker);
+            mapItemIndex.remove(marker);
+        }
+        for(MapMarker marker : demoLayer.getMarkers()) {
+            mapItemIndex.remove(marker);
+        }
+        waypointMarkers.clear();
+        waypointLayer.clear();
+        demoLayer.clear();
+        clearPlaceResults();
+        clearAddressResult();
+
+        routeLayer.clear();
+        routeMatcher = null;
+        routeVersion++;
+        if(legRouter != null) {
+            legRouter.cancel();
+        }
+        if(routeComparison != null) {
+            routeComparison.cancel();
+            routeComparison = null;
         }
-
-        mapView.getMapScene().removeMapPolyline(routePolyline);
 
         waypoints.clear();
+        writeSession(journal -> journal.clear());
+    }
+
+    private final Runnable metricsOverlayUpdate = new Runnable() {
+        @Override
+        public void run() {
+            TextView overlay = findViewById(R.id.debugOverlay);
+            overlay.setText(metrics.describe() + String.format(Locale.ROOT, "geocode hit rate %.0f%%\n",
+                    geocodingCache.getHitRate() * 100)
+                    + String.format(Locale.ROOT, "map objects %d markers %d polylines %d views, scene calls %d last %d max%n",
+                    mapObjects.getMarkerCount(), mapObjects.getPolylineCount(), mapObjects.getPinnedViewCount(),
+                    mapObjects.getLastFlushSceneCalls(), mapObjects.getMaxFlushSceneCalls()));
+            metricsHandler.postDelayed(this, METRICS_OVERLAY_INTERVAL_MILLIS);
+        }
+    };
+
+    private final Runnable metricsExport = new Runnable() {
+        @Override
+        public void run() {
+            exportMetrics();
+            metricsHandler.postDelayed(this, METRICS_EXPORT_INTERVAL_MILLIS);
+        }
+    };
+
+    private void exportMetrics() {
+        long timeMillis = System.currentTimeMillis();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StringBuilder lines = new StringBuilder();
+                metrics.snapshot(timeMillis, lines);
+                try {
+                    metricsExporter.export(lines);
+                } catch(IOException e) {
+                    Log.e(TAG, "Exporting metrics failed.", e);
+                }
+            }
+        });
     }
 
     // Helper function
@@ -512,17 +1313,43 @@ public class MainActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         mapView.onPause();
+        frameTimeMonitor.stop();
+        cameraAnimator.cancel();
+        saveSuggestionIndex();
+        saveGeocodingCache();
+        writeSession(journal -> journal.sync());
+        metricsHandler.removeCallbacks(metricsOverlayUpdate);
+        metricsHandler.removeCallbacks(metricsExport);
+        exportMetrics();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         mapView.onResume();
+        frameTimeMonitor.start();
+        metricsHandler.postDelayed(metricsExport, METRICS_EXPORT_INTERVAL_MILLIS);
+        if(BuildConfig.DEBUG) {
+            metricsHandler.post(metricsOverlayUpdate);
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mapObjects.release();
         mapView.onDestroy();
+        if(traceLocationSource != null) {
+            traceLocationSource.stop();
+        }
+        // The executors and the journal belong to the process, a recreated activity keeps using them.
+        // Results still arriving for this instance are dropped.
+        if(legRouter != null) {
+            legRouter.cancel();
+        }
+        if(routeComparison != null) {
+            routeComparison.cancel();
+        }
+        writeSession(journal -> journal.sync());
     }
 }
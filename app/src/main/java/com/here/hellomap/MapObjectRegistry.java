@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.view.Choreographer;
+import android.view.View;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.mapview.MapMarker;
+import com.here.sdk.mapview.MapPolyline;
+import com.here.sdk.mapview.MapScene;
+import com.here.sdk.mapview.MapView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Owns every marker, polyline and pinned view the app puts on the map, grouped in layers.
+ * Layers only record what should be shown. Once per frame the registry diffs that against what is
+ * on the map and applies the difference, so an object added and removed within a frame never
+ * reaches the scene and markers are added and removed in one call each.
+ * Main thread only.
+ */
+public class MapObjectRegistry implements Choreographer.FrameCallback {
+
+    private final MapScene mapScene;
+    private final MapView mapView;
+    private final List<Layer> layers = new ArrayList<>();
+    private final Metrics.Timer flushTimer;
+    private final Metrics.Counter sceneCallCounter;
+    private final Metrics.Counter flushCounter;
+    private boolean scheduled;
+    private boolean released;
+
+    private int lastFlushSceneCalls;
+    private int maxFlushSceneCalls;
+
+    // Reused between flushes.
+    private final List<MapMarker> markersToAdd = new ArrayList<>();
+    private final List<MapMarker> markersToRemove = new ArrayList<>();
+
+    public class Layer {
+        private final String name;
+        // What should be on the map. Clearing swaps in empty collections, the diff does the rest.
+        private Set<MapMarker> markers = newIdentitySet();
+        private Set<MapPolyline> polylines = newIdentitySet();
+        private Map<View, GeoCoordinates> pinnedViews = new IdentityHashMap<>();
+        // What is on the map.
+        private final Set<MapMarker> renderedMarkers = newIdentitySet();
+        private final Set<MapPolyline> renderedPolylines = newIdentitySet();
+        private final Map<View, GeoCoordinates> renderedViews = new IdentityHashMap<>();
+        private boolean dirty;
+
+        Layer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void addMarker(MapMarker marker) {
+            if (markers.add(marker)) {
+                invalidate();
+            }
+        }
+
+        public void removeMarker(MapMarker marker) {
+            if (markers.remove(marker)) {
+                invalidate();
+            }
+        }
+
+        public void addPolyline(MapPolyline polyline) {
+            if (polylines.add(polyline)) {
+                invalidate();
+            }
+        }
+
+        public void removePolyline(MapPolyline polyline) {
+            if (polylines.remove(polyline)) {
+                invalidate();
+            }
+        }
+
+        /**
+         * Pins a view, pinning an already pinned view moves it.
+         */
+        public void pinView(View view, GeoCoordinates coordinates) {
+            pinnedViews.put(view, coordinates);
+            invalidate();
+        }
+
+        public void unpinView(View view) {
+            if (pinnedViews.remove(view) != null) {
+                invalidate();
+            }
+        }
+
+        /**
+         * Removes everything of this layer. Takes constant time, the scene is updated with the next frame.
+         */
+        public void clear() {
+            if (markers.isEmpty() && polylines.isEmpty() && pinnedViews.isEmpty()) {
+                return;
+            }
+            markers = newIdentitySet();
+            polylines = newIdentitySet();
+            pinnedViews = new IdentityHashMap<>();
+            invalidate();
+        }
+
+        public Collection<MapMarker> getMarkers() {
+            return Collections.unmodifiableSet(markers);
+        }
+
+        public int getMarkerCount() {
+            return markers.size();
+        }
+
+        public int getPolylineCount() {
+            return polylines.size();
+        }
+
+        public int getPinnedViewCount() {
+            return pinnedViews.size();
+        }
+
+        private void invalidate() {
+            dirty = true;
+            schedule();
+        }
+
+        private void collectMarkerChanges() {
+            for (MapMarker marker : renderedMarkers) {
+                if (!markers.contains(marker)) {
+                    markersToRemove.add(marker);
+                }
+            }
+            for (MapMarker marker : markers) {
+                if (!renderedMarkers.contains(marker)) {
+                    markersToAdd.add(marker);
+                }
+            }
+            renderedMarkers.clear();
+            renderedMarkers.addAll(markers);
+        }
+
+        // Returns the number of scene calls made.
+        private int applyPolylineAndViewChanges() {
+            int calls = 0;
+            List<MapPolyline> removedPolylines = new ArrayList<>();
+            for (MapPolyline polyline : renderedPolylines) {
+                if (!polylines.contains(polyline)) {
+                    removedPolylines.add(polyline);
+                }
+            }
+            for (MapPolyline polyline : removedPolylines) {
+                mapScene.removeMapPolyline(polyline);
+                renderedPolylines.remove(polyline);
+                calls++;
+            }
+            for (MapPolyline polyline : polylines) {
+                if (renderedPolylines.add(polyline)) {
+                    mapScene.addMapPolyline(polyline);
+                    calls++;
+                }
+            }
+
+            List<View> removedViews = new ArrayList<>();
+            for (Map.Entry<View, GeoCoordinates> rendered : renderedViews.entrySet()) {
+                GeoCoordinates coordinates = pinnedViews.get(rendered.getKey());
+                if (coordinates != rendered.getValue()) {
+                    removedViews.add(rendered.getKey());
+                }
+            }
+            for (View view : removedViews) {
+                mapView.unpinView(view);
+                renderedViews.remove(view);
+                calls++;
+            }
+            for (Map.Entry<View, GeoCoordinates> pinned : pinnedViews.entrySet()) {
+                if (!renderedViews.containsKey(pinned.getKey())) {
+                    mapView.pinView(pinned.getKey(), pinned.getValue());
+                    renderedViews.put(pinned.getKey(), pinned.getValue());
+                    calls++;
+                }
+            }
+            return calls;
+        }
+    }
+
+    public MapObjectRegistry(MapView mapView, Metrics metrics) {
+        this.mapView = mapView;
+        this.mapScene = mapView.getMapScene();
+        this.flushTimer = metrics.timer("map.flush");
+        this.sceneCallCounter = metrics.counter("map.sceneCalls");
+        this.flushCounter = metrics.counter("map.flushes");
+    }
+
+    public Layer createLayer(String name) {
+        Layer layer = new Layer(name);
+        layers.add(layer);
+        return layer;
+    }
+
+    public void clearAll() {
+        for (Layer layer : layers) {
+            layer.clear();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        if (!released) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies all pending changes now instead of with the next frame.
+     */
+    public void flush() {
+        long startNanos = flushTimer.start();
+        int calls = 0;
+        for (Layer layer : layers) {
+            if (layer.dirty) {
+                layer.collectMarkerChanges();
+            }
+        }
+        // Removals first, so an object moved between layers is never on the map twice.
+        if (!markersToRemove.isEmpty()) {
+            mapScene.removeMapMarkers(markersToRemove);
+            calls++;
+        }
+        if (!markersToAdd.isEmpty()) {
+            mapScene.addMapMarkers(markersToAdd);
+            calls++;
+        }
+        markersToRemove.clear();
+        markersToAdd.clear();
+        for (Layer layer : layers) {
+            if (layer.dirty) {
+                calls += layer.applyPolylineAndViewChanges();
+                layer.dirty = false;
+            }
+        }
+        flushTimer.stop(startNanos);
+        flushCounter.increment();
+        sceneCallCounter.add(calls);
+        lastFlushSceneCalls = calls;
+        maxFlushSceneCalls = Math.max(maxFlushSceneCalls, calls);
+    }
+
+    /**
+     * Stops flushing, for when the map view is destroyed.
+     */
+    public void release() {
+        released = true;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    public int getMarkerCount() {
+        int count = 0;
+        for (Layer layer : layers) {
+            count += layer.renderedMarkers.size();
+        }
+        return count;
+    }
+
+    public int getPolylineCount() {
+        int count = 0;
+        for (Layer layer : layers) {
+            count += layer.renderedPolylines.size();
+        }
+        return count;
+    }
+
+    public int getPinnedViewCount() {
+        int count = 0;
+        for (Layer layer : layers) {
+            count += layer.renderedViews.size();
+        }
+        return count;
+    }
+
+    public int getLastFlushSceneCalls() {
+        return lastFlushSceneCalls;
+    }
+
+    public int getMaxFlushSceneCalls() {
+        return maxFlushSceneCalls;
+    }
+
+    private void schedule() {
+        if (!scheduled && !released) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private static <T> Set<T> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    }
+}
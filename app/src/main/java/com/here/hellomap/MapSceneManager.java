@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.here.sdk.mapview.MapError;
+import com.here.sdk.mapview.MapScene;
+import com.here.sdk.mapview.MapScheme;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Switches map schemes and custom styles without stacking loads on top of each other.
+ * A switch that arrives while another scene is loading replaces any switch still waiting, so at most one
+ * load runs and one waits. Custom styles are extracted from the style pack in the background ahead of time
+ * and the paths of the extracted scenes are kept in a small LRU cache. Switch latency is recorded here only,
+ * as one timer per scene.
+ * All methods must be called on the main thread.
+ */
+public class MapSceneManager {
+
+    private static final String TAG = MapSceneManager.class.getSimpleName();
+    private static final int MAX_PREPARED_STYLES = 4;
+
+    public interface Listener {
+        /**
+         * @param switchNanos time from the request of the scene until it was loaded.
+         */
+        void onSceneLoaded(String sceneName, long switchNanos, @Nullable MapError mapError);
+    }
+
+    private final MapScene mapScene;
+    private final AssetManager assetManager;
+    private final File styleDirectory;
+    private final Executor backgroundExecutor;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Metrics metrics;
+    private final Map<String, Metrics.Timer> switchTimers = new HashMap<>();
+    // Paths of the extracted scene files by custom style file name, least recently used first.
+    private final LinkedHashMap<String, String> preparedStyles = new LinkedHashMap<String, String>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_PREPARED_STYLES;
+        }
+    };
+    private StylePack stylePack;
+
+    // Either a MapScheme or the file name of a custom scene.
+    private Object loadingScene;
+    private Object pendingScene;
+    private long pendingRequestedAtNanos;
+    private long supersededCount;
+
+    /**
+     * @param styleDirectory where the style pack is extracted, e.g. below the app's no-backup files.
+     */
+    public MapSceneManager(MapScene mapScene, AssetManager assetManager, File styleDirectory,
+                           Executor backgroundExecutor, Metrics metrics, Listener listener) {
+        this.mapScene = mapScene;
+        this.metrics = metrics;
+        this.assetManager = assetManager;
+        this.styleDirectory = styleDirectory;
+        this.backgroundExecutor = backgroundExecutor;
+        this.listener = listener;
+    }
+
+    public void load(MapScheme scheme) {
+        request(scheme);
+    }
+
+    public void loadCustomStyle(String sceneFilename) {
+        request(sceneFilename);
+    }
+
+    /**
+     * Gets a custom style ready ahead of a likely switch: its files are extracted from the style pack
+     * and its path cached, so the switch itself goes straight to the renderer. The SDK offers no way to
+     * prepare a scene without showing it, so built-in schemes, which ship with the SDK, are ignored.
+     */
+    public void preload(Object scene) {
+        if (!(scene instanceof String) || preparedStyles.containsKey(scene)) {
+            return;
+        }
+        prepareCustomStyle((String) scene, false, 0);
+    }
+
+    public long getSupersededCount() {
+        return supersededCount;
+    }
+
+    private void request(Object scene) {
+        if (pendingScene != null) {
+            supersededCount++;
+        }
+        pendingScene = scene;
+        pendingRequestedAtNanos = SystemClock.elapsedRealtimeNanos();
+        if (loadingScene == null) {
+            startPending();
+        }
+    }
+
+    private void startPending() {
+        final Object scene = pendingScene;
+        final long requestedAtNanos = pendingRequestedAtNanos;
+        pendingScene = null;
+        if (scene == null) {
+            return;
+        }
+        loadingScene = scene;
+
+        if (scene instanceof MapScheme) {
+            mapScene.loadScene((MapScheme) scene, createCallback(scene, requestedAtNanos));
+        } else if (preparedStyles.containsKey(scene)) {
+            mapScene.loadScene(preparedStyles.get(scene), createCallback(scene, requestedAtNanos));
+        } else {
+            prepareCustomStyle((String) scene, true, requestedAtNanos);
+        }
+    }
+
+    private void prepareCustomStyle(final String sceneFilename, final boolean loadWhenReady, final long requestedAtNanos) {
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String scenePath = extract(sceneFilename);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (scenePath != null) {
+                            preparedStyles.put(sceneFilename, scenePath);
+                        }
+                        if (!loadWhenReady) {
+                            return;
+                        }
+                        if (scenePath != null) {
+                            mapScene.loadScene(scenePath, createCallback(sceneFilename, requestedAtNanos));
+                        } else {
+                            Log.e(TAG, "Map style " + sceneFilename + " is missing or corrupt.");
+                            finish(sceneFilename, requestedAtNanos, MapError.UNKNOWN);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Runs on the background executor, the pack is only opened and extracted once per version.
+    @Nullable
+    private synchronized String extract(String sceneFilename) {
+        try {
+            if (stylePack == null) {
+                stylePack = StylePack.open(assetManager);
+            }
+            if (!stylePack.contains(sceneFilename)) {
+                return null;
+            }
+            return new File(stylePack.extractTo(styleDirectory), sceneFilename).getAbsolutePath();
+        } catch (IOException e) {
+            Log.e(TAG, "Extracting the map style pack failed.", e);
+            return null;
+        }
+    }
+
+    private MapScene.LoadSceneCallback createCallback(final Object scene, final long requestedAtNanos) {
+        return new MapScene.LoadSceneCallback() {
+            @Override
+            public void onLoadScene(@Nullable MapError mapError) {
+                finish(scene, requestedAtNanos, mapError);
+            }
+        };
+    }
+
+    private void finish(Object scene, long requestedAtNanos, @Nullable MapError mapError) {
+        String sceneName = scene.toString();
+        Metrics.Timer timer = switchTimers.get(sceneName);
+        if (timer == null) {
+            timer = metrics.timer("scene.load." + sceneName);
+            switchTimers.put(sceneName, timer);
+        }
+        long switchNanos = SystemClock.elapsedRealtimeNanos() - requestedAtNanos;
+        timer.record(switchNanos);
+        loadingScene = null;
+
+        // A scene that was superseded while loading is not reported, the newer one follows right away.
+        if (pendingScene == null) {
+            listener.onSceneLoaded(sceneName, switchNanos, mapError);
+        }
+        startPending();
+    }
+}
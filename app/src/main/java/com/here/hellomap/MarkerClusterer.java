@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hierarchical grid clustering of map points.
+ * Every zoom level is clustered from the level below it, so the whole pyramid is built once per data set
+ * and camera moves only query the visible part of one precomputed level.
+ */
+public class MarkerClusterer<T> {
+
+    private static final int TILE_SIZE_IN_PIXELS = 256;
+
+    private final int minZoom;
+    private final int maxZoom;
+    private final double radiusInPixels;
+
+    // Index 0 holds minZoom, the last entry holds the unclustered points above maxZoom.
+    private List<SpatialIndex<Cluster<T>>> levels;
+
+    public static class Cluster<T> {
+        public final double latitude;
+        public final double longitude;
+        public final int count;
+        // An item of the cluster to show when it is not worth expanding it.
+        public final T item;
+
+        final double x;
+        final double y;
+
+        Cluster(double x, double y, int count, T item) {
+            this.x = x;
+            this.y = y;
+            this.count = count;
+            this.item = item;
+            this.longitude = (x - 0.5) * 360;
+            this.latitude = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+        }
+    }
+
+    public MarkerClusterer(int minZoom, int maxZoom, double radiusInPixels) {
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.radiusInPixels = radiusInPixels;
+    }
+
+    public void load(CoordinateBuffer positions, List<T> items) {
+        int levelCount = maxZoom - minZoom + 2;
+        // Filled from the top level down, every slot is set before the levels are published.
+        List<SpatialIndex<Cluster<T>>> levels = new ArrayList<>(
+                Collections.<SpatialIndex<Cluster<T>>>nCopies(levelCount, null));
+
+        int count = items.size();
+        List<Cluster<T>> clusters = new ArrayList<>(count);
+        SpatialIndex<Cluster<T>> points = new SpatialIndex<>();
+        for (int i = 0; i < count; i++) {
+            double sinLatitude = Math.sin(Math.toRadians(positions.getLatitude(i)));
+            double x = positions.getLongitude(i) / 360 + 0.5;
+            double y = 0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI);
+            Cluster<T> cluster = new Cluster<>(x, Math.max(0, Math.min(1, y)), 1, items.get(i));
+            clusters.add(cluster);
+            points.add(cluster.latitude, cluster.longitude, cluster);
+        }
+        levels.set(levelCount - 1, points);
+
+        for (int zoom = maxZoom; zoom >= minZoom; zoom--) {
+            clusters = clusterLevel(clusters, zoom);
+            SpatialIndex<Cluster<T>> level = new SpatialIndex<>();
+            for (Cluster<T> cluster : clusters) {
+                level.add(cluster.latitude, cluster.longitude, cluster);
+            }
+            levels.set(zoom - minZoom, level);
+        }
+        this.levels = levels;
+    }
+
+    /**
+     * Adds the clusters of the given zoom level that lie inside the bounding box to the result list.
+     */
+    public void getClusters(double zoomLevel, double south, double west, double north, double east,
+                            List<Cluster<T>> result) {
+        if (levels == null) {
+            return;
+        }
+        int zoom = (int) Math.floor(zoomLevel);
+        int level = Math.max(0, Math.min(levels.size() - 1, zoom - minZoom));
+        levels.get(level).query(south, west, north, east, result);
+    }
+
+    private List<Cluster<T>> clusterLevel(List<Cluster<T>> children, int zoom) {
+        double cellSize = radiusInPixels / (TILE_SIZE_IN_PIXELS * Math.pow(2, zoom));
+        long cellsPerRow = (long) Math.ceil(1 / cellSize);
+
+        HashMap<Long, Integer> cellToCluster = new HashMap<>();
+        int childCount = children.size();
+        double[] sumX = new double[childCount];
+        double[] sumY = new double[childCount];
+        int[] counts = new int[childCount];
+        int[] representatives = new int[childCount];
+        int clusterCount = 0;
+
+        for (int i = 0; i < childCount; i++) {
+            Cluster<T> child = children.get(i);
+            long cell = (long) (child.y / cellSize) * cellsPerRow + (long) (child.x / cellSize);
+            Integer target = cellToCluster.get(cell);
+            if (target == null) {
+                target = clusterCount++;
+                cellToCluster.put(cell, target);
+                representatives[target] = i;
+            }
+            // Weighted centroid so large child clusters pull the parent towards them.
+            sumX[target] += child.x * child.count;
+            sumY[target] += child.y * child.count;
+            counts[target] += child.count;
+        }
+
+        List<Cluster<T>> clusters = new ArrayList<>(clusterCount);
+        for (int i = 0; i < clusterCount; i++) {
+            Cluster<T> representative = children.get(representatives[i]);
+            if (representative.count == counts[i]) {
+                // Nothing merged into this cell, reuse the child so it keeps its identity across levels.
+                clusters.add(representative);
+            } else {
+                clusters.add(new Cluster<>(sumX[i] / counts[i], sumY[i] / counts[i], counts[i], representative.item));
+            }
+        }
+        return clusters;
+    }
+}
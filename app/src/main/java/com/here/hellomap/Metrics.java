@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named timers and counters for the hot paths of the app. Metrics are registered once up front,
+ * recording is lock-free and does not allocate. Snapshots drain what was recorded since the previous
+ * snapshot into the totals, so every export line covers one interval.
+ */
+public class Metrics {
+
+    private final List<Timer> timers = new ArrayList<>();
+    private final List<Counter> counters = new ArrayList<>();
+
+    public static class Timer {
+        private final String name;
+        private final LatencyHistogram current = new LatencyHistogram();
+        // Only touched while taking a snapshot.
+        private final LatencyHistogram interval = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the start time to pass to {@link #stop(long)}.
+         */
+        public long start() {
+            return System.nanoTime();
+        }
+
+        public void stop(long startNanos) {
+            current.record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            current.record(nanos);
+        }
+
+        /**
+         * Values recorded since the last snapshot.
+         */
+        public LatencyHistogram getCurrent() {
+            return current;
+        }
+
+        /**
+         * Values of all snapshots taken so far.
+         */
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+    }
+
+    public static class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+        private long lastSnapshotValue;
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public synchronized Timer timer(String name) {
+        Timer timer = new Timer(name);
+        timers.add(timer);
+        return timer;
+    }
+
+    public synchronized Counter counter(String name) {
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Appends one CSV line per metric that changed since the previous snapshot:
+     * "time,timer,count,p50,p90,p99,max" with latencies in microseconds, or "time,counter,delta".
+     */
+    public synchronized void snapshot(long timeMillis, StringBuilder out) {
+        long time = timeMillis / 1000;
+        for (Timer timer : timers) {
+            timer.current.drainTo(timer.interval);
+            if (timer.interval.getCount() == 0) {
+                continue;
+            }
+            out.append(time).append(',').append(timer.name).append(',').append(timer.interval.getCount())
+                    .append(',').append(timer.interval.getPercentileNanos(50) / 1000)
+                    .append(',').append(timer.interval.getPercentileNanos(90) / 1000)
+                    .append(',').append(timer.interval.getPercentileNanos(99) / 1000)
+                    .append(',').append(timer.interval.getMaxNanos() / 1000)
+                    .append('\n');
+            timer.interval.drainTo(timer.total);
+        }
+        for (Counter counter : counters) {
+            long value = counter.value.get();
+            if (value != counter.lastSnapshotValue) {
+                out.append(time).append(',').append(counter.name).append(',')
+                        .append(value - counter.lastSnapshotValue).append('\n');
+                counter.lastSnapshotValue = value;
+            }
+        }
+    }
+
+    /**
+     * Human readable summary for the debug overlay, covering everything recorded so far.
+     */
+    public synchronized String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (Timer timer : timers) {
+            long count = timer.total.getCount() + timer.current.getCount();
+            if (count == 0) {
+                continue;
+            }
+            // Percentiles of the snapshots plus the worst value since, exact enough for a glance.
+            LatencyHistogram histogram = timer.total.getCount() > 0 ? timer.total : timer.current;
+            builder.append(String.format(Locale.ROOT, "%s n=%d p50=%.1f p99=%.1f max=%.1f ms%n",
+                    timer.name, count,
+                    histogram.getPercentileNanos(50) / 1e6,
+                    histogram.getPercentileNanos(99) / 1e6,
+                    Math.max(timer.total.getMaxNanos(), timer.current.getMaxNanos()) / 1e6));
+        }
+        for (Counter counter : counters) {
+            builder.append(counter.name).append(' ').append(counter.value.get()).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends metric snapshots to a local file and rotates it once it grows too large,
+ * keeping a bounded number of older files next to it ("metrics.csv", "metrics.csv.1", ...).
+ */
+public class MetricsExporter {
+
+    private static final String HEADER = "# time,timer,count,p50_us,p90_us,p99_us,max_us | time,counter,delta\n";
+
+    private final File file;
+    private final long maxFileBytes;
+    private final int maxRotatedFiles;
+
+    public MetricsExporter(File file, long maxFileBytes, int maxRotatedFiles) {
+        if (maxFileBytes <= 0 || maxRotatedFiles < 0) {
+            throw new IllegalArgumentException("Invalid metrics export configuration.");
+        }
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxRotatedFiles = maxRotatedFiles;
+    }
+
+    public void export(CharSequence lines) throws IOException {
+        if (lines.length() == 0) {
+            return;
+        }
+        if (file.length() + lines.length() > maxFileBytes) {
+            rotate();
+        }
+        boolean isNewFile = !file.exists() || file.length() == 0;
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            if (isNewFile) {
+                writer.write(HEADER);
+            }
+            writer.append(lines);
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (maxRotatedFiles == 0) {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Could not delete " + file);
+            }
+            return;
+        }
+        File oldest = rotatedFile(maxRotatedFiles);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Could not delete " + oldest);
+        }
+        for (int i = maxRotatedFiles - 1; i >= 1; i--) {
+            File rotated = rotatedFile(i);
+            if (rotated.exists() && !rotated.renameTo(rotatedFile(i + 1))) {
+                throw new IOException("Could not rotate " + rotated);
+            }
+        }
+        if (file.exists() && !file.renameTo(rotatedFile(1))) {
+            throw new IOException("Could not rotate " + file);
+        }
+    }
+
+    private File rotatedFile(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.here.sdk.core.GeoCoordinates;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pins text labels onto the map and recycles their views once they are unpinned.
+ */
+public class PinnedViewPool {
+
+    private final Context context;
+    private final MapObjectRegistry.Layer layer;
+    private final int maxPooledViews;
+    private final ArrayDeque<LinearLayout> pooledViews = new ArrayDeque<>();
+
+    private int liveViewCount;
+    private long allocationCount;
+
+    public PinnedViewPool(Context context, MapObjectRegistry.Layer layer, int maxPooledViews) {
+        this.context = context;
+        this.layer = layer;
+        this.maxPooledViews = maxPooledViews;
+    }
+
+    public View pin(String text, GeoCoordinates coordinates) {
+        LinearLayout linearLayout = pooledViews.poll();
+        if (linearLayout == null) {
+            linearLayout = createView();
+            allocationCount++;
+        }
+        ((TextView) linearLayout.getChildAt(0)).setText(text);
+        layer.pinView(linearLayout, coordinates);
+        liveViewCount++;
+        return linearLayout;
+    }
+
+    public void unpin(View view) {
+        layer.unpinView(view);
+        liveViewCount--;
+        // Views beyond the bound are left to the garbage collector.
+        if (pooledViews.size() < maxPooledViews) {
+            pooledViews.push((LinearLayout) view);
+        }
+    }
+
+    public int getLiveViewCount() {
+        return liveViewCount;
+    }
+
+    public int getPooledViewCount() {
+        return pooledViews.size();
+    }
+
+    public long getAllocationCount() {
+        return allocationCount;
+    }
+
+    private LinearLayout createView() {
+        TextView textView = new TextView(context);
+        textView.setTextColor(android.graphics.Color.parseColor("#FFFFFF"));
+
+        LinearLayout linearLayout = new LinearLayout(context);
+        linearLayout.setBackgroundResource(R.color.colorPrimary);
+        linearLayout.setPadding(10, 10, 10, 10);
+        linearLayout.addView(textView);
+        return linearLayout;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+/**
+ * Douglas-Peucker polyline simplification.
+ */
+public final class PolylineSimplifier {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private PolylineSimplifier() {
+    }
+
+    /**
+     * Simplifies a polyline.
+     *
+     * @param toleranceInMeters maximum distance a dropped vertex may have from the simplified line.
+     * @return a new buffer, the first and last vertex are always kept.
+     */
+    public static CoordinateBuffer simplify(CoordinateBuffer polyline, double toleranceInMeters) {
+        int vertexCount = polyline.size();
+        if (vertexCount < 3 || toleranceInMeters <= 0) {
+            return CoordinateBuffer.wrap(polyline.toArray());
+        }
+        double[] latLon = polyline.toArray();
+
+        // Work in a local equirectangular projection so the tolerance can be compared in meters.
+        double longitudeScale = Math.cos(Math.toRadians(latLon[0]));
+        double tolerance = toleranceInMeters / METERS_PER_DEGREE;
+        double toleranceSquared = tolerance * tolerance;
+
+        boolean[] keep = new boolean[vertexCount];
+        keep[0] = true;
+        keep[vertexCount - 1] = true;
+        int keptCount = 2;
+
+        // Explicit stack of index ranges instead of recursion, routes can have millions of vertices.
+        int[] stack = new int[64];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = vertexCount - 1;
+
+        while (stackSize > 0) {
+            int last = stack[--stackSize];
+            int first = stack[--stackSize];
+
+            double maxDistanceSquared = 0;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distanceSquared = segmentDistanceSquared(latLon, i, first, last, longitudeScale);
+                if (distanceSquared > maxDistanceSquared) {
+                    maxDistanceSquared = distanceSquared;
+                    farthest = i;
+                }
+            }
+
+            if (farthest != -1 && maxDistanceSquared > toleranceSquared) {
+                keep[farthest] = true;
+                keptCount++;
+                if (stackSize + 4 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, stackSize);
+                    stack = grown;
+                }
+                stack[stackSize++] = first;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = last;
+            }
+        }
+
+        CoordinateBuffer simplified = new CoordinateBuffer(keptCount);
+        for (int i = 0; i < vertexCount; i++) {
+            if (keep[i]) {
+                simplified.add(latLon[i * 2], latLon[i * 2 + 1]);
+            }
+        }
+        return simplified;
+    }
+
+    private static double segmentDistanceSquared(double[] latLon, int point, int start, int end, double longitudeScale) {
+        double px = latLon[point * 2 + 1] * longitudeScale;
+        double py = latLon[point * 2];
+        double ax = latLon[start * 2 + 1] * longitudeScale;
+        double ay = latLon[start * 2];
+        double bx = latLon[end * 2 + 1] * longitudeScale;
+        double by = latLon[end * 2];
+
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
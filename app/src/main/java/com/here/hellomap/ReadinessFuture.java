@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An engine that is created in the background. Callers register what they want to do with it
+ * and are called back on the main thread once it exists, calls made before that are queued
+ * and run in the order they were made.
+ * Apart from {@link #create(Executor, Factory)} all methods must be called on the main thread.
+ */
+public class ReadinessFuture<T> {
+
+    public interface Factory<T> {
+        T create() throws Exception;
+    }
+
+    public interface Callback<T> {
+        void onReady(T engine);
+    }
+
+    public interface FailureCallback {
+        void onFailed(Exception exception);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Callback<T>> pendingCallbacks = new ArrayList<>();
+    private final List<FailureCallback> failureCallbacks = new ArrayList<>();
+
+    @Nullable
+    private T engine;
+    @Nullable
+    private Exception error;
+    private long initializationNanos;
+
+    private ReadinessFuture() {
+    }
+
+    /**
+     * Runs the factory on the executor.
+     */
+    public static <T> ReadinessFuture<T> create(Executor executor, Factory<T> factory) {
+        ReadinessFuture<T> future = new ReadinessFuture<>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                T engine = null;
+                Exception error = null;
+                try {
+                    engine = factory.create();
+                } catch (Exception e) {
+                    error = e;
+                }
+                long initializationNanos = System.nanoTime() - startNanos;
+                T createdEngine = engine;
+                Exception creationError = error;
+                future.mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        future.complete(createdEngine, creationError, initializationNanos);
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs the callback right away if the engine is ready, otherwise queues it.
+     * Queued callbacks are dropped if creating the engine fails.
+     */
+    public void whenReady(Callback<T> callback) {
+        if (engine != null) {
+            callback.onReady(engine);
+        } else if (error == null) {
+            pendingCallbacks.add(callback);
+        }
+    }
+
+    public void whenFailed(FailureCallback callback) {
+        if (error != null) {
+            callback.onFailed(error);
+        } else if (engine == null) {
+            failureCallbacks.add(callback);
+        }
+    }
+
+    public boolean isReady() {
+        return engine != null;
+    }
+
+    @Nullable
+    public T getNow() {
+        return engine;
+    }
+
+    public int getPendingCount() {
+        return pendingCallbacks.size();
+    }
+
+    /**
+     * Time the factory took on the background thread, without waiting for the main thread.
+     */
+    public long getInitializationMillis() {
+        return initializationNanos / 1_000_000;
+    }
+
+    private void complete(@Nullable T createdEngine, @Nullable Exception creationError, long nanos) {
+        engine = createdEngine;
+        error = createdEngine == null && creationError == null
+                ? new IllegalStateException("Factory returned null.") : creationError;
+        initializationNanos = nanos;
+        if (engine != null) {
+            // Callbacks may queue more work while the queue is drained, run those as well.
+            for (int i = 0; i < pendingCallbacks.size(); i++) {
+                pendingCallbacks.get(i).onReady(engine);
+            }
+        } else {
+            for (FailureCallback callback : failureCallbacks) {
+                callback.onFailed(error);
+            }
+        }
+        pendingCallbacks.clear();
+        failureCallbacks.clear();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache for calculated routes, keyed by the waypoint sequence snapped to a grid
+ * and a fingerprint of the vehicle options used to calculate them. The fingerprint is only a hash,
+ * so every entry keeps its options and a hit is only returned for options that are equal.
+ *
+ * @param <R> what is kept per key, e.g. the legs of a tour or the candidates of a route comparison.
+ */
+public class RouteCache<R> {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double gridInDegrees;
+    private final Clock clock;
+
+    private final LinkedHashMap<String, Entry<R>> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries upper bound on stored routes, least recently used ones are evicted first.
+     * @param ttlMillis time after which a stored route is considered stale, 0 to keep routes forever.
+     * @param gridInDegrees size of the grid waypoints are snapped to, e.g. 0.0001 is roughly 10 meters.
+     */
+    public RouteCache(int maxEntries, long ttlMillis, double gridInDegrees) {
+        this(maxEntries, ttlMillis, gridInDegrees, Clock.ELAPSED_REALTIME);
+    }
+
+    /**
+     * @param clock the time the ttl is measured with.
+     */
+    public RouteCache(int maxEntries, long ttlMillis, double gridInDegrees, Clock clock) {
+        if (maxEntries <= 0 || ttlMillis < 0 || gridInDegrees <= 0) {
+            throw new IllegalArgumentException("Invalid route cache configuration.");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.gridInDegrees = gridInDegrees;
+        this.clock = clock;
+        // Access order turns the map into an LRU list, the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Builds the lookup key. Waypoints that differ only by long press jitter smaller than
+     * the grid size map to the same key.
+     */
+    public String createKey(List<Waypoint> waypoints, Object vehicleOptions) {
+        StringBuilder key = new StringBuilder(waypoints.size() * 24 + 32);
+        for (Waypoint waypoint : waypoints) {
+            GeoCoordinates coordinates = waypoint.coordinates;
+            key.append(Math.round(coordinates.latitude / gridInDegrees))
+                    .append(',')
+                    .append(Math.round(coordinates.longitude / gridInDegrees))
+                    .append(';');
+        }
+        // HERE SDK option classes implement value based equals() and hashCode().
+        key.append(vehicleOptions.getClass().getSimpleName())
+                .append('#')
+                .append(Integer.toHexString(vehicleOptions.hashCode()));
+        return key.toString();
+    }
+
+    /**
+     * @param vehicleOptions the options the key was created with, options that only share the hash miss.
+     */
+    @Nullable
+    public synchronized R get(String key, Object vehicleOptions) {
+        Entry<R> entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null || !entry.vehicleOptions.equals(vehicleOptions)) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.route;
+    }
+
+    /**
+     * @param vehicleOptions must not be modified afterwards, hits are checked against it.
+     */
+    public synchronized void put(String key, Object vehicleOptions, R route) {
+        entries.put(key, new Entry<>(vehicleOptions, route, clock.elapsedRealtime()));
+        Iterator<Map.Entry<String, Entry<R>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    private boolean isExpired(Entry<R> entry) {
+        return ttlMillis > 0 && clock.elapsedRealtime() - entry.createdAtMillis > ttlMillis;
+    }
+
+    private static class Entry<R> {
+        final Object vehicleOptions;
+        final R route;
+        final long createdAtMillis;
+
+        Entry(Object vehicleOptions, R route, long createdAtMillis) {
+            this.vehicleOptions = vehicleOptions;
+            this.route = route;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.here.sdk.routing.CalculateRouteCallback;
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.HazardousGood;
+import com.here.sdk.routing.Route;
+import com.here.sdk.routing.RoutingEngine;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Section;
+import com.here.sdk.routing.TruckOptions;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Requests the same trip for several vehicle profiles at once, each with alternatives, drops
+ * alternatives that follow practically the same roads as a better one of the same profile and ranks
+ * the rest with a pluggable score. Whatever has arrived when the latency budget runs out is ranked,
+ * later answers are ignored. Ranking long routes takes milliseconds, so it runs on the given executor.
+ * Must be used from the main thread, where routes are delivered, the listener is called there too.
+ */
+public class RouteComparator {
+
+    // Two routes are duplicates if this share of the shorter one runs within a cell of the other.
+    private static final double DUPLICATE_OVERLAP = 0.9;
+    private static final double CELL_SIZE_IN_METERS = 100;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    /**
+     * A vehicle to route for, with either car or truck options.
+     */
+    public static class Profile {
+        public final String name;
+        @Nullable
+        public final CarOptions carOptions;
+        @Nullable
+        public final TruckOptions truckOptions;
+
+        private Profile(String name, @Nullable CarOptions carOptions, @Nullable TruckOptions truckOptions) {
+            this.name = name;
+            this.carOptions = carOptions;
+            this.truckOptions = truckOptions;
+        }
+
+        public static Profile car(String name, CarOptions carOptions) {
+            return new Profile(name, carOptions, null);
+        }
+
+        public static Profile truck(String name, TruckOptions truckOptions) {
+            return new Profile(name, null, truckOptions);
+        }
+
+        /**
+         * The car or the truck options, whichever the profile has.
+         */
+        public Object getOptions() {
+            return truckOptions != null ? truckOptions : carOptions;
+        }
+
+        void setAlternatives(int alternatives) {
+            if (truckOptions != null) {
+                truckOptions.routeOptions.alternatives = alternatives;
+            } else {
+                carOptions.routeOptions.alternatives = alternatives;
+            }
+        }
+
+        public Set<HazardousGood> getHazardousGoods() {
+            Set<HazardousGood> goods = EnumSet.noneOf(HazardousGood.class);
+            if (truckOptions != null && truckOptions.hazardousGoods != null) {
+                goods.addAll(truckOptions.hazardousGoods);
+            }
+            return goods;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * One route of a profile, the first alternative is the one the engine prefers.
+     */
+    public static class Candidate {
+        public final Profile profile;
+        public final int alternative;
+        public final CoordinateBuffer geometry;
+        public final int durationInSeconds;
+        public final int lengthInMeters;
+        // In the currency unit of the scorer, zero if the router does not know.
+        public final double tollCost;
+        // Geometry from waypoint i to waypoint i + 1 at index i, null for legs the router could not tell
+        // apart, the whole list is null if the router does not split routes at all.
+        @Nullable
+        public final List<CoordinateBuffer> legs;
+        double score;
+        private long[] cells;
+
+        public Candidate(Profile profile, int alternative, CoordinateBuffer geometry,
+                         int durationInSeconds, int lengthInMeters, double tollCost) {
+            this(profile, alternative, geometry, durationInSeconds, lengthInMeters, tollCost, null);
+        }
+
+        public Candidate(Profile profile, int alternative, CoordinateBuffer geometry,
+                         int durationInSeconds, int lengthInMeters, double tollCost,
+                         @Nullable List<CoordinateBuffer> legs) {
+            this.profile = profile;
+            this.alternative = alternative;
+            this.geometry = geometry;
+            this.durationInSeconds = durationInSeconds;
+            this.lengthInMeters = lengthInMeters;
+            this.tollCost = tollCost;
+            this.legs = legs;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return profile.name + "#" + alternative + " " + durationInSeconds + " s " + lengthInMeters + " m";
+        }
+    }
+
+    public interface Router {
+        void calculate(List<Waypoint> waypoints, Profile profile, int alternatives, Callback callback);
+
+        interface Callback {
+            void onCalculated(@Nullable RoutingError routingError, List<Candidate> candidates);
+        }
+    }
+
+    /**
+     * Rates a candidate, lower is better. Infinite scores rule a candidate out.
+     */
+    public interface Scorer {
+        double score(Candidate candidate);
+    }
+
+    /**
+     * Weighs time, distance and tolls against each other. Profiles that do not declare all
+     * hazardous goods of the cargo are ruled out, their routes may use roads closed to the load.
+     */
+    public static class WeightedScorer implements Scorer {
+        private final double costPerSecond;
+        private final double costPerMeter;
+        private final double costPerToll;
+        private final Set<HazardousGood> cargo;
+
+        public WeightedScorer(double costPerSecond, double costPerMeter, double costPerToll,
+                              Collection<HazardousGood> cargo) {
+            this.costPerSecond = costPerSecond;
+            this.costPerMeter = costPerMeter;
+            this.costPerToll = costPerToll;
+            this.cargo = cargo.isEmpty() ? EnumSet.noneOf(HazardousGood.class) : EnumSet.copyOf(cargo);
+        }
+
+        @Override
+        public double score(Candidate candidate) {
+            if (!candidate.profile.getHazardousGoods().containsAll(cargo)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return candidate.durationInSeconds * costPerSecond + candidate.lengthInMeters * costPerMeter
+                    + candidate.tollCost * costPerToll;
+        }
+    }
+
+    public static class Comparison {
+        // Best first, duplicates and ruled out candidates removed.
+        public final List<Candidate> ranking;
+        public final int duplicateCount;
+        public final int ruledOutCount;
+        public final List<Profile> failedProfiles;
+        // Profiles that had not answered when the budget ran out.
+        public final List<Profile> lateProfiles;
+        public final long elapsedMillis;
+
+        Comparison(List<Candidate> ranking, int duplicateCount, int ruledOutCount, List<Profile> failedProfiles,
+                   List<Profile> lateProfiles, long elapsedMillis) {
+            this.ranking = ranking;
+            this.duplicateCount = duplicateCount;
+            this.ruledOutCount = ruledOutCount;
+            this.failedProfiles = failedProfiles;
+            this.lateProfiles = lateProfiles;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Nullable
+        public Candidate getBest() {
+            return ranking.isEmpty() ? null : ranking.get(0);
+        }
+    }
+
+    public interface Listener {
+        void onCompared(Comparison comparison);
+    }
+
+    private final Router router;
+    private final Executor executor;
+    private final Handler handler;
+    private final Metrics.Timer compareTimer;
+    private final Metrics.Timer rankTimer;
+    private final Metrics.Counter timeoutCounter;
+    private final Metrics.Counter duplicateCounter;
+
+    public RouteComparator(Router router, Executor executor, Metrics metrics) {
+        this.router = router;
+        this.executor = executor;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.compareTimer = metrics.timer("route.compare");
+        this.rankTimer = metrics.timer("route.rank");
+        this.timeoutCounter = metrics.counter("route.compareTimeouts");
+        this.duplicateCounter = metrics.counter("route.duplicatesDropped");
+    }
+
+    /**
+     * Routes the trip for every profile.
+     *
+     * @param alternatives number of alternatives to ask for per profile, in addition to the best route.
+     * @param budgetMillis time after which the comparison completes with the routes received so far.
+     */
+    public Request compare(List<Waypoint> waypoints, List<Profile> profiles, int alternatives,
+                           Scorer scorer, long budgetMillis, Listener listener) {
+        Request request = new Request(profiles, scorer, listener);
+        for (Profile profile : profiles) {
+            router.calculate(waypoints, profile, alternatives, request.callbackFor(profile));
+        }
+        if (!request.completed) {
+            handler.postDelayed(request.budgetExpired, budgetMillis);
+        }
+        return request;
+    }
+
+    public class Request {
+        private final List<Profile> pendingProfiles;
+        private final List<Profile> failedProfiles = new ArrayList<>();
+        private final List<Candidate> candidates = new ArrayList<>();
+        private final Scorer scorer;
+        private final Listener listener;
+        private final long startNanos = compareTimer.start();
+        private boolean completed;
+        private boolean cancelled;
+
+        private final Runnable budgetExpired = new Runnable() {
+            @Override
+            public void run() {
+                timeoutCounter.increment();
+                complete();
+            }
+        };
+
+        Request(List<Profile> profiles, Scorer scorer, Listener listener) {
+            this.pendingProfiles = new ArrayList<>(profiles);
+            this.scorer = scorer;
+            this.listener = listener;
+        }
+
+        /**
+         * Drops the comparison, the listener is not called.
+         */
+        public void cancel() {
+            completed = true;
+            cancelled = true;
+            handler.removeCallbacks(budgetExpired);
+        }
+
+        private Router.Callback callbackFor(final Profile profile) {
+            return new Router.Callback() {
+                @Override
+                public void onCalculated(@Nullable RoutingError routingError, List<Candidate> profileCandidates) {
+                    if (completed || !pendingProfiles.remove(profile)) {
+                        return;
+                    }
+                    if (routingError != null) {
+                        failedProfiles.add(profile);
+                    } else {
+                        candidates.addAll(profileCandidates);
+                    }
+                    if (pendingProfiles.isEmpty()) {
+                        complete();
+                    }
+                }
+            };
+        }
+
+        private void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            handler.removeCallbacks(budgetExpired);
+            final List<Profile> lateProfiles = new ArrayList<>(pendingProfiles);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long rankStartNanos = rankTimer.start();
+                    List<Candidate> ranking = new ArrayList<>(candidates.size());
+                    for (Candidate candidate : candidates) {
+                        candidate.score = scorer.score(candidate);
+                        if (!Double.isInfinite(candidate.score) && !Double.isNaN(candidate.score)) {
+                            ranking.add(candidate);
+                        }
+                    }
+                    int rankedCount = ranking.size();
+                    ranking = removeDuplicates(ranking);
+                    rankTimer.stop(rankStartNanos);
+                    duplicateCounter.add(rankedCount - ranking.size());
+                    final Comparison comparison = new Comparison(ranking, rankedCount - ranking.size(),
+                            candidates.size() - rankedCount, failedProfiles, lateProfiles,
+                            (System.nanoTime() - startNanos) / 1_000_000);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            compareTimer.stop(startNanos);
+                            if (!cancelled) {
+                                listener.onCompared(comparison);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Sorts by score and keeps a candidate only if it is not a duplicate of a better one of its profile.
+     * Another profile on the same roads is kept, it is a result of its own.
+     */
+    static List<Candidate> removeDuplicates(List<Candidate> candidates) {
+        List<Candidate> sorted = new ArrayList<>(candidates);
+        Collections.sort(sorted, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Double.compare(a.score, b.score);
+            }
+        });
+        List<Candidate> kept = new ArrayList<>(sorted.size());
+        for (Candidate candidate : sorted) {
+            boolean duplicate = false;
+            for (Candidate better : kept) {
+                if (better.profile == candidate.profile && overlap(candidate, better) >= DUPLICATE_OVERLAP) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                kept.add(candidate);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Share of the grid cells of the route with fewer cells that have a cell of the other route next
+     * to them. Neighbors count so that two routes along the same road but on either side of a cell
+     * border are still the same.
+     */
+    static double overlap(Candidate a, Candidate b) {
+        long[] cellsA = getCells(a);
+        long[] cellsB = getCells(b);
+        if (cellsA.length > cellsB.length) {
+            long[] swap = cellsA;
+            cellsA = cellsB;
+            cellsB = swap;
+        }
+        if (cellsA.length == 0) {
+            return 0;
+        }
+        int common = 0;
+        for (long cell : cellsA) {
+            if (hasNeighbor(cellsB, cell)) {
+                common++;
+            }
+        }
+        return (double) common / cellsA.length;
+    }
+
+    private static boolean hasNeighbor(long[] sortedCells, long cell) {
+        long row = cell >> 32;
+        long column = (int) cell;
+        for (long dRow = -1; dRow <= 1; dRow++) {
+            for (long dColumn = -1; dColumn <= 1; dColumn++) {
+                if (Arrays.binarySearch(sortedCells, createCell(row + dRow, column + dColumn)) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long createCell(long row, long column) {
+        return (row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    // The sorted, distinct grid cells a route passes, sampled every half cell.
+    private static long[] getCells(Candidate candidate) {
+        if (candidate.cells != null) {
+            return candidate.cells;
+        }
+        CoordinateBuffer geometry = candidate.geometry;
+        if (geometry.isEmpty()) {
+            candidate.cells = new long[0];
+            return candidate.cells;
+        }
+        // One grid for all routes of a trip, anchored at the latitude of the start is close enough.
+        double cellHeight = CELL_SIZE_IN_METERS / METERS_PER_DEGREE;
+        double cellWidth = cellHeight / Math.max(0.01, Math.cos(Math.toRadians(geometry.getLatitude(0))));
+        double sampleSpacing = Math.min(cellHeight, cellWidth) / 2;
+
+        long[] cells = new long[Math.max(16, geometry.size() * 2)];
+        int count = 0;
+        for (int i = 0; i < geometry.size(); i++) {
+            double latitude = geometry.getLatitude(i);
+            double longitude = geometry.getLongitude(i);
+            int samples = 1;
+            double dLatitude = 0;
+            double dLongitude = 0;
+            if (i + 1 < geometry.size()) {
+                dLatitude = geometry.getLatitude(i + 1) - latitude;
+                dLongitude = geometry.getLongitude(i + 1) - longitude;
+                samples = Math.max(1, (int) Math.ceil(Math.max(Math.abs(dLatitude), Math.abs(dLongitude)) / sampleSpacing));
+            }
+            for (int s = 0; s < samples; s++) {
+                double t = (double) s / samples;
+                long row = (long) Math.floor((latitude + dLatitude * t) / cellHeight);
+                long column = (long) Math.floor((longitude + dLongitude * t) / cellWidth);
+                long cell = createCell(row, column);
+                // Consecutive samples mostly hit the same cell.
+                if (count > 0 && cells[count - 1] == cell) {
+                    continue;
+                }
+                if (count == cells.length) {
+                    cells = Arrays.copyOf(cells, count * 2);
+                }
+                cells[count++] = cell;
+            }
+        }
+        Arrays.sort(cells, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || cells[distinct - 1] != cells[i]) {
+                cells[distinct++] = cells[i];
+            }
+        }
+        candidate.cells = Arrays.copyOf(cells, distinct);
+        return candidate.cells;
+    }
+
+    /**
+     * Router backed by the routing engine. The engine version in use does not report tolls.
+     */
+    public static Router engineRouter(final RoutingEngine routingEngine) {
+        return new Router() {
+            @Override
+            public void calculate(List<Waypoint> waypoints, final Profile profile, int alternatives,
+                                  final Callback callback) {
+                final int legCount = waypoints.size() - 1;
+                CalculateRouteCallback routeCallback = new CalculateRouteCallback() {
+                    @Override
+                    public void onRouteCalculated(RoutingError routingError, List<Route> routes) {
+                        if (routingError != null || routes == null) {
+                            callback.onCalculated(routingError != null ? routingError : RoutingError.NO_ROUTE_FOUND,
+                                    Collections.<Candidate>emptyList());
+                            return;
+                        }
+                        List<Candidate> candidates = new ArrayList<>(routes.size());
+                        for (int i = 0; i < routes.size(); i++) {
+                            Route route = routes.get(i);
+                            candidates.add(new Candidate(profile, i, CoordinateBuffer.fromGeoCoordinates(route.getPolyline()),
+                                    route.getDurationInSeconds(), route.getLengthInMeters(), 0,
+                                    splitIntoLegs(route, legCount)));
+                        }
+                        callback.onCalculated(null, candidates);
+                    }
+                };
+                profile.setAlternatives(alternatives);
+                if (profile.truckOptions != null) {
+                    routingEngine.calculateRoute(waypoints, profile.truckOptions, routeCallback);
+                } else {
+                    routingEngine.calculateRoute(waypoints, profile.carOptions, routeCallback);
+                }
+            }
+        };
+    }
+
+    /**
+     * Keeps the routes of each profile, so comparing the same stops again does not ask the router.
+     * Failed requests are not kept.
+     */
+    public static Router cachingRouter(final Router router, final RouteCache<List<Candidate>> routeCache) {
+        return new Router() {
+            @Override
+            public void calculate(List<Waypoint> waypoints, final Profile profile, int alternatives,
+                                  final Callback callback) {
+                // The alternatives are part of the options, set them as the engine router does before comparing.
+                profile.setAlternatives(alternatives);
+                final Object options = profile.getOptions();
+                final String key = routeCache.createKey(waypoints, options);
+                List<Candidate> cachedCandidates = routeCache.get(key, options);
+                if (cachedCandidates != null) {
+                    callback.onCalculated(null, withProfile(cachedCandidates, profile));
+                    return;
+                }
+                router.calculate(waypoints, profile, alternatives, new Callback() {
+                    @Override
+                    public void onCalculated(@Nullable RoutingError routingError, List<Candidate> candidates) {
+                        if (routingError == null) {
+                            routeCache.put(key, options, candidates);
+                        }
+                        callback.onCalculated(routingError, candidates);
+                    }
+                });
+            }
+        };
+    }
+
+    // Fresh candidates for a cached answer, they carry the profile of this request and no ranking state.
+    private static List<Candidate> withProfile(List<Candidate> candidates, Profile profile) {
+        List<Candidate> copies = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            copies.add(new Candidate(profile, candidate.alternative, candidate.geometry,
+                    candidate.durationInSeconds, candidate.lengthInMeters, candidate.tollCost, candidate.legs));
+        }
+        return copies;
+    }
+
+    // Sections are grouped into legs by the waypoints they depart from and arrive at, the engine also starts
+    // a new section where the transport mode changes, e.g. for a ferry. Legs that can not be told apart are null.
+    static List<CoordinateBuffer> splitIntoLegs(Route route, int legCount) {
+        List<List<CoordinateBuffer>> sectionsByLeg = new ArrayList<>(legCount);
+        boolean[] arrived = new boolean[legCount];
+        for (int i = 0; i < legCount; i++) {
+            sectionsByLeg.add(new ArrayList<CoordinateBuffer>());
+        }
+        int leg = -1;
+        for (Section section : route.getSections()) {
+            Integer departureIndex = section.getDeparturePlace().waypointIndex;
+            if (departureIndex != null) {
+                leg = departureIndex;
+            }
+            if (leg < 0 || leg >= legCount || arrived[leg]) {
+                continue;
+            }
+            sectionsByLeg.get(leg).add(CoordinateBuffer.fromGeoCoordinates(section.getPolyline()));
+            Integer arrivalIndex = section.getArrivalPlace().waypointIndex;
+            if (arrivalIndex != null) {
+                arrived[leg] = arrivalIndex == leg + 1;
+                leg = -1;
+            }
+        }
+
+        List<CoordinateBuffer> legs = new ArrayList<>(legCount);
+        for (int i = 0; i < legCount; i++) {
+            legs.add(arrived[i] ? RouteLayer.join(sectionsByLeg.get(i)) : null);
+        }
+        return legs;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import com.here.sdk.core.Color;
+import com.here.sdk.core.GeoPolyline;
+import com.here.sdk.core.errors.InstantiationErrorException;
+import com.here.sdk.mapview.MapPolyline;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders a route as one map polyline per leg, each with its own level of detail.
+ * New leg lists are diffed against the rendered ones by geometry identity, so a changed leg is
+ * spliced in while all other legs stay on the map untouched.
+ */
+public class RouteLayer {
+
+    private static final float WIDTH_IN_PIXELS = 20;
+    private static final Color COLOR = Color.valueOf(0, 0.56f, 0.54f, 0.63f);
+
+    private final MapObjectRegistry.Layer layer;
+    private final List<Leg> legs = new ArrayList<>();
+    private double cameraDistanceInMeters;
+
+    private int lastReusedLegCount;
+    private int lastAddedLegCount;
+
+    private static class Leg {
+        final CoordinateBuffer geometry;
+        final LegLevels levels;
+        MapPolyline polyline;
+        int level = -1;
+
+        Leg(CoordinateBuffer geometry, LegLevels levels) {
+            this.geometry = geometry;
+            this.levels = levels;
+        }
+    }
+
+    /**
+     * The detail levels of a leg with the map geometry of each. Converting a level boxes every vertex
+     * into GeoCoordinates, so each level is converted once and kept while the leg is shown.
+     */
+    private static class LegLevels {
+        final RouteLevelOfDetail levelOfDetail;
+        private final GeoPolyline[] polylines;
+
+        LegLevels(CoordinateBuffer geometry) {
+            levelOfDetail = new RouteLevelOfDetail(geometry);
+            polylines = new GeoPolyline[levelOfDetail.getLevelCount()];
+        }
+
+        /**
+         * Converts every level, call it in the background.
+         */
+        void convertAll() {
+            for (int level = 0; level < polylines.length; level++) {
+                getPolyline(level);
+            }
+        }
+
+        @Nullable
+        GeoPolyline getPolyline(int level) {
+            if (polylines[level] == null) {
+                polylines[level] = createGeoPolyline(levelOfDetail, level);
+            }
+            return polylines[level];
+        }
+    }
+
+    /**
+     * Legs whose levels of detail are built off the main thread. Created by {@link #prepare(List)} on the
+     * main thread, {@link #build()} runs in the background and {@link #setLegs(PreparedLegs)} back on the
+     * main thread only adds the finished polylines.
+     */
+    public static class PreparedLegs {
+        private final List<CoordinateBuffer> geometries;
+        private final Map<CoordinateBuffer, Leg> renderedLegs;
+        private final Map<CoordinateBuffer, LegLevels> builtLevels = new IdentityHashMap<>();
+
+        PreparedLegs(List<CoordinateBuffer> geometries, Map<CoordinateBuffer, Leg> renderedLegs) {
+            this.geometries = new ArrayList<>(geometries);
+            this.renderedLegs = renderedLegs;
+        }
+
+        /**
+         * Simplifies the legs that are not on the map yet and converts all their levels, so later camera
+         * moves only swap polylines. Takes long for long legs, call it in the background.
+         */
+        public PreparedLegs build() {
+            for (CoordinateBuffer geometry : geometries) {
+                if (renderedLegs.containsKey(geometry) || builtLevels.containsKey(geometry)) {
+                    continue;
+                }
+                LegLevels levels = new LegLevels(geometry);
+                levels.convertAll();
+                builtLevels.put(geometry, levels);
+            }
+            return this;
+        }
+
+        public List<CoordinateBuffer> getGeometries() {
+            return geometries;
+        }
+    }
+
+    /**
+     * @param layer receives the polylines, owned by this route layer.
+     */
+    public RouteLayer(MapObjectRegistry.Layer layer) {
+        this.layer = layer;
+    }
+
+    /**
+     * Starts replacing the rendered legs, legs already on the map are reused by geometry identity.
+     */
+    public PreparedLegs prepare(List<CoordinateBuffer> geometries) {
+        Map<CoordinateBuffer, Leg> renderedLegs = new IdentityHashMap<>();
+        for (Leg leg : legs) {
+            renderedLegs.put(leg.geometry, leg);
+        }
+        return new PreparedLegs(geometries, renderedLegs);
+    }
+
+    /**
+     * Shows the built legs. Legs that left the map since {@link #prepare(List)} are built here again.
+     */
+    public void setLegs(PreparedLegs preparedLegs) {
+        Map<CoordinateBuffer, Leg> renderedLegs = new IdentityHashMap<>();
+        Map<CoordinateBuffer, LegLevels> builtLevels = new IdentityHashMap<>(preparedLegs.builtLevels);
+        for (Leg leg : legs) {
+            renderedLegs.put(leg.geometry, leg);
+            builtLevels.put(leg.geometry, leg.levels);
+        }
+
+        List<Leg> newLegs = new ArrayList<>(preparedLegs.geometries.size());
+        lastReusedLegCount = 0;
+        for (CoordinateBuffer geometry : preparedLegs.geometries) {
+            // Removing the hit lets a tour that drives the same leg twice render it twice.
+            Leg leg = renderedLegs.remove(geometry);
+            if (leg != null) {
+                lastReusedLegCount++;
+            } else {
+                LegLevels levels = builtLevels.get(geometry);
+                if (levels == null) {
+                    // Only a leg that left the map since prepare() is built on the main thread.
+                    levels = new LegLevels(geometry);
+                    builtLevels.put(geometry, levels);
+                }
+                leg = new Leg(geometry, levels);
+                updateLevel(leg);
+            }
+            newLegs.add(leg);
+        }
+        for (Leg removedLeg : renderedLegs.values()) {
+            if (removedLeg.polyline != null) {
+                layer.removePolyline(removedLeg.polyline);
+            }
+        }
+
+        lastAddedLegCount = newLegs.size() - lastReusedLegCount;
+        legs.clear();
+        legs.addAll(newLegs);
+    }
+
+    /**
+     * Swaps the geometry of legs whose detail level changes at the new camera distance.
+     */
+    public void setCameraDistance(double distanceInMeters) {
+        cameraDistanceInMeters = distanceInMeters;
+        for (Leg leg : legs) {
+            if (leg.levels.levelOfDetail.getLevelForCameraDistance(distanceInMeters) != leg.level) {
+                updateLevel(leg);
+            }
+        }
+    }
+
+    public void clear() {
+        layer.clear();
+        legs.clear();
+    }
+
+    public boolean isEmpty() {
+        return legs.isEmpty();
+    }
+
+    public int getLegCount() {
+        return legs.size();
+    }
+
+    public int getRenderedVertexCount() {
+        int count = 0;
+        for (Leg leg : legs) {
+            count += leg.level == -1 ? 0 : leg.levels.levelOfDetail.getVertexCount(leg.level);
+        }
+        return count;
+    }
+
+    public int getLastReusedLegCount() {
+        return lastReusedLegCount;
+    }
+
+    public int getLastAddedLegCount() {
+        return lastAddedLegCount;
+    }
+
+    /**
+     * Concatenates legs into one polyline, the shared vertex between two legs is kept once.
+     */
+    public static CoordinateBuffer join(List<CoordinateBuffer> legs) {
+        int vertexCount = 0;
+        for (CoordinateBuffer leg : legs) {
+            vertexCount += leg.size();
+        }
+        CoordinateBuffer joined = new CoordinateBuffer(vertexCount);
+        for (CoordinateBuffer leg : legs) {
+            for (int i = 0; i < leg.size(); i++) {
+                double latitude = leg.getLatitude(i);
+                double longitude = leg.getLongitude(i);
+                int last = joined.size() - 1;
+                if (i == 0 && last >= 0
+                        && joined.getLatitude(last) == latitude && joined.getLongitude(last) == longitude) {
+                    continue;
+                }
+                joined.add(latitude, longitude);
+            }
+        }
+        return joined;
+    }
+
+    private void updateLevel(Leg leg) {
+        int level = leg.levels.levelOfDetail.getLevelForCameraDistance(cameraDistanceInMeters);
+        GeoPolyline geoPolyline = leg.levels.getPolyline(level);
+        if (geoPolyline == null) {
+            return;
+        }
+        if (leg.polyline != null) {
+            layer.removePolyline(leg.polyline);
+        }
+        leg.polyline = new MapPolyline(geoPolyline, WIDTH_IN_PIXELS, COLOR);
+        layer.addPolyline(leg.polyline);
+        leg.level = level;
+    }
+
+    @Nullable
+    private static GeoPolyline createGeoPolyline(RouteLevelOfDetail levelOfDetail, int level) {
+        if (levelOfDetail.getVertexCount(level) < 2) {
+            return null;
+        }
+        try {
+            return new GeoPolyline(levelOfDetail.getLevel(level).toGeoCoordinates());
+        } catch (InstantiationErrorException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+/**
+ * Route geometry precomputed for a fixed set of camera distance bands.
+ * Level 0 holds the full geometry, each further level is simplified for a camera that is farther away.
+ */
+public class RouteLevelOfDetail {
+
+    // Upper camera distance of each band in meters. Distances beyond the last entry use the coarsest level.
+    private static final double[] CAMERA_DISTANCE_BANDS = {2_000, 10_000, 50_000, 250_000, 1_250_000};
+
+    // Tolerance relative to the camera distance, roughly one screen pixel on a phone held upright.
+    private static final double TOLERANCE_PER_METER_OF_DISTANCE = 0.0005;
+
+    private final CoordinateBuffer[] levels;
+
+    public RouteLevelOfDetail(CoordinateBuffer polyline) {
+        levels = new CoordinateBuffer[CAMERA_DISTANCE_BANDS.length + 1];
+        levels[0] = polyline;
+        for (int level = 1; level < levels.length; level++) {
+            double tolerance = CAMERA_DISTANCE_BANDS[level - 1] * TOLERANCE_PER_METER_OF_DISTANCE;
+            // Each level only needs to look at the vertices that survived the finer one.
+            levels[level] = PolylineSimplifier.simplify(levels[level - 1], tolerance);
+        }
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getLevelForCameraDistance(double distanceInMeters) {
+        for (int band = 0; band < CAMERA_DISTANCE_BANDS.length; band++) {
+            if (distanceInMeters <= CAMERA_DISTANCE_BANDS[band]) {
+                return band;
+            }
+        }
+        return CAMERA_DISTANCE_BANDS.length;
+    }
+
+    /**
+     * Returns the geometry of a level. The buffer is shared, do not modify it.
+     */
+    public CoordinateBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    public int getVertexCount(int level) {
+        return levels[level].size();
+    }
+}
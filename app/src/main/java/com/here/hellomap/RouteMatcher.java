@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.Arrays;
+
+/**
+ * Snaps position fixes to a route and tracks the progress along it.
+ * Segments are indexed in a uniform grid stored as sorted primitive arrays. Each fix first looks at
+ * the segments just ahead of the last match and only falls back to the grid when that fails, so a
+ * fix costs a few dozen distance checks regardless of the route length. Off-route and arrival use
+ * hysteresis so a single noisy fix does not flip the state.
+ * {@link #update(double, double, double)} does not allocate. Not thread-safe.
+ */
+public class RouteMatcher {
+
+    public interface Listener {
+        void onOffRoute(double distanceFromRouteInMeters);
+
+        void onBackOnRoute();
+
+        void onArrived();
+    }
+
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final double CELL_SIZE_IN_METERS = 250;
+    // How far ahead of the last match the incremental search looks before using the grid.
+    private static final double LOOK_AHEAD_IN_METERS = 500;
+    private static final double LOOK_BEHIND_IN_METERS = 50;
+
+    private static final double OFF_ROUTE_DISTANCE_IN_METERS = 50;
+    private static final double ON_ROUTE_DISTANCE_IN_METERS = 25;
+    private static final int OFF_ROUTE_FIX_COUNT = 3;
+    private static final int ON_ROUTE_FIX_COUNT = 2;
+    private static final double ARRIVAL_DISTANCE_IN_METERS = 30;
+    private static final int ARRIVAL_FIX_COUNT = 2;
+    // Penalty in meters for a segment that points the opposite way of the heading.
+    private static final double HEADING_PENALTY_IN_METERS = 40;
+
+    private final Listener listener;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // Distance from the start of the route to each vertex.
+    private final double[] cumulativeDistances;
+    private final int segmentCount;
+
+    // Grid in degrees, the cell with key cellKeys[i] holds the segments from cellStarts[i] to cellStarts[i + 1].
+    private final double cellHeightInDegrees;
+    private final double cellWidthInDegrees;
+    private final long[] cellKeys;
+    private final int[] cellStarts;
+    private final int[] cellSegments;
+
+    private int segment = -1;
+    private double matchedLatitude;
+    private double matchedLongitude;
+    private double distanceAlongRoute;
+    private double distanceFromRoute;
+
+    private boolean offRoute;
+    private boolean arrived;
+    private int offRouteFixes;
+    private int onRouteFixes;
+    private int arrivalFixes;
+
+    // Result of the last segment distance computation, kept in fields to avoid allocating.
+    private double projectedFraction;
+    private double projectedLatitude;
+    private double projectedLongitude;
+
+    public RouteMatcher(CoordinateBuffer route, Listener listener) {
+        if (route.size() < 2) {
+            throw new IllegalArgumentException("A route needs at least two vertices.");
+        }
+        this.listener = listener;
+        int vertexCount = route.size();
+        segmentCount = vertexCount - 1;
+        latitudes = new double[vertexCount];
+        longitudes = new double[vertexCount];
+        cumulativeDistances = new double[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            latitudes[i] = route.getLatitude(i);
+            longitudes[i] = route.getLongitude(i);
+            if (i > 0) {
+                cumulativeDistances[i] = cumulativeDistances[i - 1] + CoordinateBuffer.distanceInMeters(
+                        latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+            }
+        }
+
+        // Cells are roughly square in meters at the latitude of the route start.
+        cellHeightInDegrees = CELL_SIZE_IN_METERS / METERS_PER_DEGREE;
+        cellWidthInDegrees = cellHeightInDegrees / Math.max(0.1, Math.cos(Math.toRadians(latitudes[0])));
+        long[] entries = new long[segmentCount * 2];
+        int[] entrySegments = new int[segmentCount * 2];
+        int entryCount = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            // Sample the segment at half a cell, long segments are not spread over their whole bounding box.
+            // Cells the line only clips at a corner are covered by the neighbor search.
+            double rows = Math.abs(latitudes[i + 1] - latitudes[i]) / cellHeightInDegrees;
+            double columns = Math.abs(longitudes[i + 1] - longitudes[i]) / cellWidthInDegrees;
+            int steps = (int) Math.ceil(Math.max(rows, columns) * 2);
+            long lastKey = 0;
+            for (int step = 0; step <= steps; step++) {
+                double t = steps == 0 ? 0 : (double) step / steps;
+                long key = cellKey(row(latitudes[i] + t * (latitudes[i + 1] - latitudes[i])),
+                        column(longitudes[i] + t * (longitudes[i + 1] - longitudes[i])));
+                if (step > 0 && key == lastKey) {
+                    continue;
+                }
+                lastKey = key;
+                if (entryCount == entries.length) {
+                    entries = Arrays.copyOf(entries, entryCount * 2);
+                    entrySegments = Arrays.copyOf(entrySegments, entryCount * 2);
+                }
+                entries[entryCount] = key;
+                entrySegments[entryCount] = i;
+                entryCount++;
+            }
+        }
+
+        // Sort entries by cell, then compress to one start offset per cell.
+        long[] sortable = new long[entryCount];
+        int keyBits = 64 - Long.numberOfLeadingZeros(Math.max(1, entryCount));
+        long[] distinctKeys = Arrays.copyOf(entries, entryCount);
+        Arrays.sort(distinctKeys);
+        int distinctCount = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (distinctCount == 0 || distinctKeys[distinctCount - 1] != distinctKeys[i]) {
+                distinctKeys[distinctCount++] = distinctKeys[i];
+            }
+        }
+        cellKeys = Arrays.copyOf(distinctKeys, distinctCount);
+        for (int i = 0; i < entryCount; i++) {
+            long cell = Arrays.binarySearch(cellKeys, entries[i]);
+            sortable[i] = (cell << keyBits) | i;
+        }
+        Arrays.sort(sortable);
+        cellStarts = new int[distinctCount + 1];
+        cellSegments = new int[entryCount];
+        long entryMask = (1L << keyBits) - 1;
+        for (int i = 0; i < entryCount; i++) {
+            int cell = (int) (sortable[i] >>> keyBits);
+            cellSegments[i] = entrySegments[(int) (sortable[i] & entryMask)];
+            cellStarts[cell + 1] = i + 1;
+        }
+    }
+
+    /**
+     * Matches a fix to the route.
+     *
+     * @param bearingInDegrees heading of the fix, NaN if unknown.
+     */
+    public void update(double latitude, double longitude, double bearingInDegrees) {
+        double longitudeScale = Math.cos(Math.toRadians(latitude));
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+
+        if (segment != -1) {
+            // Walk from a little behind the last match to the look-ahead distance.
+            int from = segment;
+            while (from > 0 && distanceAlongRoute - cumulativeDistances[from] < LOOK_BEHIND_IN_METERS) {
+                from--;
+            }
+            for (int i = from; i < segmentCount
+                    && cumulativeDistances[i] - distanceAlongRoute <= LOOK_AHEAD_IN_METERS; i++) {
+                double cost = cost(i, latitude, longitude, longitudeScale, bearingInDegrees);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = i;
+                }
+            }
+        }
+        if (best == -1 || bestCost > OFF_ROUTE_DISTANCE_IN_METERS) {
+            int gridBest = searchGrid(latitude, longitude, longitudeScale, bearingInDegrees);
+            if (gridBest != -1) {
+                double gridCost = cost(gridBest, latitude, longitude, longitudeScale, bearingInDegrees);
+                if (gridCost < bestCost) {
+                    bestCost = gridCost;
+                    best = gridBest;
+                }
+            }
+        }
+
+        if (best == -1) {
+            // Nothing within the neighboring cells, the fix is far away from the whole route.
+            distanceFromRoute = Double.MAX_VALUE;
+        } else {
+            distanceFromRoute = segmentDistance(best, latitude, longitude, longitudeScale);
+            // Progress only moves forward by matching, so a fix that jitters backwards on the same segment is kept.
+            if (!(best == segment && distanceAlongRouteOf(best) < distanceAlongRoute
+                    && distanceFromRoute < ON_ROUTE_DISTANCE_IN_METERS)) {
+                segment = best;
+                matchedLatitude = projectedLatitude;
+                matchedLongitude = projectedLongitude;
+                distanceAlongRoute = distanceAlongRouteOf(best);
+            }
+        }
+        updateState();
+    }
+
+    public void reset() {
+        segment = -1;
+        distanceAlongRoute = 0;
+        distanceFromRoute = 0;
+        offRoute = false;
+        arrived = false;
+        offRouteFixes = 0;
+        onRouteFixes = 0;
+        arrivalFixes = 0;
+    }
+
+    public double getMatchedLatitude() {
+        return matchedLatitude;
+    }
+
+    public double getMatchedLongitude() {
+        return matchedLongitude;
+    }
+
+    public double getDistanceAlongRoute() {
+        return distanceAlongRoute;
+    }
+
+    public double getRemainingDistance() {
+        return cumulativeDistances[segmentCount] - distanceAlongRoute;
+    }
+
+    public double getDistanceFromRoute() {
+        return distanceFromRoute;
+    }
+
+    public int getSegmentIndex() {
+        return segment;
+    }
+
+    public boolean isOffRoute() {
+        return offRoute;
+    }
+
+    public boolean hasArrived() {
+        return arrived;
+    }
+
+    private void updateState() {
+        if (distanceFromRoute > OFF_ROUTE_DISTANCE_IN_METERS) {
+            onRouteFixes = 0;
+            if (!offRoute && ++offRouteFixes >= OFF_ROUTE_FIX_COUNT) {
+                offRoute = true;
+                listener.onOffRoute(distanceFromRoute);
+            }
+        } else if (distanceFromRoute < ON_ROUTE_DISTANCE_IN_METERS) {
+            offRouteFixes = 0;
+            if (offRoute && ++onRouteFixes >= ON_ROUTE_FIX_COUNT) {
+                offRoute = false;
+                listener.onBackOnRoute();
+            }
+        }
+
+        if (!arrived && !offRoute && segment != -1 && getRemainingDistance() < ARRIVAL_DISTANCE_IN_METERS) {
+            if (++arrivalFixes >= ARRIVAL_FIX_COUNT) {
+                arrived = true;
+                listener.onArrived();
+            }
+        } else {
+            arrivalFixes = 0;
+        }
+    }
+
+    // Looks at the cell of the fix and its neighbors. Among similar candidates the one closest
+    // to the previous progress wins, which keeps loops and overlapping legs apart.
+    private int searchGrid(double latitude, double longitude, double longitudeScale, double bearingInDegrees) {
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        for (int row = centerRow - 1; row <= centerRow + 1; row++) {
+            for (int column = centerColumn - 1; column <= centerColumn + 1; column++) {
+                int cell = Arrays.binarySearch(cellKeys, cellKey(row, column));
+                if (cell < 0) {
+                    continue;
+                }
+                for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                    int candidate = cellSegments[i];
+                    double cost = cost(candidate, latitude, longitude, longitudeScale, bearingInDegrees);
+                    if (segment != -1) {
+                        // A meter of distance from the route weighs as much as a kilometer of progress.
+                        cost += Math.abs(cumulativeDistances[candidate] - distanceAlongRoute) / 1000;
+                    }
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        best = candidate;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private double cost(int segment, double latitude, double longitude, double longitudeScale, double bearingInDegrees) {
+        double distance = segmentDistance(segment, latitude, longitude, longitudeScale);
+        if (Double.isNaN(bearingInDegrees)) {
+            return distance;
+        }
+        double dy = latitudes[segment + 1] - latitudes[segment];
+        double dx = (longitudes[segment + 1] - longitudes[segment]) * longitudeScale;
+        double segmentBearing = Math.toDegrees(Math.atan2(dx, dy));
+        double difference = Math.abs(((bearingInDegrees - segmentBearing) % 360 + 540) % 360 - 180);
+        return distance + HEADING_PENALTY_IN_METERS * difference / 180;
+    }
+
+    // Distance in meters from the fix to a segment, the projection is left in the projected fields.
+    private double segmentDistance(int segment, double latitude, double longitude, double longitudeScale) {
+        double ax = longitudes[segment] * longitudeScale;
+        double ay = latitudes[segment];
+        double dx = longitudes[segment + 1] * longitudeScale - ax;
+        double dy = latitudes[segment + 1] - ay;
+        double px = longitude * longitudeScale;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((px - ax) * dx + (latitude - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        projectedFraction = t;
+        projectedLatitude = latitudes[segment] + t * (latitudes[segment + 1] - latitudes[segment]);
+        projectedLongitude = longitudes[segment] + t * (longitudes[segment + 1] - longitudes[segment]);
+        double ex = px - (ax + t * dx);
+        double ey = latitude - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey) * METERS_PER_DEGREE;
+    }
+
+    // Uses the projection of the last segmentDistance() call for this segment.
+    private double distanceAlongRouteOf(int segment) {
+        return cumulativeDistances[segment]
+                + projectedFraction * (cumulativeDistances[segment + 1] - cumulativeDistances[segment]);
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellHeightInDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor(longitude / cellWidthInDegrees);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import com.here.sdk.routing.RoutingError;
+
+import java.util.Arrays;
+
+/**
+ * Durations and lengths from every origin to every destination, stored row by row in primitive arrays.
+ * Cells are filled in as routes arrive, a failed cell keeps its error and does not affect the others.
+ */
+public class RouteMatrix {
+
+    public static final int UNKNOWN = -1;
+
+    private final int originCount;
+    private final int destinationCount;
+    private final int[] durationsInSeconds;
+    private final int[] lengthsInMeters;
+    private final RoutingError[] errors;
+    private int completedCount;
+    private int failedCount;
+
+    public RouteMatrix(int originCount, int destinationCount) {
+        this.originCount = originCount;
+        this.destinationCount = destinationCount;
+        int cellCount = originCount * destinationCount;
+        durationsInSeconds = new int[cellCount];
+        lengthsInMeters = new int[cellCount];
+        errors = new RoutingError[cellCount];
+        Arrays.fill(durationsInSeconds, UNKNOWN);
+        Arrays.fill(lengthsInMeters, UNKNOWN);
+    }
+
+    void setRoute(int cell, int durationInSeconds, int lengthInMeters) {
+        durationsInSeconds[cell] = durationInSeconds;
+        lengthsInMeters[cell] = lengthInMeters;
+        completedCount++;
+    }
+
+    void setError(int cell, RoutingError error) {
+        errors[cell] = error;
+        completedCount++;
+        failedCount++;
+    }
+
+    public int getOriginCount() {
+        return originCount;
+    }
+
+    public int getDestinationCount() {
+        return destinationCount;
+    }
+
+    /**
+     * Returns the duration in seconds, or {@link #UNKNOWN} if the cell is pending or failed.
+     */
+    public int getDurationInSeconds(int origin, int destination) {
+        return durationsInSeconds[origin * destinationCount + destination];
+    }
+
+    /**
+     * Returns the length in meters, or {@link #UNKNOWN} if the cell is pending or failed.
+     */
+    public int getLengthInMeters(int origin, int destination) {
+        return lengthsInMeters[origin * destinationCount + destination];
+    }
+
+    @Nullable
+    public RoutingError getError(int origin, int destination) {
+        return errors[origin * destinationCount + destination];
+    }
+
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public boolean isComplete() {
+        return completedCount == durationsInSeconds.length;
+    }
+}
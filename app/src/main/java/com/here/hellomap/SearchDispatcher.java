@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.core.threading.TaskHandle;
+import com.here.sdk.search.AddressQuery;
+import com.here.sdk.search.Place;
+import com.here.sdk.search.SearchCallback;
+import com.here.sdk.search.SearchEngine;
+import com.here.sdk.search.SearchError;
+import com.here.sdk.search.SearchOptions;
+import com.here.sdk.search.SuggestCallback;
+import com.here.sdk.search.Suggestion;
+import com.here.sdk.search.TextQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sits in front of the search engine and keeps it from being flooded.
+ * Suggestions are debounced, identical in-flight requests are coalesced and share the result, and a
+ * newer request cancels the one it supersedes, so only the latest result of each kind reaches the UI.
+ * All methods must be called on the main thread.
+ */
+public class SearchDispatcher {
+
+    // Centers closer than roughly 100 meters count as the same search area.
+    private static final double CENTER_GRID_IN_DEGREES = 0.001;
+
+    /**
+     * The calls the dispatcher makes, see {@link #engineBackend(SearchEngine)} and {@link StubSearchBackend}.
+     */
+    public interface Backend {
+        TaskHandle suggest(TextQuery query, SearchOptions searchOptions, SuggestCallback callback);
+
+        TaskHandle search(TextQuery query, SearchOptions searchOptions, SearchCallback callback);
+
+        TaskHandle search(AddressQuery query, SearchOptions searchOptions, SearchCallback callback);
+    }
+
+    private final Backend backend;
+    private final long debounceMillis;
+    private final Scheduler scheduler;
+
+    private final Channel<SuggestCallback> suggestChannel = new Channel<>();
+    private final Channel<SearchCallback> placesChannel = new Channel<>();
+    private final Channel<SearchCallback> addressChannel = new Channel<>();
+    private Runnable pendingSuggestion;
+
+    private long requestCount;
+    private long engineCallCount;
+    private long coalescedCount;
+    private long cancelledCount;
+    private long deliveredSuggestionCount;
+    private long totalSuggestionLatencyMillis;
+    private long lastSuggestionLatencyMillis;
+
+    private static class Channel<C> {
+        String key;
+        // Set from the request until its result or cancel, the backend may answer before returning a handle.
+        boolean inFlight;
+        TaskHandle taskHandle;
+        int generation;
+        final List<C> callbacks = new ArrayList<>();
+        long requestedAtMillis;
+    }
+
+    public SearchDispatcher(Backend backend, long debounceMillis) {
+        this(backend, debounceMillis, new MainThreadScheduler());
+    }
+
+    public SearchDispatcher(Backend backend, long debounceMillis, Scheduler scheduler) {
+        this.backend = backend;
+        this.debounceMillis = debounceMillis;
+        this.scheduler = scheduler;
+    }
+
+    public static Backend engineBackend(final SearchEngine searchEngine) {
+        return new Backend() {
+            @Override
+            public TaskHandle suggest(TextQuery query, SearchOptions searchOptions, SuggestCallback callback) {
+                return searchEngine.suggest(query, searchOptions, callback);
+            }
+
+            @Override
+            public TaskHandle search(TextQuery query, SearchOptions searchOptions, SearchCallback callback) {
+                return searchEngine.search(query, searchOptions, callback);
+            }
+
+            @Override
+            public TaskHandle search(AddressQuery query, SearchOptions searchOptions, SearchCallback callback) {
+                return searchEngine.search(query, searchOptions, callback);
+            }
+        };
+    }
+
+    /**
+     * Requests suggestions once the text has not changed for the debounce interval.
+     */
+    public void suggest(final String text, final GeoCoordinates center, final SearchOptions searchOptions,
+                        final SuggestCallback callback) {
+        requestCount++;
+        final long requestedAtMillis = scheduler.elapsedRealtime();
+        if (pendingSuggestion != null) {
+            scheduler.removeCallbacks(pendingSuggestion);
+        }
+        pendingSuggestion = new Runnable() {
+            @Override
+            public void run() {
+                pendingSuggestion = null;
+                String key = createKey(text, center);
+                if (coalesce(suggestChannel, key, callback, requestedAtMillis)) {
+                    return;
+                }
+                final int generation = suggestChannel.generation;
+                TaskHandle taskHandle = backend.suggest(new TextQuery(text, center), searchOptions,
+                        new SuggestCallback() {
+                            @Override
+                            public void onSuggestCompleted(SearchError searchError, List<Suggestion> list) {
+                                if (generation != suggestChannel.generation) {
+                                    return;
+                                }
+                                lastSuggestionLatencyMillis = scheduler.elapsedRealtime() - suggestChannel.requestedAtMillis;
+                                totalSuggestionLatencyMillis += lastSuggestionLatencyMillis;
+                                deliveredSuggestionCount++;
+                                for (SuggestCallback waiting : finish(suggestChannel)) {
+                                    waiting.onSuggestCompleted(searchError, list);
+                                }
+                            }
+                        });
+                started(suggestChannel, generation, taskHandle);
+            }
+        };
+        scheduler.postDelayed(pendingSuggestion, debounceMillis);
+    }
+
+    public void searchPlaces(String text, GeoCoordinates center, SearchOptions searchOptions, SearchCallback callback) {
+        requestCount++;
+        String key = createKey(text, center);
+        if (coalesce(placesChannel, key, callback, scheduler.elapsedRealtime())) {
+            return;
+        }
+        int generation = placesChannel.generation;
+        started(placesChannel, generation, backend.search(new TextQuery(text, center), searchOptions,
+                createSearchCallback(placesChannel)));
+    }
+
+    public void searchAddress(String text, GeoCoordinates center, SearchOptions searchOptions, SearchCallback callback) {
+        requestCount++;
+        String key = createKey(text, center);
+        if (coalesce(addressChannel, key, callback, scheduler.elapsedRealtime())) {
+            return;
+        }
+        int generation = addressChannel.generation;
+        started(addressChannel, generation, backend.search(new AddressQuery(text, center), searchOptions,
+                createSearchCallback(addressChannel)));
+    }
+
+    /**
+     * Drops a pending suggestion and cancels the one in flight, searches keep running.
+     */
+    public void cancelSuggestions() {
+        if (pendingSuggestion != null) {
+            scheduler.removeCallbacks(pendingSuggestion);
+            pendingSuggestion = null;
+        }
+        cancel(suggestChannel);
+    }
+
+    /**
+     * Drops a pending suggestion and cancels everything in flight.
+     */
+    public void cancelAll() {
+        cancelSuggestions();
+        cancel(placesChannel);
+        cancel(addressChannel);
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getEngineCallCount() {
+        return engineCallCount;
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * Engine calls per request, 1 means nothing was saved.
+     */
+    public double getRequestAmplification() {
+        return requestCount == 0 ? 0 : (double) engineCallCount / requestCount;
+    }
+
+    public long getLastSuggestionLatencyMillis() {
+        return lastSuggestionLatencyMillis;
+    }
+
+    public double getAverageSuggestionLatencyMillis() {
+        return deliveredSuggestionCount == 0 ? 0 : (double) totalSuggestionLatencyMillis / deliveredSuggestionCount;
+    }
+
+    private SearchCallback createSearchCallback(final Channel<SearchCallback> channel) {
+        final int generation = channel.generation;
+        return new SearchCallback() {
+            @Override
+            public void onSearchCompleted(SearchError searchError, List<Place> list) {
+                if (generation != channel.generation) {
+                    return;
+                }
+                for (SearchCallback waiting : finish(channel)) {
+                    waiting.onSearchCompleted(searchError, list);
+                }
+            }
+        };
+    }
+
+    // Returns true if an identical request is already running, its result will go to this callback as well.
+    // Otherwise supersedes whatever is in flight and counts the engine call the caller is about to make.
+    private <C> boolean coalesce(Channel<C> channel, String key, C callback, long requestedAtMillis) {
+        if (channel.inFlight && key.equals(channel.key)) {
+            channel.callbacks.add(callback);
+            channel.requestedAtMillis = requestedAtMillis;
+            coalescedCount++;
+            return true;
+        }
+        cancel(channel);
+        channel.key = key;
+        channel.inFlight = true;
+        channel.callbacks.add(callback);
+        channel.requestedAtMillis = requestedAtMillis;
+        engineCallCount++;
+        return false;
+    }
+
+    // Keeps the handle only if the request of this generation is still running, a backend that answered
+    // synchronously has already finished it.
+    private void started(Channel<?> channel, int generation, TaskHandle taskHandle) {
+        if (generation == channel.generation && channel.inFlight) {
+            channel.taskHandle = taskHandle;
+        }
+    }
+
+    // Ends the running request and returns the callbacks waiting for its result.
+    private <C> List<C> finish(Channel<C> channel) {
+        List<C> callbacks = new ArrayList<>(channel.callbacks);
+        channel.callbacks.clear();
+        channel.inFlight = false;
+        channel.taskHandle = null;
+        channel.key = null;
+        // A backend that calls back twice is ignored the second time.
+        channel.generation++;
+        return callbacks;
+    }
+
+    private void cancel(Channel<?> channel) {
+        if (channel.inFlight) {
+            if (channel.taskHandle != null) {
+                channel.taskHandle.cancel();
+            }
+            cancelledCount++;
+        }
+        // Results of older generations are ignored even if the engine delivers them after cancel().
+        channel.generation++;
+        channel.inFlight = false;
+        channel.taskHandle = null;
+        channel.key = null;
+        channel.callbacks.clear();
+    }
+
+    private static String createKey(String text, GeoCoordinates center) {
+        return text.trim().toLowerCase(Locale.ROOT) + '@'
+                + Math.round(center.latitude / CENTER_GRID_IN_DEGREES) + ','
+                + Math.round(center.longitude / CENTER_GRID_IN_DEGREES);
+    }
+}
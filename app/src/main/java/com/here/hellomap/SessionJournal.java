@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the waypoints and the route of the current session, memory-mapped so
+ * appends are plain memory writes. Every record carries a CRC32 and its length is written last,
+ * so a record torn by a crash is detected on replay and everything before it survives.
+ * Not thread-safe, the app keeps all calls on its I/O thread.
+ */
+public class SessionJournal {
+
+    private static final int FILE_MAGIC = 0x534A4E31; // "SJN1"
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+    // Compact once the journal is this much larger than the state it describes.
+    private static final int COMPACTION_RATIO = 4;
+    private static final int POLYLINE_PRECISION = 6;
+
+    private static final byte RECORD_WAYPOINT = 1;
+    private static final byte RECORD_WAYPOINTS = 2;
+    private static final byte RECORD_ROUTE = 3;
+    private static final byte RECORD_CLEAR = 4;
+
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private byte[] scratch = new byte[4 * 1024];
+
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+
+    // Mirror of the journaled state, needed for compaction.
+    private final CoordinateBuffer waypoints = new CoordinateBuffer();
+    @Nullable
+    private String encodedRoute;
+
+    public static class Session {
+        public final CoordinateBuffer waypoints;
+        @Nullable
+        public final CoordinateBuffer route;
+
+        Session(CoordinateBuffer waypoints, @Nullable CoordinateBuffer route) {
+            this.waypoints = waypoints;
+            this.route = route;
+        }
+    }
+
+    private SessionJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the journal and replays it. A missing file starts an empty session,
+     * an unreadable one is discarded.
+     */
+    public static SessionJournal open(File file) throws IOException {
+        SessionJournal journal = new SessionJournal(file);
+        journal.map(Math.max(INITIAL_CAPACITY, (int) file.length()));
+        if (journal.buffer.getInt(0) != FILE_MAGIC) {
+            journal.buffer.putInt(0, FILE_MAGIC);
+            journal.buffer.putInt(4, 0);
+            // A discarded file may contain stale records, they must not look valid after the header.
+            journal.zeroFrom(HEADER_SIZE);
+        }
+        journal.replay();
+        journal.compactIfNeeded();
+        return journal;
+    }
+
+    /**
+     * Returns a copy of the replayed state that can be handed to another thread.
+     */
+    public Session getSession() {
+        CoordinateBuffer route = null;
+        if (encodedRoute != null) {
+            route = new CoordinateBuffer(encodedRoute.length() / 4);
+            FlexiblePolyline.decode(encodedRoute, route);
+        }
+        return new Session(CoordinateBuffer.wrap(waypoints.toArray()), route);
+    }
+
+    public void appendWaypoint(double latitude, double longitude) throws IOException {
+        ByteBuffer record = beginRecord(RECORD_WAYPOINT, 16);
+        record.putDouble(latitude);
+        record.putDouble(longitude);
+        commitRecord(record);
+        waypoints.add(latitude, longitude);
+        compactIfNeeded();
+    }
+
+    /**
+     * Replaces all waypoints, e.g. after the stops were reordered.
+     */
+    public void setWaypoints(CoordinateBuffer newWaypoints) throws IOException {
+        appendWaypointsRecord(newWaypoints);
+        waypoints.clear();
+        for (int i = 0; i < newWaypoints.size(); i++) {
+            waypoints.add(newWaypoints.getLatitude(i), newWaypoints.getLongitude(i));
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Records the geometry of the latest route, stored as a flexible polyline.
+     */
+    public void setRoute(CoordinateBuffer route) throws IOException {
+        String encoded = FlexiblePolyline.encode(route, POLYLINE_PRECISION);
+        appendRouteRecord(encoded);
+        encodedRoute = encoded;
+        compactIfNeeded();
+    }
+
+    public void clear() throws IOException {
+        commitRecord(beginRecord(RECORD_CLEAR, 0));
+        waypoints.clear();
+        encodedRoute = null;
+        compactIfNeeded();
+    }
+
+    /**
+     * Flushes the mapped pages to storage. Appends already survive a killed process without this,
+     * it only matters when the device loses power.
+     */
+    public void sync() {
+        buffer.force();
+    }
+
+    public void close() throws IOException {
+        buffer.force();
+        randomAccessFile.close();
+    }
+
+    public int getSizeInBytes() {
+        return writePosition;
+    }
+
+    private void replay() {
+        int position = HEADER_SIZE;
+        int lastRouteStart = -1;
+        int lastRouteLength = 0;
+        while (position + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            // Zero marks the end of the journal, anything that does not fit is a torn write.
+            if (length <= 0 || length > buffer.capacity() - position - 8) {
+                break;
+            }
+            byte[] bytes = ensureScratch(length);
+            buffer.position(position + 4);
+            buffer.get(bytes, 0, length);
+            crc.reset();
+            crc.update(bytes, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4 + length)) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(bytes, 1, length - 1);
+            switch (bytes[0]) {
+                case RECORD_WAYPOINT:
+                    waypoints.add(record.getDouble(), record.getDouble());
+                    break;
+                case RECORD_WAYPOINTS:
+                    waypoints.clear();
+                    int count = record.getInt();
+                    for (int i = 0; i < count; i++) {
+                        waypoints.add(record.getDouble(), record.getDouble());
+                    }
+                    break;
+                case RECORD_ROUTE:
+                    // Only the last route is decoded, older ones are just checked.
+                    lastRouteStart = position + 5;
+                    lastRouteLength = length - 1;
+                    break;
+                case RECORD_CLEAR:
+                    waypoints.clear();
+                    lastRouteStart = -1;
+                    break;
+                default:
+                    break;
+            }
+            position += 8 + length;
+        }
+        writePosition = position;
+
+        if (lastRouteStart != -1) {
+            byte[] bytes = ensureScratch(lastRouteLength);
+            buffer.position(lastRouteStart);
+            buffer.get(bytes, 0, lastRouteLength);
+            encodedRoute = new String(bytes, 0, lastRouteLength, StandardCharsets.US_ASCII);
+        }
+        // Clear whatever a torn record left behind so it can not resurface behind later appends.
+        if (writePosition + 4 <= buffer.capacity() && buffer.getInt(writePosition) != 0) {
+            zeroFrom(writePosition);
+        }
+    }
+
+    private void appendWaypointsRecord(CoordinateBuffer newWaypoints) throws IOException {
+        ByteBuffer record = beginRecord(RECORD_WAYPOINTS, 4 + newWaypoints.size() * 16);
+        record.putInt(newWaypoints.size());
+        for (int i = 0; i < newWaypoints.size(); i++) {
+            record.putDouble(newWaypoints.getLatitude(i));
+            record.putDouble(newWaypoints.getLongitude(i));
+        }
+        commitRecord(record);
+    }
+
+    private void appendRouteRecord(String encoded) throws IOException {
+        ByteBuffer record = beginRecord(RECORD_ROUTE, encoded.length());
+        // The flexible polyline alphabet is plain ASCII.
+        for (int i = 0; i < encoded.length(); i++) {
+            record.put((byte) encoded.charAt(i));
+        }
+        commitRecord(record);
+    }
+
+    // Records are assembled in the scratch array so the checksum can be computed before they are mapped.
+    private ByteBuffer beginRecord(byte type, int payloadLength) {
+        ByteBuffer record = ByteBuffer.wrap(ensureScratch(1 + payloadLength), 0, 1 + payloadLength);
+        record.put(type);
+        return record;
+    }
+
+    private void commitRecord(ByteBuffer record) throws IOException {
+        int length = record.position();
+        int recordSize = 8 + length;
+        // Keep four zero bytes behind the record so the end of the journal is always marked.
+        if (writePosition + recordSize + 4 > buffer.capacity()) {
+            map(Math.max(buffer.capacity() * 2, writePosition + recordSize + 4));
+        }
+        crc.reset();
+        crc.update(scratch, 0, length);
+
+        buffer.position(writePosition + 4);
+        buffer.put(scratch, 0, length);
+        buffer.putInt((int) crc.getValue());
+        // The length goes in last, until then replay sees the end of the journal here.
+        buffer.putInt(writePosition, length);
+        writePosition += recordSize;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        int liveSize = HEADER_SIZE + 8 + 1 + 4 + waypoints.size() * 16;
+        if (encodedRoute != null) {
+            liveSize += 8 + 1 + encodedRoute.length();
+        }
+        if (writePosition <= INITIAL_CAPACITY / 2 || writePosition <= liveSize * COMPACTION_RATIO) {
+            return;
+        }
+        compact();
+    }
+
+    /**
+     * Rewrites the journal so it only holds the current state. The new journal is written to a
+     * temporary file and renamed over the old one, a crash in between leaves the old journal intact.
+     */
+    private void compact() throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        if (temporaryFile.exists() && !temporaryFile.delete()) {
+            throw new IOException("Could not delete " + temporaryFile);
+        }
+        SessionJournal compacted = new SessionJournal(temporaryFile);
+        compacted.scratch = scratch;
+        compacted.map(INITIAL_CAPACITY);
+        compacted.buffer.putInt(0, FILE_MAGIC);
+        compacted.writePosition = HEADER_SIZE;
+        compacted.appendWaypointsRecord(waypoints);
+        if (encodedRoute != null) {
+            compacted.appendRouteRecord(encodedRoute);
+        }
+        compacted.close();
+        scratch = compacted.scratch;
+
+        randomAccessFile.close();
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        map(Math.max(INITIAL_CAPACITY, compacted.writePosition * 2));
+        writePosition = compacted.writePosition;
+    }
+
+    private void map(int capacity) throws IOException {
+        if (randomAccessFile == null || buffer == null || !randomAccessFile.getChannel().isOpen()) {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+        }
+        // Mapping past the end grows the file, the new region reads as zeros.
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void zeroFrom(int position) {
+        for (int i = position; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    private byte[] ensureScratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * In-memory point index for items the app places on the map.
+ * Items live in packed arrays ordered as an implicit k-d tree. Adds go to a tail that is not in the
+ * tree yet and that queries scan linearly, removes find their slot through an identity map and leave
+ * a hole. The tree is rebuilt, dropping the holes, once the tail or the holes reach an eighth of it,
+ * so a change costs O(1) plus O(log n) amortized for rebuilds and a query O(log n + n / 8) at worst.
+ * An item is stored once, adding it again moves it.
+ */
+public class SpatialIndex<T> {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final int MIN_REBUILD_CHANGES = 64;
+
+    private double[] latitudes = new double[16];
+    private double[] longitudes = new double[16];
+    private Object[] items = new Object[16];
+    private final IdentityHashMap<Object, Integer> slots = new IdentityHashMap<>();
+    // Slots in use including holes, the first treeSize of them form the tree.
+    private int slotCount;
+    private int holeCount;
+
+    // Permutation of the tree slots, the median of each range is the node.
+    private int[] tree = new int[0];
+    private int treeSize;
+
+    public void add(double latitude, double longitude, T item) {
+        remove(item);
+        if (slotCount == items.length) {
+            int capacity = slotCount * 2;
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            items = Arrays.copyOf(items, capacity);
+        }
+        latitudes[slotCount] = latitude;
+        longitudes[slotCount] = longitude;
+        items[slotCount] = item;
+        slots.put(item, slotCount);
+        slotCount++;
+    }
+
+    public boolean remove(T item) {
+        Integer slot = slots.remove(item);
+        if (slot == null) {
+            return false;
+        }
+        items[slot] = null;
+        if (slot < treeSize) {
+            // Tree nodes still split the space, queries skip the hole.
+            holeCount++;
+        } else if (slot == slotCount - 1) {
+            slotCount--;
+        } else {
+            // Keep the tail dense by moving its last item into the gap.
+            slotCount--;
+            latitudes[slot] = latitudes[slotCount];
+            longitudes[slot] = longitudes[slotCount];
+            items[slot] = items[slotCount];
+            items[slotCount] = null;
+            slots.put(items[slot], slot);
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(items, 0, slotCount, null);
+        slots.clear();
+        slotCount = 0;
+        holeCount = 0;
+        treeSize = 0;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Returns the item closest to the given position, or null if none is within the radius.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public T nearest(double latitude, double longitude, double radiusInMeters) {
+        ensureTree();
+        double longitudeScale = Math.cos(Math.toRadians(latitude));
+        double radius = radiusInMeters / METERS_PER_DEGREE;
+        double[] best = {radius * radius};
+        int bestSlot = nearest(0, treeSize, 0, latitude, longitude, longitudeScale, best, -1);
+        for (int slot = treeSize; slot < slotCount; slot++) {
+            double dLat = latitudes[slot] - latitude;
+            double dLon = (longitudes[slot] - longitude) * longitudeScale;
+            double distanceSquared = dLat * dLat + dLon * dLon;
+            if (distanceSquared <= best[0]) {
+                best[0] = distanceSquared;
+                bestSlot = slot;
+            }
+        }
+        return bestSlot == -1 ? null : (T) items[bestSlot];
+    }
+
+    /**
+     * Adds all items inside the bounding box to the result list.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(double south, double west, double north, double east, List<T> result) {
+        ensureTree();
+        query(0, treeSize, 0, south, west, north, east, (List<Object>) result);
+        for (int slot = treeSize; slot < slotCount; slot++) {
+            if (contains(slot, south, west, north, east)) {
+                result.add((T) items[slot]);
+            }
+        }
+    }
+
+    private boolean contains(int slot, double south, double west, double north, double east) {
+        return latitudes[slot] >= south && latitudes[slot] <= north
+                && longitudes[slot] >= west && longitudes[slot] <= east;
+    }
+
+    private int nearest(int from, int to, int depth, double latitude, double longitude,
+                        double longitudeScale, double[] best, int bestSlot) {
+        if (from >= to) {
+            return bestSlot;
+        }
+        int middle = (from + to) >>> 1;
+        int slot = tree[middle];
+
+        double dLat = latitudes[slot] - latitude;
+        double dLon = (longitudes[slot] - longitude) * longitudeScale;
+        double distanceSquared = dLat * dLat + dLon * dLon;
+        if (distanceSquared <= best[0] && items[slot] != null) {
+            best[0] = distanceSquared;
+            bestSlot = slot;
+        }
+
+        double split = (depth & 1) == 0 ? dLat : dLon;
+        boolean searchLowFirst = split > 0;
+        if (searchLowFirst) {
+            bestSlot = nearest(from, middle, depth + 1, latitude, longitude, longitudeScale, best, bestSlot);
+        } else {
+            bestSlot = nearest(middle + 1, to, depth + 1, latitude, longitude, longitudeScale, best, bestSlot);
+        }
+        // Only descend into the far side if the splitting plane is closer than the best hit so far.
+        if (split * split <= best[0]) {
+            if (searchLowFirst) {
+                bestSlot = nearest(middle + 1, to, depth + 1, latitude, longitude, longitudeScale, best, bestSlot);
+            } else {
+                bestSlot = nearest(from, middle, depth + 1, latitude, longitude, longitudeScale, best, bestSlot);
+            }
+        }
+        return bestSlot;
+    }
+
+    private void query(int from, int to, int depth, double south, double west,
+                       double north, double east, List<Object> result) {
+        if (from >= to) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        int slot = tree[middle];
+        double latitude = latitudes[slot];
+        double longitude = longitudes[slot];
+
+        if (items[slot] != null && contains(slot, south, west, north, east)) {
+            result.add(items[slot]);
+        }
+
+        double value = (depth & 1) == 0 ? latitude : longitude;
+        double min = (depth & 1) == 0 ? south : west;
+        double max = (depth & 1) == 0 ? north : east;
+        if (min <= value) {
+            query(from, middle, depth + 1, south, west, north, east, result);
+        }
+        if (max >= value) {
+            query(middle + 1, to, depth + 1, south, west, north, east, result);
+        }
+    }
+
+    private void ensureTree() {
+        int threshold = Math.max(MIN_REBUILD_CHANGES, treeSize / 8);
+        if (slotCount - treeSize <= threshold && holeCount <= threshold) {
+            return;
+        }
+        // Compact the holes away, then build over every slot.
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (items[slot] == null) {
+                continue;
+            }
+            if (slot != count) {
+                latitudes[count] = latitudes[slot];
+                longitudes[count] = longitudes[slot];
+                items[count] = items[slot];
+                items[slot] = null;
+                slots.put(items[count], count);
+            }
+            count++;
+        }
+        slotCount = count;
+        holeCount = 0;
+        if (tree.length < count) {
+            tree = new int[items.length];
+        }
+        for (int i = 0; i < count; i++) {
+            tree[i] = i;
+        }
+        treeSize = count;
+        build(0, count, 0);
+    }
+
+    private void build(int from, int to, int depth) {
+        while (to - from > 1) {
+            int middle = (from + to) >>> 1;
+            select(from, to - 1, middle, (depth & 1) == 0 ? latitudes : longitudes);
+            build(from, middle, depth + 1);
+            // Iterate on the upper half instead of recursing to bound stack depth.
+            from = middle + 1;
+            depth++;
+        }
+    }
+
+    // Quickselect so that tree[k] holds the median and smaller keys are left of it.
+    private void select(int left, int right, int k, double[] keys) {
+        while (right > left) {
+            double pivot = keys[tree[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[tree[i]] < pivot) i++;
+                while (keys[tree[j]] > pivot) j--;
+                if (i <= j) {
+                    int swap = tree[i];
+                    tree[i] = tree[j];
+                    tree[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+}
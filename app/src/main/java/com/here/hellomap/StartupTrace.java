@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when the milestones of a cold start are reached, relative to the creation of the trace.
+ * Each milestone is only recorded the first time. Main thread only.
+ */
+public class StartupTrace {
+
+    public static final String FIRST_FRAME = "firstFrame";
+
+    public interface Listener {
+        void onComplete(StartupTrace trace);
+    }
+
+    private final long startNanos = SystemClock.elapsedRealtimeNanos();
+    private final String[] expectedMilestones;
+    private final Listener listener;
+    private final Map<String, Long> milestones = new LinkedHashMap<>();
+    private boolean complete;
+
+    /**
+     * @param expectedMilestones the listener is called once all of these were recorded.
+     */
+    public StartupTrace(Listener listener, String... expectedMilestones) {
+        this.listener = listener;
+        this.expectedMilestones = Arrays.copyOf(expectedMilestones, expectedMilestones.length);
+    }
+
+    /**
+     * Records {@link #FIRST_FRAME} when the next frame is drawn, call after setting the content view.
+     */
+    public void traceFirstFrame() {
+        Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                mark(FIRST_FRAME);
+            }
+        });
+    }
+
+    public void mark(String milestone) {
+        if (milestones.containsKey(milestone)) {
+            return;
+        }
+        milestones.put(milestone, SystemClock.elapsedRealtimeNanos() - startNanos);
+        if (complete) {
+            return;
+        }
+        for (String expected : expectedMilestones) {
+            if (!milestones.containsKey(expected)) {
+                return;
+            }
+        }
+        complete = true;
+        listener.onComplete(this);
+    }
+
+    /**
+     * Returns the time from the start of the trace to the milestone, or -1 if it was not reached yet.
+     */
+    public long getMillis(String milestone) {
+        Long nanos = milestones.get(milestone);
+        return nanos == null ? -1 : nanos / 1_000_000;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Milestones in the order they were reached, e.g. "firstFrame=212ms searchEngine=240ms".
+     * The format is stable so logs of different builds can be compared.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(milestone.getKey()).append('=').append(milestone.getValue() / 1_000_000).append("ms");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Orders delivery stops to shorten the path through them before it is handed to the routing engine.
+ * Several randomized nearest neighbor tours are improved in parallel with 2-opt and Or-opt moves on
+ * straight line distances until no move helps or the time budget runs out, the shortest one wins.
+ */
+public class StopSequenceOptimizer {
+
+    private final ForkJoinPool pool;
+
+    public interface Callback {
+        /**
+         * Called on a pool thread.
+         *
+         * @param order the visiting order as indices into the given stops.
+         */
+        void onOptimized(int[] order);
+    }
+
+    public StopSequenceOptimizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Blocks the calling thread until the order is known, see the asynchronous variant for UI code.
+     *
+     * @return the visiting order as indices into the given stops.
+     */
+    public int[] optimize(CoordinateBuffer stops, boolean keepFirst, boolean keepLast, long timeBudgetMillis) {
+        return pool.invoke(new OptimizeTask(stops, keepFirst, keepLast, timeBudgetMillis));
+    }
+
+    /**
+     * Optimizes on the pool without blocking any thread, the attempts are forked from a pool thread
+     * and joined by work stealing.
+     */
+    public void optimize(CoordinateBuffer stops, boolean keepFirst, boolean keepLast, long timeBudgetMillis,
+                         final Callback callback) {
+        final OptimizeTask task = new OptimizeTask(stops, keepFirst, keepLast, timeBudgetMillis);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onOptimized(task.invoke());
+            }
+        });
+    }
+
+    private class OptimizeTask extends RecursiveTask<int[]> {
+        // ForkJoinTask is Serializable, tasks are never serialized.
+        private static final long serialVersionUID = 1L;
+
+        private final CoordinateBuffer stops;
+        private final boolean keepFirst;
+        private final boolean keepLast;
+        private final long timeBudgetMillis;
+
+        OptimizeTask(CoordinateBuffer stops, boolean keepFirst, boolean keepLast, long timeBudgetMillis) {
+            this.stops = stops;
+            this.keepFirst = keepFirst;
+            this.keepLast = keepLast;
+            this.timeBudgetMillis = timeBudgetMillis;
+        }
+
+        @Override
+        protected int[] compute() {
+            final int count = stops.size();
+            int[] identity = new int[count];
+            for (int i = 0; i < count; i++) {
+                identity[i] = i;
+            }
+            if (count < 4) {
+                return identity;
+            }
+
+            final double[] costs = createCostMatrix(stops);
+            final long deadlineNanos = System.nanoTime() + timeBudgetMillis * 1_000_000;
+            int attempts = pool.getParallelism() * 2;
+
+            List<RecursiveTask<int[]>> tasks = new ArrayList<>(attempts);
+            for (int attempt = 0; attempt < attempts; attempt++) {
+                final long seed = attempt;
+                tasks.add(new RecursiveTask<int[]>() {
+                    @Override
+                    protected int[] compute() {
+                        Random random = new Random(seed);
+                        // The first attempt is the plain greedy tour, later ones pick among the two nearest stops.
+                        int[] order = nearestNeighbor(costs, count, keepFirst, keepLast, seed == 0 ? null : random);
+                        improve(costs, count, order, keepFirst ? 1 : 0, keepLast ? count - 2 : count - 1, deadlineNanos);
+                        return order;
+                    }
+                });
+            }
+
+            int[] best = identity;
+            double bestLength = pathLength(costs, count, identity);
+            for (RecursiveTask<int[]> task : invokeAll(tasks)) {
+                int[] order = task.join();
+                double length = pathLength(costs, count, order);
+                if (length < bestLength) {
+                    best = order;
+                    bestLength = length;
+                }
+            }
+            return best;
+        }
+    }
+
+    public static double[] createCostMatrix(CoordinateBuffer stops) {
+        int count = stops.size();
+        double[] costs = new double[count * count];
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                double distance = CoordinateBuffer.distanceInMeters(
+                        stops.getLatitude(i), stops.getLongitude(i), stops.getLatitude(j), stops.getLongitude(j));
+                costs[i * count + j] = distance;
+                costs[j * count + i] = distance;
+            }
+        }
+        return costs;
+    }
+
+    public static double pathLength(double[] costs, int count, int[] order) {
+        double length = 0;
+        for (int i = 1; i < order.length; i++) {
+            length += costs[order[i - 1] * count + order[i]];
+        }
+        return length;
+    }
+
+    private static int[] nearestNeighbor(double[] costs, int count, boolean keepFirst, boolean keepLast, Random random) {
+        int[] order = new int[count];
+        boolean[] visited = new boolean[count];
+        int first = keepFirst || random == null ? 0 : random.nextInt(keepLast ? count - 1 : count);
+        order[0] = first;
+        visited[first] = true;
+        if (keepLast) {
+            order[count - 1] = count - 1;
+            visited[count - 1] = true;
+        }
+
+        int end = keepLast ? count - 1 : count;
+        for (int position = 1; position < end; position++) {
+            int from = order[position - 1];
+            int nearest = -1;
+            int secondNearest = -1;
+            for (int candidate = 0; candidate < count; candidate++) {
+                if (visited[candidate]) {
+                    continue;
+                }
+                if (nearest == -1 || costs[from * count + candidate] < costs[from * count + nearest]) {
+                    secondNearest = nearest;
+                    nearest = candidate;
+                } else if (secondNearest == -1 || costs[from * count + candidate] < costs[from * count + secondNearest]) {
+                    secondNearest = candidate;
+                }
+            }
+            int next = random != null && secondNearest != -1 && random.nextInt(4) == 0 ? secondNearest : nearest;
+            order[position] = next;
+            visited[next] = true;
+        }
+        return order;
+    }
+
+    // Local search over positions lo..hi, positions outside that range stay where they are.
+    private static void improve(double[] costs, int count, int[] order, int lo, int hi, long deadlineNanos) {
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadlineNanos) {
+            improved = twoOpt(costs, count, order, lo, hi) | orOpt(costs, count, order, lo, hi);
+        }
+    }
+
+    private static boolean twoOpt(double[] costs, int count, int[] order, int lo, int hi) {
+        boolean improved = false;
+        for (int i = lo; i < hi; i++) {
+            for (int j = i + 1; j <= hi; j++) {
+                double before = cost(costs, count, order, i - 1, i) + cost(costs, count, order, j, j + 1);
+                double after = cost(costs, count, order, i - 1, j) + cost(costs, count, order, i, j + 1);
+                if (after < before - 1e-6) {
+                    reverse(order, i, j);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    // Moves short runs of one to three stops to a cheaper place in the path.
+    private static boolean orOpt(double[] costs, int count, int[] order, int lo, int hi) {
+        boolean improved = false;
+        for (int length = 1; length <= 3; length++) {
+            for (int start = lo; start + length - 1 <= hi; start++) {
+                int end = start + length - 1;
+                double removeGain = cost(costs, count, order, start - 1, start) + cost(costs, count, order, end, end + 1)
+                        - cost(costs, count, order, start - 1, end + 1);
+                // Try inserting the run between target and target + 1.
+                for (int target = lo - 1; target <= hi; target++) {
+                    if (target >= start - 1 && target <= end) {
+                        continue;
+                    }
+                    double insertCost = cost(costs, count, order, target, start)
+                            + cost(costs, count, order, end, target + 1)
+                            - cost(costs, count, order, target, target + 1);
+                    if (insertCost < removeGain - 1e-6) {
+                        move(order, start, length, target);
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return improved;
+    }
+
+    // Cost of travelling between the stops at two positions, missing ends of an open path cost nothing.
+    private static double cost(double[] costs, int count, int[] order, int fromPosition, int toPosition) {
+        if (fromPosition < 0 || toPosition < 0 || fromPosition >= order.length || toPosition >= order.length) {
+            return 0;
+        }
+        return costs[order[fromPosition] * count + order[toPosition]];
+    }
+
+    private static void reverse(int[] order, int from, int to) {
+        while (from < to) {
+            int swap = order[from];
+            order[from++] = order[to];
+            order[to--] = swap;
+        }
+    }
+
+    private static void move(int[] order, int start, int length, int target) {
+        int[] run = new int[length];
+        System.arraycopy(order, start, run, 0, length);
+        if (target < start) {
+            System.arraycopy(order, target + 1, order, target + 1 + length, start - target - 1);
+            System.arraycopy(run, 0, order, target + 1, length);
+        } else {
+            System.arraycopy(order, start + length, order, start, target - start - length + 1);
+            System.arraycopy(run, 0, order, target - length + 1, length);
+        }
+    }
+}
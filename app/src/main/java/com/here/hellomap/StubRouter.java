@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.here.sdk.routing.Waypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Router that makes up routes instead of asking the routing engine, so route comparisons can be
+ * exercised and timed offline. Alternative k bends away from the straight line between the stops,
+ * odd alternatives run within a few dozen meters of the even one before them so duplicate removal
+ * has something to remove. Trucks are slower and hazardous goods force a longer detour.
+ */
+public class StubRouter implements RouteComparator.Router {
+
+    private static final double CAR_SPEED_IN_METERS_PER_SECOND = 25;
+    private static final double TRUCK_SPEED_IN_METERS_PER_SECOND = 22;
+    private static final double DETOUR_IN_METERS = 3000;
+    private static final double DUPLICATE_OFFSET_IN_METERS = 40;
+    private static final double HAZARDOUS_DETOUR_IN_METERS = 1500;
+    private static final double TOLL_PER_KILOMETER = 0.1;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long latencyMillis;
+    private final double metersPerVertex;
+    private int requestCount;
+
+    /**
+     * @param latencyMillis delay before routes are delivered on the main thread, zero delivers them right away.
+     */
+    public StubRouter(long latencyMillis, double metersPerVertex) {
+        this.latencyMillis = latencyMillis;
+        this.metersPerVertex = metersPerVertex;
+    }
+
+    @Override
+    public void calculate(List<Waypoint> waypoints, RouteComparator.Profile profile, int alternatives,
+                          final Callback callback) {
+        requestCount++;
+        final List<RouteComparator.Candidate> candidates = new ArrayList<>(alternatives + 1);
+        boolean truck = profile.truckOptions != null;
+        boolean hazardous = !profile.getHazardousGoods().isEmpty();
+        for (int alternative = 0; alternative <= alternatives; alternative++) {
+            double offset = (alternative / 2) * DETOUR_IN_METERS + (alternative % 2) * DUPLICATE_OFFSET_IN_METERS
+                    + (hazardous ? HAZARDOUS_DETOUR_IN_METERS : 0);
+            List<CoordinateBuffer> legs = createLegs(waypoints, offset);
+            CoordinateBuffer geometry = RouteLayer.join(legs);
+            double lengthInMeters = geometry.getLengthInMeters();
+            double speed = truck ? TRUCK_SPEED_IN_METERS_PER_SECOND : CAR_SPEED_IN_METERS_PER_SECOND;
+            // Only the first two alternatives take the tolled motorway, and they are faster for it.
+            boolean tolled = alternative < 2;
+            if (!tolled) {
+                speed *= 0.85;
+            }
+            candidates.add(new RouteComparator.Candidate(profile, alternative, geometry,
+                    (int) (lengthInMeters / speed), (int) lengthInMeters,
+                    tolled ? lengthInMeters / 1000 * TOLL_PER_KILOMETER : 0, legs));
+        }
+        if (latencyMillis == 0) {
+            callback.onCalculated(null, candidates);
+            return;
+        }
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCalculated(null, candidates);
+            }
+        }, latencyMillis);
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    // Connects the stops leg by leg, each leg bulging sideways by the offset at its middle.
+    private List<CoordinateBuffer> createLegs(List<Waypoint> waypoints, double offsetInMeters) {
+        List<CoordinateBuffer> legs = new ArrayList<>(waypoints.size() - 1);
+        for (int leg = 1; leg < waypoints.size(); leg++) {
+            double fromLatitude = waypoints.get(leg - 1).coordinates.latitude;
+            double fromLongitude = waypoints.get(leg - 1).coordinates.longitude;
+            double toLatitude = waypoints.get(leg).coordinates.latitude;
+            double toLongitude = waypoints.get(leg).coordinates.longitude;
+            double legLength = CoordinateBuffer.distanceInMeters(fromLatitude, fromLongitude, toLatitude, toLongitude);
+            int vertexCount = Math.max(2, (int) Math.ceil(legLength / metersPerVertex) + 1);
+
+            double longitudeScale = Math.cos(Math.toRadians(fromLatitude));
+            double northInMeters = (toLatitude - fromLatitude) * METERS_PER_DEGREE;
+            double eastInMeters = (toLongitude - fromLongitude) * METERS_PER_DEGREE * longitudeScale;
+            double length = Math.max(1, Math.hypot(northInMeters, eastInMeters));
+            // Unit normal of the leg, to the right of the direction of travel.
+            double normalNorth = -eastInMeters / length;
+            double normalEast = northInMeters / length;
+
+            CoordinateBuffer geometry = new CoordinateBuffer(vertexCount);
+            for (int i = 0; i < vertexCount - 1; i++) {
+                double t = (double) i / (vertexCount - 1);
+                double bulge = offsetInMeters * Math.sin(Math.PI * t);
+                geometry.add(fromLatitude + (toLatitude - fromLatitude) * t + bulge * normalNorth / METERS_PER_DEGREE,
+                        fromLongitude + (toLongitude - fromLongitude) * t
+                                + bulge * normalEast / (METERS_PER_DEGREE * longitudeScale));
+            }
+            // Ends exactly on the stop, so consecutive legs join without a gap.
+            geometry.add(toLatitude, toLongitude);
+            legs.add(geometry);
+        }
+        return legs;
+    }
+}
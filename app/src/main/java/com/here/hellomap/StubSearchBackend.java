@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.threading.TaskHandle;
+import com.here.sdk.search.AddressQuery;
+import com.here.sdk.search.Place;
+import com.here.sdk.search.SearchCallback;
+import com.here.sdk.search.SearchOptions;
+import com.here.sdk.search.SuggestCallback;
+import com.here.sdk.search.Suggestion;
+import com.here.sdk.search.TextQuery;
+
+import java.util.Collections;
+
+/**
+ * Search backend that answers every request with an empty result after a fixed delay instead of
+ * asking the search engine, so the debouncing and coalescing of the {@link SearchDispatcher} can be
+ * timed offline. Counts the requests that reach it and the ones cancelled before their answer.
+ */
+public class StubSearchBackend implements SearchDispatcher.Backend {
+
+    private final Scheduler scheduler;
+    private final long latencyMillis;
+    private int requestCount;
+    private int cancelledCount;
+
+    /**
+     * @param latencyMillis delay before results are delivered on the main thread, 0 answers before
+     *                      the request returns.
+     */
+    public StubSearchBackend(long latencyMillis) {
+        this(latencyMillis, new MainThreadScheduler());
+    }
+
+    public StubSearchBackend(long latencyMillis, Scheduler scheduler) {
+        this.latencyMillis = latencyMillis;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public TaskHandle suggest(TextQuery query, SearchOptions searchOptions, final SuggestCallback callback) {
+        return deliver(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSuggestCompleted(null, Collections.<Suggestion>emptyList());
+            }
+        });
+    }
+
+    @Override
+    public TaskHandle search(TextQuery query, SearchOptions searchOptions, SearchCallback callback) {
+        return deliver(createSearchResult(callback));
+    }
+
+    @Override
+    public TaskHandle search(AddressQuery query, SearchOptions searchOptions, SearchCallback callback) {
+        return deliver(createSearchResult(callback));
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    public int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    private Runnable createSearchResult(final SearchCallback callback) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                callback.onSearchCompleted(null, Collections.<Place>emptyList());
+            }
+        };
+    }
+
+    private TaskHandle deliver(Runnable result) {
+        requestCount++;
+        Task task = new Task(result);
+        if (latencyMillis == 0) {
+            task.run();
+        } else {
+            scheduler.postDelayed(task, latencyMillis);
+        }
+        return task;
+    }
+
+    private class Task implements TaskHandle, Runnable {
+        private final Runnable result;
+        private boolean finished;
+        private boolean cancelled;
+
+        Task(Runnable result) {
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            finished = true;
+            result.run();
+        }
+
+        @Override
+        public boolean cancel() {
+            if (finished || cancelled) {
+                return false;
+            }
+            scheduler.removeCallbacks(this);
+            cancelled = true;
+            cancelledCount++;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+}
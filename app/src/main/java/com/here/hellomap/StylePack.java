@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only view of the map style pack written by the compileMapStyles Gradle task, the only copy
+ * of the custom styles in the APK. The pack is memory-mapped from the APK, the renderer loads scenes
+ * from files, so {@link #extractTo(File)} writes the style files out once per pack version.
+ * The files stay minified JSON that the renderer parses on every scene load, the pack saves APK size
+ * and asset decompression, not parsing.
+ */
+public class StylePack {
+
+    public static final String ASSET_NAME = "map-styles.pack";
+
+    private static final int PACK_MAGIC = 0x4D535031; // "MSP1"
+
+    // Written into an extracted directory after all files, a directory without it is incomplete.
+    private static final String COMPLETE_MARKER = ".complete";
+
+    private final MappedByteBuffer buffer;
+    private final Map<String, Entry> entries;
+    private final int version;
+
+    private static class Entry {
+        final int offset;
+        final int length;
+        final int crc32;
+
+        Entry(int offset, int length, int crc32) {
+            this.offset = offset;
+            this.length = length;
+            this.crc32 = crc32;
+        }
+    }
+
+    private StylePack(MappedByteBuffer buffer, Map<String, Entry> entries, int version) {
+        this.buffer = buffer;
+        this.entries = entries;
+        this.version = version;
+    }
+
+    public static StylePack open(AssetManager assetManager) throws IOException {
+        // openFd() only works because the pack is stored uncompressed, see aaptOptions in build.gradle.
+        try (AssetFileDescriptor descriptor = assetManager.openFd(ASSET_NAME);
+             FileInputStream input = descriptor.createInputStream()) {
+            return read(input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength()));
+        }
+    }
+
+    /**
+     * Opens a pack outside the APK, e.g. one written by a test.
+     */
+    static StylePack open(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            return read(input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        }
+    }
+
+    private static StylePack read(MappedByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != PACK_MAGIC) {
+            throw new IOException("Unknown style pack format.");
+        }
+        int count = buffer.getInt();
+        Map<String, Entry> entries = new HashMap<>(count * 2);
+        // The table of contents holds the checksum of every file, so it identifies the pack contents.
+        CRC32 version = new CRC32();
+        for (int i = 0; i < count; i++) {
+            String name = readModifiedUtf8(buffer);
+            Entry entry = new Entry(buffer.getInt(), buffer.getInt(), buffer.getInt());
+            entries.put(name, entry);
+            version.update(name.getBytes("UTF-8"));
+            version.update(ByteBuffer.allocate(4).putInt(entry.crc32).array());
+        }
+        return new StylePack(buffer, entries, (int) version.getValue());
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Returns the minified JSON of a style file as a read-only slice of the mapped pack, or null if it is missing.
+     */
+    @Nullable
+    public ByteBuffer get(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(entry.offset);
+        slice.limit(entry.offset + entry.length);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Identifies the contents of the pack, changes whenever a style file changes.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Writes all style files into a directory named after the pack version below the given one and
+     * returns it. Files are checked against the checksums recorded at build time while they are written.
+     * A directory extracted before is returned right away, directories of older versions are deleted.
+     */
+    public File extractTo(File parentDirectory) throws IOException {
+        File directory = new File(parentDirectory, Integer.toHexString(version));
+        File marker = new File(directory, COMPLETE_MARKER);
+        if (marker.exists()) {
+            return directory;
+        }
+        File[] oldDirectories = parentDirectory.listFiles();
+        if (oldDirectories != null) {
+            for (File oldDirectory : oldDirectories) {
+                deleteRecursively(oldDirectory);
+            }
+        }
+        if (!directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        byte[] chunk = new byte[8 * 1024];
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            ByteBuffer content = get(entry.getKey());
+            CRC32 crc = new CRC32();
+            try (FileOutputStream output = new FileOutputStream(new File(directory, entry.getKey()))) {
+                while (content.hasRemaining()) {
+                    int length = Math.min(chunk.length, content.remaining());
+                    content.get(chunk, 0, length);
+                    crc.update(chunk, 0, length);
+                    output.write(chunk, 0, length);
+                }
+            }
+            if ((int) crc.getValue() != entry.getValue().crc32) {
+                throw new IOException("Map style " + entry.getKey() + " is corrupt.");
+            }
+        }
+        if (!marker.createNewFile()) {
+            throw new IOException("Could not complete " + directory);
+        }
+        return directory;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    // Names are written with DataOutputStream.writeUTF(), they are short and ASCII in practice.
+    private static String readModifiedUtf8(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        char[] chars = new char[length];
+        int count = 0;
+        int end = buffer.position() + length;
+        while (buffer.position() < end) {
+            int b = buffer.get() & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+            } else if ((b & 0xF0) == 0xE0) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+            } else {
+                throw new IOException("Malformed style pack entry name.");
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * On-device autosuggest index over titles and addresses of earlier search results.
+ * Entries are kept in a map sorted by their normalized text, so all completions of a prefix form one
+ * contiguous range. Every prefix with more than {@value #RANKED_CANDIDATES} completions also keeps its
+ * most frequent ones, and only those are ranked by distance, so a suggestion costs the same for any index
+ * size. For such a broad prefix a rarely searched text nearby can lose to frequent ones further away.
+ * In memory an entry costs its text and normalized key, the entry object and a map node, about 200 bytes
+ * for a 20 character text on a 64-bit runtime, the rankings add a few percent to that.
+ * Methods are synchronized so the index can be saved from a background thread while the UI keeps using it.
+ */
+public class SuggestionIndex {
+
+    private static final int FILE_MAGIC = 0x53475831; // "SGX1"
+    private static final double FIXED_POINT_SCALE = 1e6;
+    private static final double METERS_PER_DEGREE = 111_320;
+    static final int RANKED_CANDIDATES = 32;
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    // Most frequent entries first, kept for every prefix with more than RANKED_CANDIDATES completions.
+    private final HashMap<String, Entry[]> rankedPrefixes = new HashMap<>();
+    private boolean dirty;
+
+    private static class Entry {
+        final String key;
+        final String text;
+        int latitudeE6;
+        int longitudeE6;
+        int frequency;
+
+        Entry(String key, String text, int latitudeE6, int longitudeE6, int frequency) {
+            this.key = key;
+            this.text = text;
+            this.latitudeE6 = latitudeE6;
+            this.longitudeE6 = longitudeE6;
+            this.frequency = frequency;
+        }
+    }
+
+    /**
+     * Records a search result text, a repeated text raises its frequency and takes the coordinates of the latest result.
+     */
+    public synchronized void add(String text, double latitude, double longitude) {
+        String key = normalize(text);
+        if (key.isEmpty()) {
+            return;
+        }
+        record(key, text, (int) Math.round(latitude * FIXED_POINT_SCALE),
+                (int) Math.round(longitude * FIXED_POINT_SCALE), 1);
+        dirty = true;
+    }
+
+    /**
+     * Returns up to maxResults texts starting with the prefix, ranked by frequency and distance to the center.
+     */
+    public synchronized List<String> suggest(String prefix, double centerLatitude, double centerLongitude, int maxResults) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Entry[] ranked = maxResults <= RANKED_CANDIDATES ? rankedPrefixes.get(key) : null;
+        // A prefix without a ranking has at most RANKED_CANDIDATES completions.
+        Collection<Entry> candidates = ranked != null ? Arrays.asList(ranked) : completions(key).values();
+
+        double longitudeScale = Math.cos(Math.toRadians(centerLatitude));
+        ArrayList<Entry> best = new ArrayList<>(maxResults + 1);
+        ArrayList<Double> bestScores = new ArrayList<>(maxResults + 1);
+        // A score never exceeds the frequency, so once the top list is full most candidates are ruled
+        // out by that comparison alone.
+        for (Entry entry : candidates) {
+            if (best.size() == maxResults && entry.frequency <= bestScores.get(maxResults - 1)) {
+                continue;
+            }
+            double dLat = entry.latitudeE6 / FIXED_POINT_SCALE - centerLatitude;
+            double dLon = (entry.longitudeE6 / FIXED_POINT_SCALE - centerLongitude) * longitudeScale;
+            double distanceInKm = Math.sqrt(dLat * dLat + dLon * dLon) * METERS_PER_DEGREE / 1000;
+            double score = entry.frequency / (1 + distanceInKm);
+
+            // Insertion into a small sorted top list, maxResults is a handful of rows.
+            int position = bestScores.size();
+            while (position > 0 && bestScores.get(position - 1) < score) {
+                position--;
+            }
+            if (position < maxResults) {
+                best.add(position, entry);
+                bestScores.add(position, score);
+                if (best.size() > maxResults) {
+                    best.remove(maxResults);
+                    bestScores.remove(maxResults);
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>(best.size());
+        for (Entry entry : best) {
+            result.add(entry.text);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the entries of another index that holds newer results, frequencies of texts in both are summed
+     * and the coordinates of the other index win. Used to fold results recorded while the saved index was
+     * loading into it.
+     */
+    public synchronized void merge(SuggestionIndex other) {
+        List<Entry> otherEntries;
+        synchronized (other) {
+            otherEntries = new ArrayList<>(other.entries.values());
+        }
+        for (Entry otherEntry : otherEntries) {
+            record(otherEntry.key, otherEntry.text, otherEntry.latitudeE6, otherEntry.longitudeE6, otherEntry.frequency);
+        }
+        if (!otherEntries.isEmpty()) {
+            dirty = true;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Writes the index in sorted order so loading needs no sort. Writes to a temporary file
+     * first and renames it, an interrupted save leaves the previous file intact.
+     */
+    public synchronized void save(File file) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                output.writeUTF(entry.text);
+                output.writeInt(entry.latitudeE6);
+                output.writeInt(entry.longitudeE6);
+                output.writeInt(entry.frequency);
+            }
+        }
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        dirty = false;
+    }
+
+    public static SuggestionIndex load(File file) throws IOException {
+        SuggestionIndex index = new SuggestionIndex();
+        if (!file.exists()) {
+            return index;
+        }
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (input.readInt() != FILE_MAGIC) {
+                throw new IOException("Unknown suggestion index format.");
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String text = input.readUTF();
+                Entry entry = new Entry(normalize(text), text, input.readInt(), input.readInt(), input.readInt());
+                index.entries.put(entry.key, entry);
+            }
+        }
+        // One pass over the sorted entries instead of ranking while inserting.
+        index.rankPrefixes(new ArrayList<>(index.entries.values()), 0, index.entries.size(), 0);
+        return index;
+    }
+
+    private void record(String key, String text, int latitudeE6, int longitudeE6, int frequency) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, text, latitudeE6, longitudeE6, frequency);
+            entries.put(key, entry);
+        } else {
+            entry.frequency += frequency;
+            entry.latitudeE6 = latitudeE6;
+            entry.longitudeE6 = longitudeE6;
+        }
+        updateRankings(entry);
+    }
+
+    // A longer prefix never has more completions than a shorter one, so the ranked prefixes of a key are
+    // its shortest ones and the first prefix that stays below the limit ends the walk.
+    private void updateRankings(Entry entry) {
+        for (int length = 1; length <= entry.key.length(); length++) {
+            String prefix = entry.key.substring(0, length);
+            Entry[] ranked = rankedPrefixes.get(prefix);
+            if (ranked != null) {
+                rerank(ranked, entry);
+                continue;
+            }
+            // Counts at most one entry more than the limit, a new entry is the only way over it.
+            Collection<Entry> completions = completions(prefix).values();
+            if (completions.size() <= RANKED_CANDIDATES) {
+                return;
+            }
+            rankedPrefixes.put(prefix, rankByFrequency(completions));
+        }
+    }
+
+    // Ranks the prefixes one character longer than the given length within the sorted range, and the
+    // longer prefixes of every one that has too many completions.
+    private void rankPrefixes(List<Entry> sorted, int from, int to, int length) {
+        int start = from;
+        while (start < to) {
+            String key = sorted.get(start).key;
+            if (key.length() <= length) {
+                start++;
+                continue;
+            }
+            String prefix = key.substring(0, length + 1);
+            int end = start + 1;
+            while (end < to && sorted.get(end).key.startsWith(prefix)) {
+                end++;
+            }
+            if (end - start > RANKED_CANDIDATES) {
+                rankedPrefixes.put(prefix, rankByFrequency(sorted.subList(start, end)));
+                rankPrefixes(sorted, start, end, length + 1);
+            }
+            start = end;
+        }
+    }
+
+    private SortedMap<String, Entry> completions(String prefix) {
+        // Every string starting with the prefix sorts before the prefix followed by the highest char.
+        return entries.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    // Ties are broken by the key, so a ranking does not depend on the order entries were recorded in.
+    private static boolean ranksBefore(Entry entry, Entry other) {
+        return entry.frequency > other.frequency
+                || entry.frequency == other.frequency && entry.key.compareTo(other.key) < 0;
+    }
+
+    // The RANKED_CANDIDATES most frequent of more than that many entries, most frequent first.
+    private static Entry[] rankByFrequency(Iterable<Entry> completions) {
+        Entry[] ranked = new Entry[RANKED_CANDIDATES];
+        int count = 0;
+        for (Entry entry : completions) {
+            if (count == ranked.length && !ranksBefore(entry, ranked[count - 1])) {
+                continue;
+            }
+            int position = count < ranked.length ? count++ : count - 1;
+            while (position > 0 && ranksBefore(entry, ranked[position - 1])) {
+                ranked[position] = ranked[position - 1];
+                position--;
+            }
+            ranked[position] = entry;
+        }
+        return ranked;
+    }
+
+    // Frequencies only grow, so the entry moves towards the front or takes the place of the least frequent one.
+    private static void rerank(Entry[] ranked, Entry entry) {
+        int position = ranked.length - 1;
+        for (int i = 0; i < ranked.length; i++) {
+            if (ranked[i] == entry) {
+                position = i;
+                break;
+            }
+        }
+        if (ranked[position] != entry && !ranksBefore(entry, ranked[position])) {
+            return;
+        }
+        while (position > 0 && ranksBefore(entry, ranked[position - 1])) {
+            ranked[position] = ranked[position - 1];
+            position--;
+        }
+        ranked[position] = entry;
+    }
+
+    // Returns the text itself if it is already normalized, so the entry stores one string instead of two.
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
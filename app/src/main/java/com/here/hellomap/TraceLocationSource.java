@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Stand-in location source that plays back a recorded trace on its own thread and delivers
+ * the fixes through an executor, e.g. onto the main thread where real location updates arrive.
+ */
+public class TraceLocationSource {
+
+    public interface ReplayListener {
+        void onReplayFinished(TraceReplayer.Report report);
+    }
+
+    private final Executor deliveryExecutor;
+    @Nullable
+    private TraceReplayer replayer;
+    @Nullable
+    private Thread thread;
+    @Nullable
+    private volatile TraceReplayer.Report report;
+
+    public TraceLocationSource(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Starts playing the trace, a replay that is still running is stopped first.
+     */
+    public void start(GpsTrace trace, double speedFactor, TraceReplayer.PositionListener positionListener,
+                      ReplayListener replayListener) {
+        stop();
+        // A fresh replayer per run, a stopped one may still have a fix queued on the executor.
+        TraceReplayer newReplayer = new TraceReplayer(deliveryExecutor);
+        TraceReplayer.Report newReport = new TraceReplayer.Report();
+        replayer = newReplayer;
+        report = newReport;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replayListener.onReplayFinished(newReplayer.replay(trace, speedFactor, positionListener, newReport));
+                } catch (InterruptedException e) {
+                    // Stopped while waiting for the next fix.
+                }
+            }
+        }, "TraceLocationSource");
+        thread.start();
+    }
+
+    public void stop() {
+        if (replayer != null) {
+            replayer.cancel();
+            replayer = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Records an event of the position pipeline on the timeline of the running replay.
+     */
+    public void recordEvent(String event) {
+        TraceReplayer.Report currentReport = report;
+        if (currentReport != null) {
+            currentReport.recordEvent(event);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams a recorded trace through a position listener, either at the recorded pace, accelerated
+ * or as fast as the listener keeps up. Every fix is handed over through the delivery executor and
+ * the next one is only sent once it was processed, so the listener never falls behind the replay.
+ * Pass a direct executor to replay on the calling thread, e.g. on a build machine.
+ */
+public class TraceReplayer {
+
+    public static final double REAL_TIME = 1;
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    public interface PositionListener {
+        /**
+         * @param bearingInDegrees NaN if the trace does not record a heading.
+         */
+        void onPosition(long timeInMillis, double latitude, double longitude, double bearingInDegrees);
+    }
+
+    /**
+     * Outcome of one replay. Events can be recorded by the pipeline while the replay runs,
+     * they are stamped with the time of the fix being processed.
+     */
+    public static class Report {
+        private final LatencyHistogram fixLatency = new LatencyHistogram();
+        private final List<String> timeline = new ArrayList<>();
+        private volatile long currentFixTimeInMillis;
+        private long startTimeInMillis;
+        private int fixCount;
+        private long wallNanos;
+        private boolean cancelled;
+
+        public synchronized void recordEvent(String event) {
+            timeline.add((currentFixTimeInMillis - startTimeInMillis) + "ms " + event);
+        }
+
+        /**
+         * Events as "offset from the start of the trace, event" in the order they happened.
+         */
+        public synchronized List<String> getTimeline() {
+            return new ArrayList<>(timeline);
+        }
+
+        /**
+         * Time from when a fix was due until the listener returned, includes waiting for the executor.
+         */
+        public LatencyHistogram getFixLatency() {
+            return fixLatency;
+        }
+
+        public int getFixCount() {
+            return fixCount;
+        }
+
+        public double getFixesPerSecond() {
+            return wallNanos == 0 ? 0 : fixCount * 1e9 / wallNanos;
+        }
+
+        public long getWallMillis() {
+            return wallNanos / 1_000_000;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return fixCount + " fixes in " + getWallMillis() + " ms (" + Math.round(getFixesPerSecond())
+                    + " fixes/s), latency p50 " + fixLatency.getPercentileNanos(50) / 1000
+                    + " us, p99 " + fixLatency.getPercentileNanos(99) / 1000 + " us, "
+                    + timeline.size() + " events" + (cancelled ? ", cancelled" : "");
+        }
+    }
+
+    private final Executor deliveryExecutor;
+    private final Semaphore delivered = new Semaphore(0);
+    private volatile boolean cancelled;
+
+    // The fix being delivered. One runnable is reused for all fixes so replaying does not allocate.
+    private PositionListener listener;
+    private Report report;
+    private long fixTime;
+    private double fixLatitude;
+    private double fixLongitude;
+    private double fixBearing;
+    private long dueNanos;
+
+    private final Runnable delivery = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                listener.onPosition(fixTime, fixLatitude, fixLongitude, fixBearing);
+            } finally {
+                report.fixLatency.record(System.nanoTime() - dueNanos);
+                delivered.release();
+            }
+        }
+    };
+
+    public TraceReplayer(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Replays the trace and blocks until it is done or cancelled.
+     *
+     * @param speedFactor {@link #REAL_TIME}, a multiple of it, or {@link #AS_FAST_AS_POSSIBLE}.
+     * @param report receives the results, create it up front to record events during the replay.
+     */
+    public Report replay(GpsTrace trace, double speedFactor, PositionListener listener, Report report)
+            throws InterruptedException {
+        if (speedFactor < 0) {
+            throw new IllegalArgumentException("Speed factor must not be negative.");
+        }
+        cancelled = false;
+        this.listener = listener;
+        this.report = report;
+        report.startTimeInMillis = trace.size() == 0 ? 0 : trace.getTimeInMillis(0);
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < trace.size() && !cancelled; i++) {
+            long due = startNanos;
+            if (speedFactor > 0) {
+                due += (long) ((trace.getTimeInMillis(i) - report.startTimeInMillis) * 1_000_000 / speedFactor);
+                long waitNanos = due - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                }
+            } else {
+                due = System.nanoTime();
+            }
+
+            fixTime = trace.getTimeInMillis(i);
+            fixLatitude = trace.getLatitude(i);
+            fixLongitude = trace.getLongitude(i);
+            fixBearing = trace.getBearingInDegrees(i);
+            dueNanos = due;
+            report.currentFixTimeInMillis = fixTime;
+            deliveryExecutor.execute(delivery);
+            delivered.acquire();
+            report.fixCount++;
+        }
+        report.wallNanos = System.nanoTime() - startNanos;
+        report.cancelled = cancelled;
+        return report;
+    }
+
+    /**
+     * Stops a running replay after the fix in flight, may be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRouterTest {
+
+    private final RouteComparator.Profile profile = RouteComparator.Profile.car("car", new CarOptions());
+
+    @Test
+    public void fillsEveryCellWithASynchronousRouter() {
+        StubRouter router = new StubRouter(0, 200);
+        CountingListener listener = new CountingListener();
+
+        BatchRouter.Batch batch = new BatchRouter(router, 4, new Metrics())
+                .calculate(grid(30, 0), grid(30, 0.1), profile, listener);
+
+        RouteMatrix matrix = batch.getMatrix();
+        assertTrue(matrix.isComplete());
+        assertEquals(900, router.getRequestCount());
+        assertEquals(900, listener.cells);
+        assertEquals(1, listener.batches);
+        assertEquals(0, matrix.getFailedCount());
+        // Farther destinations take longer.
+        assertTrue(matrix.getDurationInSeconds(0, 0) < matrix.getDurationInSeconds(0, 29));
+        assertTrue(matrix.getLengthInMeters(5, 5) > 0);
+    }
+
+    @Test
+    public void keepsAtMostTheAllowedRequestsInFlight() {
+        DeferredRouter router = new DeferredRouter();
+        CountingListener listener = new CountingListener();
+
+        BatchRouter.Batch batch = new BatchRouter(router, 3, new Metrics())
+                .calculate(grid(4, 0), grid(5, 0.1), profile, listener);
+
+        assertEquals(3, router.pending.size());
+        int answered = 0;
+        while (!router.pending.isEmpty()) {
+            // Every other cell fails.
+            router.answer(answered++ % 2 == 0 ? null : RoutingError.NO_ROUTE_FOUND);
+            assertTrue(router.pending.size() <= 3);
+        }
+
+        assertEquals(20, answered);
+        assertEquals(1, listener.batches);
+        assertEquals(10, batch.getMatrix().getFailedCount());
+        assertEquals(RoutingError.NO_ROUTE_FOUND, batch.getMatrix().getError(0, 1));
+        assertNull(batch.getMatrix().getError(0, 0));
+        assertEquals(RouteMatrix.UNKNOWN, batch.getMatrix().getDurationInSeconds(0, 1));
+    }
+
+    @Test
+    public void cancelLetsRunningRequestsFinish() {
+        DeferredRouter router = new DeferredRouter();
+        CountingListener listener = new CountingListener();
+
+        BatchRouter.Batch batch = new BatchRouter(router, 2, new Metrics())
+                .calculate(grid(3, 0), grid(3, 0.1), profile, listener);
+        router.answer(null);
+        batch.cancel();
+        router.answer(null);
+        assertEquals(0, listener.batches);
+        router.answer(null);
+
+        assertTrue(router.pending.isEmpty());
+        assertEquals(3, listener.cells);
+        assertEquals(1, listener.batches);
+        assertFalse(batch.getMatrix().isComplete());
+    }
+
+    private static List<GeoCoordinates> grid(int count, double longitudeOffset) {
+        List<GeoCoordinates> coordinates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            coordinates.add(new GeoCoordinates(52.5, 13.4 + longitudeOffset + i * 0.01));
+        }
+        return coordinates;
+    }
+
+    // Holds callbacks until the test answers them, like an engine with requests in flight.
+    private static class DeferredRouter implements RouteComparator.Router {
+        final ArrayDeque<Callback> pending = new ArrayDeque<>();
+
+        @Override
+        public void calculate(List<Waypoint> waypoints, RouteComparator.Profile profile, int alternatives,
+                              Callback callback) {
+            pending.add(callback);
+        }
+
+        void answer(RoutingError routingError) {
+            List<RouteComparator.Candidate> candidates = routingError != null
+                    ? Collections.<RouteComparator.Candidate>emptyList()
+                    : Collections.singletonList(new RouteComparator.Candidate(null, 0, new CoordinateBuffer(), 60, 1000, 0));
+            pending.poll().onCalculated(routingError, candidates);
+        }
+    }
+
+    private static class CountingListener implements BatchRouter.Listener {
+        int cells;
+        int batches;
+
+        @Override
+        public void onCellCompleted(RouteMatrix matrix, int origin, int destination) {
+            cells++;
+        }
+
+        @Override
+        public void onBatchCompleted(RouteMatrix matrix) {
+            batches++;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Timing helpers for the *Benchmark tests. They only run with -Pbenchmark, see build.gradle,
+ * and print their numbers instead of asserting on them, timings depend on the machine.
+ */
+final class Benchmark {
+
+    private Benchmark() {
+    }
+
+    /**
+     * Skips the calling test unless benchmarks were asked for.
+     */
+    static void assumeEnabled() {
+        Assume.assumeTrue("Run with -Pbenchmark to time this.", Boolean.getBoolean("benchmark"));
+    }
+
+    /**
+     * Runs the body a few times to warm up the JIT, then returns the median of the timed runs.
+     */
+    static long medianNanos(int warmups, int runs, Runnable body) {
+        for (int i = 0; i < warmups; i++) {
+            body.run();
+        }
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long startNanos = System.nanoTime();
+            body.run();
+            nanos[i] = System.nanoTime() - startNanos;
+        }
+        Arrays.sort(nanos);
+        return nanos[runs / 2];
+    }
+
+    /**
+     * Heap in use after a full collection, good enough to compare data structures of a few megabytes.
+     */
+    static long usedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Bytes allocated by the calling thread so far, the difference of two calls is what ran in between.
+     */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A winding road with vertices about 15 meters apart, like the geometry of the routing engine.
+     */
+    static CoordinateBuffer createRoute(int vertexCount, long seed) {
+        Random random = new Random(seed);
+        CoordinateBuffer route = new CoordinateBuffer(vertexCount);
+        double latitude = 48;
+        double longitude = 8;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < vertexCount; i++) {
+            route.add(latitude, longitude);
+            heading += random.nextGaussian() * 0.05;
+            latitude += Math.cos(heading) * 15 / 111_320;
+            longitude += Math.sin(heading) * 15 / (111_320 * Math.cos(Math.toRadians(latitude)));
+        }
+        return route;
+    }
+
+    static void report(String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+}
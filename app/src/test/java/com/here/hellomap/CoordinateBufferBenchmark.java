@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap, allocation and throughput of the packed coordinate buffer against a boxed list of
+ * GeoCoordinates holding the same route.
+ */
+public class CoordinateBufferBenchmark {
+
+    private static final int VERTEX_COUNT = 1_000_000;
+
+    // Keeps the JIT from dropping loops whose result is unused.
+    private static double sink;
+
+    @Test
+    public void millionVertexRoute() {
+        Benchmark.assumeEnabled();
+        final double[] latLon = Benchmark.createRoute(VERTEX_COUNT, 13).toArray();
+
+        long heapBefore = Benchmark.usedHeapBytes();
+        List<GeoCoordinates> retainedList = createList(latLon);
+        long listBytes = Benchmark.usedHeapBytes() - heapBefore;
+        heapBefore = Benchmark.usedHeapBytes();
+        CoordinateBuffer retainedBuffer = createBuffer(latLon);
+        long bufferBytes = Benchmark.usedHeapBytes() - heapBefore;
+        Benchmark.report("heap per vertex: boxed list %.1f bytes, buffer %.1f bytes",
+                (double) listBytes / VERTEX_COUNT, (double) bufferBytes / VERTEX_COUNT);
+
+        measure("build", new Runnable() {
+            @Override
+            public void run() {
+                sink += createList(latLon).size();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                sink += createBuffer(latLon).size();
+            }
+        });
+
+        final List<GeoCoordinates> list = retainedList;
+        final CoordinateBuffer buffer = retainedBuffer;
+        measure("iterate", new Runnable() {
+            @Override
+            public void run() {
+                double sum = 0;
+                for (GeoCoordinates coordinates : list) {
+                    sum += coordinates.latitude + coordinates.longitude;
+                }
+                sink += sum;
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                double sum = 0;
+                for (int i = 0; i < buffer.size(); i++) {
+                    sum += buffer.getLatitude(i) + buffer.getLongitude(i);
+                }
+                sink += sum;
+            }
+        });
+        measure("length", new Runnable() {
+            @Override
+            public void run() {
+                double length = 0;
+                for (int i = 1; i < list.size(); i++) {
+                    GeoCoordinates from = list.get(i - 1);
+                    GeoCoordinates to = list.get(i);
+                    length += CoordinateBuffer.distanceInMeters(from.latitude, from.longitude, to.latitude, to.longitude);
+                }
+                sink += length;
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                sink += buffer.getLengthInMeters();
+            }
+        });
+        measure("slice half", new Runnable() {
+            @Override
+            public void run() {
+                sink += new ArrayList<>(list.subList(VERTEX_COUNT / 4, VERTEX_COUNT * 3 / 4)).size();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                sink += buffer.slice(VERTEX_COUNT / 4, VERTEX_COUNT * 3 / 4).size();
+            }
+        });
+    }
+
+    private static void measure(String name, Runnable boxed, Runnable packed) {
+        long allocatedBefore = Benchmark.allocatedBytes();
+        long boxedNanos = Benchmark.medianNanos(5, 11, boxed);
+        long boxedBytes = (Benchmark.allocatedBytes() - allocatedBefore) / 16;
+        allocatedBefore = Benchmark.allocatedBytes();
+        long packedNanos = Benchmark.medianNanos(5, 11, packed);
+        long packedBytes = (Benchmark.allocatedBytes() - allocatedBefore) / 16;
+        Benchmark.report("%-10s boxed list %7.2f ms, %,9d KB allocated | buffer %7.2f ms, %,9d KB allocated",
+                name, boxedNanos / 1e6, boxedBytes / 1024, packedNanos / 1e6, packedBytes / 1024);
+    }
+
+    private static List<GeoCoordinates> createList(double[] latLon) {
+        List<GeoCoordinates> list = new ArrayList<>();
+        for (int i = 0; i < latLon.length; i += 2) {
+            list.add(new GeoCoordinates(latLon[i], latLon[i + 1]));
+        }
+        return list;
+    }
+
+    private static CoordinateBuffer createBuffer(double[] latLon) {
+        CoordinateBuffer buffer = new CoordinateBuffer();
+        for (int i = 0; i < latLon.length; i += 2) {
+            buffer.add(latLon[i], latLon[i + 1]);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * Planning time and tile counts of route corridors from 100 to 3000 kilometers, with the buffer and
+ * zoom levels the app plans with.
+ */
+public class CorridorTilePlannerBenchmark {
+
+    private static final double BUFFER_IN_METERS = 1000;
+    private static final int MIN_ZOOM = 8;
+    private static final int MAX_ZOOM = 16;
+
+    private static int sink;
+
+    @Test
+    public void longRoutes() {
+        Benchmark.assumeEnabled();
+        // Warms up the JIT, the shortest route alone is too quick for it.
+        CoordinateBuffer warmup = Benchmark.createRoute(20_000, 21);
+        for (int i = 0; i < 10; i++) {
+            sink += CorridorTilePlanner.plan(warmup, BUFFER_IN_METERS, MIN_ZOOM, MAX_ZOOM).getTileCount();
+        }
+        for (int lengthInKilometers : new int[] {100, 300, 1000, 3000}) {
+            // The benchmark routes have a vertex every 15 meters.
+            final CoordinateBuffer route = Benchmark.createRoute(lengthInKilometers * 1000 / 15, 22);
+            final CorridorTilePlanner.Plan[] plan = new CorridorTilePlanner.Plan[1];
+            long planNanos = Benchmark.medianNanos(2, 5, new Runnable() {
+                @Override
+                public void run() {
+                    plan[0] = CorridorTilePlanner.plan(route, BUFFER_IN_METERS, MIN_ZOOM, MAX_ZOOM);
+                }
+            });
+            long orderNanos = Benchmark.medianNanos(2, 5, new Runnable() {
+                @Override
+                public void run() {
+                    sink += plan[0].getTilesInTravelOrder().length;
+                }
+            });
+            StringBuilder counts = new StringBuilder();
+            for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom += 2) {
+                counts.append(String.format(Locale.ROOT, " z%d %,d", zoom, plan[0].getTiles(zoom).length));
+            }
+            Benchmark.report("%,5d km, %,7d vertices: plan %7.1f ms, travel order %5.1f ms, %,7d tiles:%s",
+                    lengthInKilometers, route.size(), planNanos / 1e6, orderNanos / 1e6,
+                    plan[0].getTileCount(), counts);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CorridorTilePlannerTest {
+
+    private static final double EARTH_CIRCUMFERENCE_IN_METERS = 40_075_016.686;
+
+    @Test
+    public void keysRoundTrip() {
+        long key = CorridorTilePlanner.createKey(22, (1 << 22) - 1, 12345);
+
+        assertEquals(22, CorridorTilePlanner.getZoom(key));
+        assertEquals((1 << 22) - 1, CorridorTilePlanner.getX(key));
+        assertEquals(12345, CorridorTilePlanner.getY(key));
+        assertEquals("", CorridorTilePlanner.toQuadkey(CorridorTilePlanner.createKey(0, 0, 0)));
+        assertEquals("213", CorridorTilePlanner.toQuadkey(CorridorTilePlanner.createKey(3, 3, 5)));
+    }
+
+    @Test
+    public void matchesABruteForceCorridor() {
+        Random random = new Random(11);
+        CoordinateBuffer route = new CoordinateBuffer();
+        double latitude = 52.5;
+        double longitude = 13.4;
+        for (int i = 0; i < 200; i++) {
+            route.add(latitude, longitude);
+            latitude += (random.nextDouble() - 0.3) * 0.002;
+            longitude += (random.nextDouble() - 0.3) * 0.003;
+        }
+        double bufferInMeters = 150;
+
+        CorridorTilePlanner.Plan plan = CorridorTilePlanner.plan(route, bufferInMeters, 10, 16);
+
+        assertEquals(10, plan.getMinZoom());
+        assertEquals(16, plan.getMaxZoom());
+        for (int zoom = 10; zoom <= 16; zoom++) {
+            Set<Long> planned = new HashSet<>();
+            for (long tile : plan.getTiles(zoom)) {
+                assertEquals(zoom, CorridorTilePlanner.getZoom(tile));
+                assertTrue("duplicate tile", planned.add(tile));
+            }
+            double tilesPerSide = 1 << zoom;
+            double bufferInUnits = bufferInMeters / (EARTH_CIRCUMFERENCE_IN_METERS * Math.cos(Math.toRadians(52.5)));
+            // The plan may widen the corridor by 1/32 of a tile and the samples are 1/256 of a tile apart.
+            double slack = 2.0 / 32 / tilesPerSide;
+            double[] bounds = bounds(route);
+            int minX = (int) Math.floor((bounds[0] - bufferInUnits * 2) * tilesPerSide);
+            int maxX = (int) Math.floor((bounds[2] + bufferInUnits * 2) * tilesPerSide);
+            int minY = (int) Math.floor((bounds[1] - bufferInUnits * 2) * tilesPerSide);
+            int maxY = (int) Math.floor((bounds[3] + bufferInUnits * 2) * tilesPerSide);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    double distance = distanceToTile(route, x / tilesPerSide, y / tilesPerSide, 1 / tilesPerSide);
+                    boolean isPlanned = planned.contains(CorridorTilePlanner.createKey(zoom, x, y));
+                    if (distance < bufferInUnits * 0.99) {
+                        assertTrue("missing tile " + zoom + "/" + x + "/" + y, isPlanned);
+                    } else if (distance > bufferInUnits * 1.01 + slack) {
+                        assertTrue("extra tile " + zoom + "/" + x + "/" + y, !isPlanned);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void travelOrderFollowsTheRoute() {
+        CoordinateBuffer route = new CoordinateBuffer();
+        route.add(0, 0);
+        route.add(0, 1);
+
+        CorridorTilePlanner.Plan plan = CorridorTilePlanner.plan(route, 10, 8, 8);
+
+        long[] tiles = plan.getTiles(8);
+        for (int i = 1; i < tiles.length; i++) {
+            assertTrue(CorridorTilePlanner.getX(tiles[i - 1]) <= CorridorTilePlanner.getX(tiles[i]));
+        }
+        assertArrayEquals(tiles, plan.getTilesInTravelOrder());
+        assertEquals(tiles.length, plan.getTileCount());
+    }
+
+    // Normalized Mercator bounds as minX, minY, maxX, maxY.
+    private static double[] bounds(CoordinateBuffer route) {
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = 0; i < route.size(); i++) {
+            double x = projectX(route.getLongitude(i));
+            double y = projectY(route.getLatitude(i));
+            bounds[0] = Math.min(bounds[0], x);
+            bounds[1] = Math.min(bounds[1], y);
+            bounds[2] = Math.max(bounds[2], x);
+            bounds[3] = Math.max(bounds[3], y);
+        }
+        return bounds;
+    }
+
+    // Samples every segment densely and measures the distance of each sample to the tile square.
+    private static double distanceToTile(CoordinateBuffer route, double left, double top, double size) {
+        double min = Double.MAX_VALUE;
+        for (int i = 1; i < route.size(); i++) {
+            double x0 = projectX(route.getLongitude(i - 1));
+            double y0 = projectY(route.getLatitude(i - 1));
+            double x1 = projectX(route.getLongitude(i));
+            double y1 = projectY(route.getLatitude(i));
+            int steps = 1 + (int) (Math.hypot(x1 - x0, y1 - y0) / (size / 256));
+            for (int step = 0; step <= steps; step++) {
+                double t = (double) step / steps;
+                double x = x0 + t * (x1 - x0);
+                double y = y0 + t * (y1 - y0);
+                double dx = Math.max(0, Math.max(left - x, x - (left + size)));
+                double dy = Math.max(0, Math.max(top - y, y - (top + size)));
+                min = Math.min(min, Math.hypot(dx, dy));
+            }
+        }
+        return min;
+    }
+
+    private static double projectX(double longitude) {
+        return longitude / 360 + 0.5;
+    }
+
+    private static double projectY(double latitude) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude));
+        return 0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI);
+    }
+}
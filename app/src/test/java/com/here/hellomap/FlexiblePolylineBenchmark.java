@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+/**
+ * Encode and decode throughput of flexible polylines per precision, with and without altitudes.
+ */
+public class FlexiblePolylineBenchmark {
+
+    private static final int VERTEX_COUNT = 1_000_000;
+
+    private static double sink;
+
+    @Test
+    public void millionVertexRoute() {
+        Benchmark.assumeEnabled();
+        CoordinateBuffer route = Benchmark.createRoute(VERTEX_COUNT, 14);
+        double[] altitudes = new double[VERTEX_COUNT];
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            altitudes[i] = 400 + 150 * Math.sin(i / 2000.0);
+        }
+        for (int precision = 5; precision <= 7; precision++) {
+            run(route, null, precision);
+            run(route, altitudes, precision);
+        }
+    }
+
+    private static void run(final CoordinateBuffer route, final double[] altitudes, final int precision) {
+        final String encoded = encode(route, altitudes, precision);
+        long encodeNanos = Benchmark.medianNanos(3, 9, new Runnable() {
+            @Override
+            public void run() {
+                sink += encode(route, altitudes, precision).length();
+            }
+        });
+        Runnable decode = new Runnable() {
+            @Override
+            public void run() {
+                FlexiblePolyline.Decoder decoder = new FlexiblePolyline.Decoder(encoded);
+                double sum = 0;
+                while (decoder.next()) {
+                    sum += decoder.getLatitude() + decoder.getLongitude() + decoder.getThirdDimensionValue();
+                }
+                sink += sum;
+            }
+        };
+        long decodeNanos = Benchmark.medianNanos(3, 9, decode);
+        long allocatedBefore = Benchmark.allocatedBytes();
+        decode.run();
+        long decodeBytes = Benchmark.allocatedBytes() - allocatedBefore;
+
+        // Encoded polylines are ASCII, one byte per character.
+        double megabytes = encoded.length() / 1e6;
+        Benchmark.report("precision %d %-8s %5.2f bytes/vertex | encode %6.1f ms %5.1f MB/s"
+                        + " | decode %6.1f ms %5.1f MB/s, %d bytes allocated",
+                precision, altitudes == null ? "2d" : "altitude", (double) encoded.length() / route.size(),
+                encodeNanos / 1e6, megabytes / (encodeNanos / 1e9),
+                decodeNanos / 1e6, megabytes / (decodeNanos / 1e9), decodeBytes);
+    }
+
+    private static String encode(CoordinateBuffer route, double[] altitudes, int precision) {
+        if (altitudes == null) {
+            return FlexiblePolyline.encode(route, precision);
+        }
+        StringBuilder builder = new StringBuilder(8 + route.size() * 8);
+        FlexiblePolyline.Encoder encoder = new FlexiblePolyline.Encoder(
+                builder, precision, FlexiblePolyline.THIRD_DIMENSION_ALTITUDE, 1);
+        for (int i = 0; i < route.size(); i++) {
+            encoder.add(route.getLatitude(i), route.getLongitude(i), altitudes[i]);
+        }
+        return builder.toString();
+    }
+}
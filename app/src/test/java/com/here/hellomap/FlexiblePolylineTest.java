@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlexiblePolylineTest {
+
+    @Test
+    public void encodesTheReferenceExample() {
+        CoordinateBuffer coordinates = new CoordinateBuffer();
+        coordinates.add(50.1022829, 8.6982122);
+        coordinates.add(50.1020076, 8.6956695);
+        coordinates.add(50.1006313, 8.6914960);
+        coordinates.add(50.0987800, 8.6875156);
+
+        assertEquals("BFoz5xJ67i1B1B7PzIhaxL7Y", FlexiblePolyline.encode(coordinates, 5));
+    }
+
+    @Test
+    public void roundTripsRandomPolylines() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            int precision = random.nextInt(11);
+            int count = random.nextInt(50);
+            CoordinateBuffer coordinates = new CoordinateBuffer();
+            for (int i = 0; i < count; i++) {
+                coordinates.add(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            }
+
+            CoordinateBuffer decoded = new CoordinateBuffer();
+            FlexiblePolyline.decode(FlexiblePolyline.encode(coordinates, precision), decoded);
+
+            assertEquals(count, decoded.size());
+            double tolerance = 0.5 / Math.pow(10, precision) + 1e-9;
+            for (int i = 0; i < count; i++) {
+                assertEquals(coordinates.getLatitude(i), decoded.getLatitude(i), tolerance);
+                assertEquals(coordinates.getLongitude(i), decoded.getLongitude(i), tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsTheThirdDimension() {
+        Random random = new Random(7);
+        int[] thirdDimensions = {FlexiblePolyline.THIRD_DIMENSION_LEVEL, FlexiblePolyline.THIRD_DIMENSION_ALTITUDE,
+                FlexiblePolyline.THIRD_DIMENSION_ELEVATION, FlexiblePolyline.THIRD_DIMENSION_CUSTOM1,
+                FlexiblePolyline.THIRD_DIMENSION_CUSTOM2};
+        for (int iteration = 0; iteration < 200; iteration++) {
+            int precision = random.nextInt(8);
+            int thirdDimension = thirdDimensions[random.nextInt(thirdDimensions.length)];
+            int thirdDimensionPrecision = random.nextInt(4);
+            int count = 1 + random.nextInt(30);
+            double[] values = new double[count * 3];
+            StringBuilder builder = new StringBuilder();
+            FlexiblePolyline.Encoder encoder =
+                    new FlexiblePolyline.Encoder(builder, precision, thirdDimension, thirdDimensionPrecision);
+            for (int i = 0; i < count; i++) {
+                values[i * 3] = random.nextDouble() * 180 - 90;
+                values[i * 3 + 1] = random.nextDouble() * 360 - 180;
+                values[i * 3 + 2] = random.nextDouble() * 20_000 - 1_000;
+                encoder.add(values[i * 3], values[i * 3 + 1], values[i * 3 + 2]);
+            }
+
+            FlexiblePolyline.Decoder decoder = new FlexiblePolyline.Decoder(builder);
+            assertEquals(precision, decoder.getPrecision());
+            assertEquals(thirdDimension, decoder.getThirdDimension());
+            assertEquals(thirdDimensionPrecision, decoder.getThirdDimensionPrecision());
+            double tolerance = 0.5 / Math.pow(10, precision) + 1e-9;
+            double thirdDimensionTolerance = 0.5 / Math.pow(10, thirdDimensionPrecision) + 1e-9;
+            for (int i = 0; i < count; i++) {
+                assertTrue(decoder.next());
+                assertEquals(values[i * 3], decoder.getLatitude(), tolerance);
+                assertEquals(values[i * 3 + 1], decoder.getLongitude(), tolerance);
+                assertEquals(values[i * 3 + 2], decoder.getThirdDimensionValue(), thirdDimensionTolerance);
+            }
+            assertFalse(decoder.next());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnUnknownVersion() {
+        new FlexiblePolyline.Decoder("CFoz5xJ67i1B");
+    }
+}
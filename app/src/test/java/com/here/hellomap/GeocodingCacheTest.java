@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeocodingCacheTest {
+
+    private static final long ONE_DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void answersRepeatedLookupsFromTheCache() {
+        StubGeocoder geocoder = new StubGeocoder();
+        geocoder.put("Invalidenstraße 116, Berlin", new GeocodingCache.Result("HERE", "Invalidenstraße 116", 52.53, 13.38));
+        GeocodingCache cache = new GeocodingCache(geocoder, 10, ONE_DAY_MILLIS, 5, new Metrics());
+
+        List<GeocodingCache.Result> first = geocode(cache, "Invalidenstraße 116, Berlin", 52.52, 13.40);
+        List<GeocodingCache.Result> second = geocode(cache, "  invalidenstraße 116 berlin.", 52.521, 13.401);
+
+        assertEquals(1, geocoder.getRequestCount());
+        assertEquals(1, first.size());
+        assertEquals("HERE", second.get(0).title);
+        assertEquals(0.5, cache.getHitRate(), 0);
+        assertEquals(1, cache.getHitLatency().getCount());
+        assertEquals(1, cache.getMissLatency().getCount());
+    }
+
+    @Test
+    public void asksAgainFromAnotherCellAndForEmptyResults() {
+        StubGeocoder geocoder = new StubGeocoder();
+        geocoder.put("Main Street 1", new GeocodingCache.Result("Main Street 1", null, 52.5, 13.4));
+        GeocodingCache cache = new GeocodingCache(geocoder, 10, ONE_DAY_MILLIS, 5, new Metrics());
+
+        geocode(cache, "Main Street 1", 52.5, 13.4);
+        geocode(cache, "Main Street 1", 48.1, 11.6);
+        assertTrue(geocode(cache, "Nowhere 7", 52.5, 13.4).isEmpty());
+        geocode(cache, "Nowhere 7", 52.5, 13.4);
+
+        assertEquals(4, geocoder.getRequestCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void saveAndLoadKeepMissingTexts() throws IOException {
+        StubGeocoder geocoder = new StubGeocoder();
+        geocoder.put("Depot", new GeocodingCache.Result(null, "Hafenstraße 3", 53.54, 9.98));
+        geocoder.put("Gate 4", new GeocodingCache.Result("Gate 4", null, 53.55, 9.99));
+        GeocodingCache cache = new GeocodingCache(geocoder, 10, ONE_DAY_MILLIS, 5, new Metrics());
+        geocode(cache, "Depot", 53.5, 10.0);
+        geocode(cache, "Gate 4", 53.5, 10.0);
+        File file = new File(folder.getRoot(), "geocoding.bin");
+
+        cache.save(file);
+        GeocodingCache loaded = new GeocodingCache(geocoder, 10, ONE_DAY_MILLIS, 5, new Metrics());
+        loaded.load(file);
+
+        assertEquals(2, loaded.size());
+        GeocodingCache.Result depot = geocode(loaded, "depot", 53.5, 10.0).get(0);
+        assertNull(depot.title);
+        assertEquals("Hafenstraße 3", depot.addressText);
+        GeocodingCache.Result gate = geocode(loaded, "gate 4", 53.5, 10.0).get(0);
+        assertEquals("Gate 4", gate.title);
+        assertNull(gate.addressText);
+        assertEquals(53.55, gate.latitude, 0);
+        assertEquals(2, geocoder.getRequestCount());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedLookup() {
+        StubGeocoder geocoder = new StubGeocoder();
+        for (String query : new String[]{"a", "b", "c"}) {
+            geocoder.put(query, new GeocodingCache.Result(query, query, 0, 0));
+        }
+        GeocodingCache cache = new GeocodingCache(geocoder, 2, ONE_DAY_MILLIS, 5, new Metrics());
+
+        geocode(cache, "a", 0, 0);
+        geocode(cache, "b", 0, 0);
+        geocode(cache, "a", 0, 0);
+        geocode(cache, "c", 0, 0);
+        geocode(cache, "a", 0, 0);
+        geocode(cache, "b", 0, 0);
+
+        assertEquals(2, cache.size());
+        assertEquals(4, geocoder.getRequestCount());
+    }
+
+    @Test
+    public void encodesGeohashes() {
+        assertEquals("u4pruydqqvj", GeocodingCache.geohash(57.64911, 10.40744, 11));
+        assertEquals("s0000", GeocodingCache.geohash(0, 0, 5));
+    }
+
+    private static List<GeocodingCache.Result> geocode(GeocodingCache cache, String query, double latitude,
+                                                      double longitude) {
+        final List<GeocodingCache.Result> found = new ArrayList<>();
+        cache.geocode(query, latitude, longitude, new GeocodingCache.Callback() {
+            @Override
+            public void onGeocoded(String error, List<GeocodingCache.Result> results) {
+                assertNull(error);
+                found.addAll(results);
+            }
+        });
+        return found;
+    }
+}
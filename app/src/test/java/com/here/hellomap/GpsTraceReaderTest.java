@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GpsTraceReaderTest {
+
+    @Test
+    public void readsGpxTrackPointsSpanningLines() throws IOException {
+        String gpx = "<gpx><trk><trkseg>\n"
+                + "<trkpt lat=\"52.5\" lon=\"13.4\"><time>2021-03-04T05:06:07Z</time></trkpt>"
+                + "<trkpt lat='52.6'\n lon='13.5'>\n<time>2021-03-04T05:06:08.250Z</time>\n"
+                + "<extensions><gpxtpx:course>90.5</gpxtpx:course></extensions>\n</trkpt>\n"
+                + "</trkseg></trk></gpx>";
+
+        GpsTrace trace = GpsTraceReader.read(new StringReader(gpx), GpsTraceReader.Format.GPX);
+
+        assertEquals(2, trace.size());
+        assertEquals(1_614_834_367_000L, trace.getTimeInMillis(0));
+        assertEquals(52.5, trace.getLatitude(0), 0);
+        assertTrue(Double.isNaN(trace.getBearingInDegrees(0)));
+        assertEquals(1_614_834_368_250L, trace.getTimeInMillis(1));
+        assertEquals(13.5, trace.getLongitude(1), 0);
+        assertEquals(90.5, trace.getBearingInDegrees(1), 0);
+    }
+
+    @Test
+    public void readsRmcSentencesAndSkipsTheRest() throws IOException {
+        String nmea = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47\n"
+                + "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A\n"
+                // Wrong checksum and a void fix.
+                + "$GPRMC,123520,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6B\n"
+                + "$GPRMC,123521,V,4807.038,S,01131.000,W,022.4,084.4,230394,003.1,W\n";
+
+        GpsTrace trace = GpsTraceReader.read(new StringReader(nmea), GpsTraceReader.Format.NMEA);
+
+        assertEquals(1, trace.size());
+        assertEquals(764_426_119_000L, trace.getTimeInMillis(0));
+        assertEquals(48 + 7.038 / 60, trace.getLatitude(0), 1e-9);
+        assertEquals(11 + 31.0 / 60, trace.getLongitude(0), 1e-9);
+        assertEquals(84.4, trace.getBearingInDegrees(0), 0);
+    }
+
+    @Test
+    public void readsCsvWithHeaderAndComments() throws IOException {
+        String csv = "time,latitude,longitude,bearing\n"
+                + "# recorded on a test drive\n"
+                + "1000,52.5,13.4,45\n"
+                + "2000, 52.6 , 13.5\n";
+
+        GpsTrace trace = GpsTraceReader.read(new StringReader(csv), GpsTraceReader.Format.CSV);
+
+        assertEquals(2, trace.size());
+        assertEquals(45, trace.getBearingInDegrees(0), 0);
+        assertEquals(52.6, trace.getLatitude(1), 0);
+        assertTrue(Double.isNaN(trace.getBearingInDegrees(1)));
+        assertEquals(1000, trace.getDurationInMillis());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsACsvLineWithoutPosition() throws IOException {
+        GpsTraceReader.read(new StringReader("1000,52.5\n"), GpsTraceReader.Format.CSV);
+    }
+
+    @Test
+    public void appliesTimeZoneOffsets() throws IOException {
+        assertEquals(GpsTraceReader.parseIsoTime("2021-03-04T05:06:07Z"),
+                GpsTraceReader.parseIsoTime("2021-03-04T07:36:07+02:30"));
+    }
+}
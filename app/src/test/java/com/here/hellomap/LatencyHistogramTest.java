@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void reportsNothingWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0, histogram.getMeanNanos(), 0);
+    }
+
+    @Test
+    public void percentilesStayWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMaxNanos());
+        assertEquals(5_000_500, histogram.getMeanNanos(), 0.5);
+        long[] percentiles = {50, 90, 99};
+        for (long percentile : percentiles) {
+            long expected = percentile * 100_000;
+            long actual = histogram.getPercentileNanos(percentile);
+            // The upper bound of the bucket, at most one sub-bucket above the exact value.
+            assertTrue(percentile + ": " + actual, actual >= expected && actual <= expected * 9 / 8);
+        }
+        assertEquals(10_000_000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void drainMovesEverythingToTheTarget() {
+        LatencyHistogram source = new LatencyHistogram();
+        LatencyHistogram target = new LatencyHistogram();
+        source.record(1_000_000);
+        source.record(3_000_000);
+        target.record(2_000_000);
+
+        source.drainTo(target);
+
+        assertEquals(0, source.getCount());
+        assertEquals(0, source.getMaxNanos());
+        assertEquals(3, target.getCount());
+        assertEquals(3_000_000, target.getMaxNanos());
+        assertEquals(2_000_000, target.getMeanNanos(), 0);
+    }
+
+    @Test
+    public void resetClearsAllCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time from a waypoint edit to the joined tour geometry for long tours, routed by the stub router
+ * without latency so only the leg bookkeeping and the join are measured.
+ */
+public class LegRouterBenchmark {
+
+    private static final int EDITS = 41;
+    private static final double METERS_PER_VERTEX = 15;
+    private static final String[] COUNTERS = {"route.legsReused", "route.legsRecomputed", "route.cacheHits"};
+
+    private final CarOptions carOptions = new CarOptions();
+    private final Random random = new Random(18);
+    private int joinedVertexCount;
+
+    @Test
+    public void editsOfLongTours() {
+        Benchmark.assumeEnabled();
+        // Warms up the JIT on a tour that is not reported.
+        run(30, false);
+        for (int stopCount : new int[] {30, 100, 300}) {
+            run(stopCount, true);
+        }
+    }
+
+    private void run(int stopCount, boolean report) {
+        List<Waypoint> stops = new ArrayList<>();
+        for (int i = 0; i < stopCount; i++) {
+            // About two kilometers between stops.
+            stops.add(new Waypoint(new GeoCoordinates(48 + i * 0.018, 8 + random.nextDouble() * 0.01)));
+        }
+        Metrics metrics = new Metrics();
+        StubRouter router = new StubRouter(0, METERS_PER_VERTEX);
+        LegRouter legRouter = new LegRouter(router, new RouteCache<List<CoordinateBuffer>>(1000, 0, 0.0001), metrics);
+
+        long[] fullNanos = new long[1];
+        long[] fullJoinNanos = new long[1];
+        calculate(legRouter, stops, fullNanos, fullJoinNanos, 0);
+        long[] fullCounts = snapshotCounters(metrics);
+        if (report) {
+            Benchmark.report("%d stops, %,d vertices: full tour %.2f ms + join %.2f ms, %d legs recomputed, %d requests",
+                    stopCount, joinedVertexCount, fullNanos[0] / 1e6, fullJoinNanos[0] / 1e6, fullCounts[1],
+                    router.getRequestCount());
+        }
+
+        String[] names = {"move", "insert", "remove"};
+        long[][] nanos = new long[3][EDITS];
+        long[][] joinNanos = new long[3][EDITS];
+        long[][] counts = new long[3][3];
+        long[] requests = new long[3];
+        for (int edit = 0; edit < EDITS; edit++) {
+            for (int kind = 0; kind < 3; kind++) {
+                int index = 1 + random.nextInt(stops.size() - 2);
+                if (kind == 0) {
+                    stops.set(index, nearby(stops.get(index)));
+                } else if (kind == 1) {
+                    stops.add(index, nearby(stops.get(index)));
+                } else {
+                    stops.remove(index);
+                }
+                int requestsBefore = router.getRequestCount();
+                calculate(legRouter, stops, nanos[kind], joinNanos[kind], edit);
+                long[] editCounts = snapshotCounters(metrics);
+                for (int i = 0; i < editCounts.length; i++) {
+                    counts[kind][i] += editCounts[i];
+                }
+                requests[kind] += router.getRequestCount() - requestsBefore;
+            }
+        }
+        if (!report) {
+            return;
+        }
+        for (int kind = 0; kind < 3; kind++) {
+            Benchmark.report("  %-6s %.3f ms + join %.3f ms, per edit %.1f legs reused, %.1f recomputed,"
+                            + " %.1f cache hits, %.1f requests",
+                    names[kind], median(nanos[kind]) / 1e6, median(joinNanos[kind]) / 1e6,
+                    (double) counts[kind][0] / EDITS, (double) counts[kind][1] / EDITS,
+                    (double) counts[kind][2] / EDITS, (double) requests[kind] / EDITS);
+        }
+    }
+
+    private void calculate(LegRouter legRouter, List<Waypoint> stops, final long[] nanos, final long[] joinNanos,
+                           final int slot) {
+        final long startNanos = System.nanoTime();
+        // The stub router answers right away, so the listener runs before calculate returns.
+        legRouter.calculate(stops, carOptions, new LegRouter.Listener() {
+            @Override
+            public void onLegsCalculated(List<CoordinateBuffer> legs, RoutingError routingError) {
+                long calculatedNanos = System.nanoTime();
+                joinedVertexCount = RouteLayer.join(legs).size();
+                joinNanos[slot] = System.nanoTime() - calculatedNanos;
+                nanos[slot] = calculatedNanos - startNanos;
+            }
+        });
+    }
+
+    // Legs reused, recomputed and answered by the cache since the previous call, read from the export.
+    private static long[] snapshotCounters(Metrics metrics) {
+        StringBuilder snapshot = new StringBuilder();
+        metrics.snapshot(0, snapshot);
+        long[] counts = new long[3];
+        for (String line : snapshot.toString().split("\n")) {
+            String[] fields = line.split(",");
+            if (fields.length != 3) {
+                continue;
+            }
+            int index = Arrays.asList(COUNTERS).indexOf(fields[1]);
+            if (index >= 0) {
+                counts[index] = Long.parseLong(fields[2]);
+            }
+        }
+        return counts;
+    }
+
+    private Waypoint nearby(Waypoint waypoint) {
+        return new Waypoint(new GeoCoordinates(waypoint.coordinates.latitude + (random.nextDouble() - 0.5) * 0.005,
+                waypoint.coordinates.longitude + (random.nextDouble() - 0.5) * 0.005));
+    }
+
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
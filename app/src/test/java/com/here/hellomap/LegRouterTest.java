@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LegRouterTest {
+
+    private final CarOptions carOptions = new CarOptions();
+
+    @Test
+    public void singleLegIsAnsweredFromTheCache() {
+        StubRouter router = new StubRouter(0, 100);
+        RouteCache<List<CoordinateBuffer>> cache = new RouteCache<>(10, 0, 0.0001);
+        List<Waypoint> stops = waypoints(52.5, 13.4, 52.6, 13.5);
+
+        List<CoordinateBuffer> first = calculate(new LegRouter(router, cache, new Metrics()), stops);
+        // A fresh router has no legs of its own, only the shared cache knows the route.
+        List<CoordinateBuffer> second = calculate(new LegRouter(router, cache, new Metrics()), stops);
+
+        assertEquals(1, router.getRequestCount());
+        assertEquals(1, cache.getHitCount());
+        assertSame(first.get(0), second.get(0));
+    }
+
+    @Test
+    public void tourIsSplitIntoLegsThatJoinAtTheStops() {
+        StubRouter router = new StubRouter(0, 100);
+        LegRouter legRouter = new LegRouter(router, new RouteCache<List<CoordinateBuffer>>(10, 0, 0.0001), new Metrics());
+        List<Waypoint> stops = waypoints(52.5, 13.4, 52.55, 13.45, 52.6, 13.5);
+
+        List<CoordinateBuffer> legs = calculate(legRouter, stops);
+
+        assertEquals(1, router.getRequestCount());
+        assertEquals(2, legs.size());
+        CoordinateBuffer end = legs.get(0);
+        CoordinateBuffer start = legs.get(1);
+        assertEquals(52.55, end.getLatitude(end.size() - 1), 0);
+        assertEquals(52.55, start.getLatitude(0), 0);
+    }
+
+    @Test
+    public void movedStopOnlyRoutesTheLegsTouchingIt() {
+        StubRouter router = new StubRouter(0, 100);
+        LegRouter legRouter = new LegRouter(router, new RouteCache<List<CoordinateBuffer>>(10, 0, 0.0001), new Metrics());
+        List<Waypoint> stops = waypoints(52.5, 13.4, 52.55, 13.45, 52.6, 13.5, 52.65, 13.55);
+
+        List<CoordinateBuffer> before = calculate(legRouter, stops);
+        stops.set(3, new Waypoint(new GeoCoordinates(52.7, 13.6)));
+        List<CoordinateBuffer> after = calculate(legRouter, stops);
+
+        // One tour request, then one request for the last leg.
+        assertEquals(2, router.getRequestCount());
+        assertSame(before.get(0), after.get(0));
+        assertSame(before.get(1), after.get(1));
+        assertNotSame(before.get(2), after.get(2));
+    }
+
+    private List<CoordinateBuffer> calculate(LegRouter legRouter, List<Waypoint> waypoints) {
+        final List<CoordinateBuffer> result = new ArrayList<>();
+        legRouter.calculate(waypoints, carOptions, new LegRouter.Listener() {
+            @Override
+            public void onLegsCalculated(List<CoordinateBuffer> legs, RoutingError routingError) {
+                assertNull(routingError);
+                result.addAll(legs);
+            }
+        });
+        return result;
+    }
+
+    private static List<Waypoint> waypoints(double... latLon) {
+        List<Waypoint> waypoints = new ArrayList<>();
+        for (int i = 0; i < latLon.length; i += 2) {
+            waypoints.add(new Waypoint(new GeoCoordinates(latLon[i], latLon[i + 1])));
+        }
+        return waypoints;
+    }
+}
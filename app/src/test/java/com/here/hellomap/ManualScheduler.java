@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scheduler with a virtual clock for JVM tests, tasks run only when the test advances the time.
+ */
+class ManualScheduler implements Scheduler {
+
+    private final List<Runnable> runnables = new ArrayList<>();
+    private final List<Long> dueTimes = new ArrayList<>();
+    private long nowMillis;
+
+    @Override
+    public long elapsedRealtime() {
+        return nowMillis;
+    }
+
+    @Override
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        runnables.add(runnable);
+        dueTimes.add(nowMillis + delayMillis);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable runnable) {
+        for (int i = runnables.size() - 1; i >= 0; i--) {
+            if (runnables.get(i) == runnable) {
+                runnables.remove(i);
+                dueTimes.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Moves the clock forward and runs every task that became due, in the order of their due times.
+     */
+    void advance(long millis) {
+        long targetMillis = nowMillis + millis;
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < dueTimes.size(); i++) {
+                if (dueTimes.get(i) <= targetMillis && (next == -1 || dueTimes.get(i) < dueTimes.get(next))) {
+                    next = i;
+                }
+            }
+            if (next == -1) {
+                break;
+            }
+            nowMillis = dueTimes.remove(next);
+            runnables.remove(next).run();
+        }
+        nowMillis = targetMillis;
+    }
+
+    int getPendingCount() {
+        return runnables.size();
+    }
+}
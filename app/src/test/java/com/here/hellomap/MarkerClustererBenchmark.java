@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time to cluster 100k points into every zoom level once, and the cost of a camera move afterwards,
+ * a viewport query on one precomputed level.
+ */
+public class MarkerClustererBenchmark {
+
+    private static final int POINT_COUNT = 100_000;
+
+    @Test
+    public void hundredThousandPoints() {
+        Benchmark.assumeEnabled();
+        Random random = new Random(4);
+        final CoordinateBuffer positions = new CoordinateBuffer(POINT_COUNT);
+        final List<Integer> items = new ArrayList<>(POINT_COUNT);
+        for (int i = 0; i < POINT_COUNT; i++) {
+            // Dense around a few cities like real POIs, with a thin spread between them.
+            if (random.nextInt(4) == 0) {
+                positions.add(47 + random.nextDouble() * 8, 6 + random.nextDouble() * 9);
+            } else {
+                int city = random.nextInt(10);
+                positions.add(48 + city * 0.6 + random.nextGaussian() * 0.05, 7 + city * 0.8 + random.nextGaussian() * 0.08);
+            }
+            items.add(i);
+        }
+
+        final MarkerClusterer<Integer> clusterer = new MarkerClusterer<>(0, 18, 80);
+        long allocatedBefore = Benchmark.allocatedBytes();
+        long loadNanos = Benchmark.medianNanos(2, 7, new Runnable() {
+            @Override
+            public void run() {
+                clusterer.load(positions, items);
+            }
+        });
+        long loadBytes = (Benchmark.allocatedBytes() - allocatedBefore) / 9;
+        Benchmark.report("%,d points: all zoom levels in %.1f ms, %,d KB allocated",
+                POINT_COUNT, loadNanos / 1e6, loadBytes / 1024);
+
+        final List<MarkerClusterer.Cluster<Integer>> clusters = new ArrayList<>();
+        for (final int zoom : new int[]{5, 8, 11, 14, 17}) {
+            // A phone screen of 1080 by 1920 pixels centered on the first city.
+            final double heightInDegrees = 1920 * 360 / (256 * Math.pow(2, zoom)) * Math.cos(Math.toRadians(48));
+            final double widthInDegrees = 1080 * 360 / (256 * Math.pow(2, zoom));
+            final Random pans = new Random(zoom);
+            long queryNanos = Benchmark.medianNanos(100, 1001, new Runnable() {
+                @Override
+                public void run() {
+                    clusters.clear();
+                    double south = 48 - heightInDegrees / 2 + (pans.nextDouble() - 0.5) * heightInDegrees * 0.2;
+                    double west = 7 - widthInDegrees / 2 + (pans.nextDouble() - 0.5) * widthInDegrees * 0.2;
+                    clusterer.getClusters(zoom, south, west, south + heightInDegrees, west + widthInDegrees, clusters);
+                }
+            });
+            Benchmark.report("camera move at zoom %2d: %7.1f us, %,d clusters on screen", zoom, queryNanos / 1e3,
+                    clusters.size());
+        }
+    }
+}
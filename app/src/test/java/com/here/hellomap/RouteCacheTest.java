@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RouteCacheTest {
+
+    @Test
+    public void snapsWaypointsToTheGrid() {
+        RouteCache<String> cache = new RouteCache<>(10, 0, 0.0001);
+        Options options = new Options(1, 7);
+
+        String key = cache.createKey(waypoints(52.50001, 13.40001, 52.6, 13.5), options);
+        cache.put(key, options, "route");
+
+        assertEquals(key, cache.createKey(waypoints(52.50002, 13.40002, 52.6, 13.5), options));
+        assertEquals("route", cache.get(key, options));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void optionsSharingAHashMiss() {
+        RouteCache<String> cache = new RouteCache<>(10, 0, 0.0001);
+        Options fastest = new Options(1, 7);
+        Options shortest = new Options(2, 7);
+        List<Waypoint> waypoints = waypoints(52.5, 13.4, 52.6, 13.5);
+
+        String key = cache.createKey(waypoints, fastest);
+        cache.put(key, fastest, "fastest");
+
+        assertEquals(key, cache.createKey(waypoints, shortest));
+        assertNull(cache.get(key, shortest));
+        assertEquals("fastest", cache.get(key, new Options(1, 7)));
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() {
+        RouteCache<String> cache = new RouteCache<>(2, 0, 0.0001);
+        Options options = new Options(1, 7);
+        cache.put("a", options, "a");
+        cache.put("b", options, "b");
+        cache.get("a", options);
+        cache.put("c", options, "c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("a", cache.get("a", options));
+        assertNull(cache.get("b", options));
+    }
+
+    @Test
+    public void expiresEntriesAfterTheTtl() {
+        ManualScheduler clock = new ManualScheduler();
+        RouteCache<String> cache = new RouteCache<>(10, 1000, 0.0001, clock);
+        Options options = new Options(1, 7);
+        cache.put("a", options, "a");
+
+        clock.advance(1000);
+        assertEquals("a", cache.get("a", options));
+        clock.advance(1);
+        assertNull(cache.get("a", options));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cachingRouterAsksTheRouterOnce() {
+        StubRouter router = new StubRouter(0, 100);
+        RouteCache<List<RouteComparator.Candidate>> cache = new RouteCache<>(10, 0, 0.0001);
+        RouteComparator.Router cachingRouter = RouteComparator.cachingRouter(router, cache);
+        CarOptions carOptions = new CarOptions();
+        List<Waypoint> waypoints = waypoints(52.5, 13.4, 52.6, 13.5);
+
+        List<RouteComparator.Candidate> first = calculate(cachingRouter, waypoints,
+                RouteComparator.Profile.car("car", carOptions));
+        RouteComparator.Profile again = RouteComparator.Profile.car("car again", carOptions);
+        List<RouteComparator.Candidate> second = calculate(cachingRouter, waypoints, again);
+
+        assertEquals(1, router.getRequestCount());
+        assertEquals(0.5, cache.getHitRate(), 0);
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(again, second.get(i).profile);
+            assertSame(first.get(i).geometry, second.get(i).geometry);
+            assertEquals(first.get(i).durationInSeconds, second.get(i).durationInSeconds);
+        }
+    }
+
+    @Test
+    public void cachingRouterKeepsAlternativesApart() {
+        StubRouter router = new StubRouter(0, 100);
+        RouteCache<List<RouteComparator.Candidate>> cache = new RouteCache<>(10, 0, 0.0001);
+        RouteComparator.Router cachingRouter = RouteComparator.cachingRouter(router, cache);
+        final List<Integer> sizes = new ArrayList<>();
+        CarOptions carOptions = new CarOptions();
+        List<Waypoint> waypoints = waypoints(52.5, 13.4, 52.6, 13.5);
+        RouteComparator.Router.Callback callback = new RouteComparator.Router.Callback() {
+            @Override
+            public void onCalculated(RoutingError routingError, List<RouteComparator.Candidate> candidates) {
+                sizes.add(candidates.size());
+            }
+        };
+
+        cachingRouter.calculate(waypoints, RouteComparator.Profile.car("car", carOptions), 1, callback);
+        // Equal options apart from the alternatives, more alternatives must not be answered from the cache.
+        cachingRouter.calculate(waypoints, RouteComparator.Profile.car("car", new CarOptions()), 3, callback);
+
+        assertEquals(Arrays.asList(2, 4), sizes);
+        assertEquals(2, router.getRequestCount());
+    }
+
+    private static List<RouteComparator.Candidate> calculate(RouteComparator.Router router, List<Waypoint> waypoints,
+                                                            RouteComparator.Profile profile) {
+        final List<RouteComparator.Candidate> result = new ArrayList<>();
+        router.calculate(waypoints, profile, 1, new RouteComparator.Router.Callback() {
+            @Override
+            public void onCalculated(RoutingError routingError, List<RouteComparator.Candidate> candidates) {
+                assertNull(routingError);
+                result.addAll(candidates);
+            }
+        });
+        return result;
+    }
+
+    private static List<Waypoint> waypoints(double... latLon) {
+        List<Waypoint> waypoints = new ArrayList<>();
+        for (int i = 0; i < latLon.length; i += 2) {
+            waypoints.add(new Waypoint(new GeoCoordinates(latLon[i], latLon[i + 1])));
+        }
+        return waypoints;
+    }
+
+    // Value based like the SDK option classes, with a hash that can be forced to collide.
+    private static class Options {
+        final int mode;
+        final int hash;
+
+        Options(int mode, int hash) {
+            this.mode = mode;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Options && ((Options) other).mode == mode;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.CarOptions;
+import com.here.sdk.routing.HazardousGood;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.TruckOptions;
+import com.here.sdk.routing.Waypoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routing and ranking time of route comparisons for one to three profiles and up to five
+ * alternatives, with the stub router so the engine latency is left out. Ranking is timed the way
+ * {@link RouteComparator} ranks on its executor, scoring followed by duplicate removal.
+ */
+public class RouteComparatorBenchmark {
+
+    private static final double METERS_PER_VERTEX = 15;
+
+    private static int sink;
+
+    @Test
+    public void profilesAndAlternatives() {
+        Benchmark.assumeEnabled();
+        TruckOptions hazardousTruckOptions = new TruckOptions();
+        hazardousTruckOptions.hazardousGoods = new ArrayList<>();
+        hazardousTruckOptions.hazardousGoods.add(HazardousGood.COMBUSTIBLE);
+        List<RouteComparator.Profile> profiles = new ArrayList<>();
+        profiles.add(RouteComparator.Profile.car("car", new CarOptions()));
+        profiles.add(RouteComparator.Profile.truck("truck", new TruckOptions()));
+        profiles.add(RouteComparator.Profile.truck("truck (combustible)", hazardousTruckOptions));
+
+        RouteComparator.Scorer scorer = new RouteComparator.WeightedScorer(1, 0.01, 60,
+                Collections.<HazardousGood>emptyList());
+        RouteComparator.Scorer cargoScorer = new RouteComparator.WeightedScorer(1, 0.01, 60,
+                Collections.singletonList(HazardousGood.COMBUSTIBLE));
+
+        // Warms up the JIT on the largest comparison.
+        compare(stops(100), profiles, 5, scorer, null);
+        for (int lengthInKilometers : new int[] {20, 100}) {
+            List<Waypoint> stops = stops(lengthInKilometers);
+            for (int profileCount = 1; profileCount <= 3; profileCount++) {
+                for (int alternatives : new int[] {0, 1, 3, 5}) {
+                    compare(stops, profiles.subList(0, profileCount), alternatives, scorer, "");
+                }
+            }
+            compare(stops, profiles, 3, cargoScorer, ", combustible cargo");
+        }
+    }
+
+    private static void compare(final List<Waypoint> stops, final List<RouteComparator.Profile> profiles,
+                                final int alternatives, final RouteComparator.Scorer scorer, String label) {
+        final StubRouter router = new StubRouter(0, METERS_PER_VERTEX);
+        final List<RouteComparator.Candidate> candidates = new ArrayList<>();
+        long routeNanos = Benchmark.medianNanos(2, 7, new Runnable() {
+            @Override
+            public void run() {
+                candidates.clear();
+                for (RouteComparator.Profile profile : profiles) {
+                    router.calculate(stops, profile, alternatives, new RouteComparator.Router.Callback() {
+                        @Override
+                        public void onCalculated(RoutingError routingError, List<RouteComparator.Candidate> result) {
+                            candidates.addAll(result);
+                        }
+                    });
+                }
+            }
+        });
+        final int[] counts = new int[2];
+        long rankNanos = Benchmark.medianNanos(2, 7, new Runnable() {
+            @Override
+            public void run() {
+                List<RouteComparator.Candidate> ranking = new ArrayList<>(candidates.size());
+                for (RouteComparator.Candidate candidate : candidates) {
+                    candidate.score = scorer.score(candidate);
+                    if (!Double.isInfinite(candidate.score)) {
+                        ranking.add(candidate);
+                    }
+                }
+                counts[0] = candidates.size() - ranking.size();
+                counts[1] = ranking.size() - RouteComparator.removeDuplicates(ranking).size();
+                sink += ranking.size();
+            }
+        });
+        if (label != null) {
+            Benchmark.report("%,4d km, %d profiles x %d routes%s: %2d candidates of %,6d vertices,"
+                            + " route %6.2f ms, rank %6.3f ms, %d ruled out, %d duplicates",
+                    (int) (candidates.get(0).lengthInMeters / 1000), profiles.size(), alternatives + 1,
+                    label,
+                    candidates.size(), candidates.get(0).geometry.size(), routeNanos / 1e6, rankNanos / 1e6,
+                    counts[0], counts[1]);
+        }
+    }
+
+    // Five stops heading north, the stub router connects them leg by leg.
+    private static List<Waypoint> stops(int lengthInKilometers) {
+        List<Waypoint> stops = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            stops.add(new Waypoint(new GeoCoordinates(48 + i * lengthInKilometers / 4.0 / 111.32, 8 + (i % 2) * 0.01)));
+        }
+        return stops;
+    }
+}
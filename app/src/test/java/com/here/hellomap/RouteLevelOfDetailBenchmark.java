@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+/**
+ * Vertices left per level and simplification throughput for routes of 1k to 1M vertices.
+ */
+public class RouteLevelOfDetailBenchmark {
+
+    @Test
+    public void levelsOfLongRoutes() {
+        Benchmark.assumeEnabled();
+        for (int vertexCount : new int[]{1_000, 10_000, 100_000, 1_000_000}) {
+            final CoordinateBuffer route = Benchmark.createRoute(vertexCount, vertexCount);
+            int runs = vertexCount >= 1_000_000 ? 5 : 21;
+            long allocatedBefore = Benchmark.allocatedBytes();
+            long nanos = Benchmark.medianNanos(3, runs, new Runnable() {
+                @Override
+                public void run() {
+                    new RouteLevelOfDetail(route);
+                }
+            });
+            long bytesPerBuild = (Benchmark.allocatedBytes() - allocatedBefore) / (3 + runs);
+
+            RouteLevelOfDetail levelOfDetail = new RouteLevelOfDetail(route);
+            StringBuilder vertexCounts = new StringBuilder();
+            for (int level = 0; level < levelOfDetail.getLevelCount(); level++) {
+                vertexCounts.append(level == 0 ? "" : " / ").append(levelOfDetail.getVertexCount(level));
+            }
+            Benchmark.report("%,9d vertices: %8.2f ms, %6.1f M vertices/s, %,d KB allocated, levels %s",
+                    vertexCount, nanos / 1e6, vertexCount / (nanos / 1e3), bytesPerBuild / 1024, vertexCounts);
+        }
+    }
+
+    @Test
+    public void simplifyPerTolerance() {
+        Benchmark.assumeEnabled();
+        final CoordinateBuffer route = Benchmark.createRoute(100_000, 7);
+        for (final double tolerance : new double[]{1, 5, 25, 125, 625}) {
+            long nanos = Benchmark.medianNanos(3, 21, new Runnable() {
+                @Override
+                public void run() {
+                    PolylineSimplifier.simplify(route, tolerance);
+                }
+            });
+            Benchmark.report("100,000 vertices, tolerance %3.0f m: %6.2f ms, %,d vertices left",
+                    tolerance, nanos / 1e6, PolylineSimplifier.simplify(route, tolerance).size());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Fixes per second and allocation per fix of the route matcher on a long route, for a drive along
+ * the route, fixes next to it and fixes that jump to random places so every match uses the grid.
+ */
+public class RouteMatcherBenchmark {
+
+    private static final int VERTEX_COUNT = 100_000;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private static double sink;
+
+    @Test
+    public void hundredThousandVertexRoute() {
+        Benchmark.assumeEnabled();
+        CoordinateBuffer route = Benchmark.createRoute(VERTEX_COUNT, 19);
+        RouteMatcher.Listener listener = new RouteMatcher.Listener() {
+            @Override
+            public void onOffRoute(double distanceFromRouteInMeters) {
+            }
+
+            @Override
+            public void onBackOnRoute() {
+            }
+
+            @Override
+            public void onArrived() {
+            }
+        };
+
+        long startNanos = System.nanoTime();
+        RouteMatcher matcher = null;
+        for (int i = 0; i < 5; i++) {
+            matcher = new RouteMatcher(route, listener);
+        }
+        Benchmark.report("build index for %,d vertices: %.1f ms", VERTEX_COUNT, (System.nanoTime() - startNanos) / 5e6);
+
+        Random random = new Random(19);
+        // One fix per vertex with 5 meters of noise, the vertices are about 15 meters apart.
+        double[] drive = fixes(route, random, 5, 0);
+        double[] offset = fixes(route, random, 5, 100);
+        double[] jumps = new double[2 * VERTEX_COUNT];
+        for (int i = 0; i < jumps.length; i += 2) {
+            int vertex = random.nextInt(VERTEX_COUNT);
+            jumps[i] = route.getLatitude(vertex);
+            jumps[i + 1] = route.getLongitude(vertex);
+        }
+
+        run("drive along the route", matcher, drive, false);
+        run("100 m off the route", matcher, offset, false);
+        run("random jumps", matcher, jumps, true);
+    }
+
+    private static void run(String name, final RouteMatcher matcher, final double[] fixes, final boolean reset) {
+        Runnable body = new Runnable() {
+            @Override
+            public void run() {
+                matcher.reset();
+                for (int i = 0; i < fixes.length; i += 2) {
+                    if (reset) {
+                        matcher.reset();
+                    }
+                    matcher.update(fixes[i], fixes[i + 1], Double.NaN);
+                    sink += matcher.getDistanceAlongRoute();
+                }
+            }
+        };
+        long nanos = Benchmark.medianNanos(3, 9, body);
+        long allocatedBefore = Benchmark.allocatedBytes();
+        body.run();
+        long allocated = Benchmark.allocatedBytes() - allocatedBefore;
+        int fixCount = fixes.length / 2;
+        Benchmark.report("%-22s %,11.0f fixes/s, %.3f us/fix, %.4f bytes allocated per fix",
+                name, fixCount / (nanos / 1e9), nanos / 1e3 / fixCount, (double) allocated / fixCount);
+    }
+
+    private static double[] fixes(CoordinateBuffer route, Random random, double noiseInMeters,
+                                  double offsetInMeters) {
+        double[] fixes = new double[2 * route.size()];
+        for (int i = 0, vertex = 0; i < fixes.length; i += 2, vertex++) {
+            double longitudeScale = Math.cos(Math.toRadians(route.getLatitude(vertex)));
+            double north = random.nextGaussian() * noiseInMeters + offsetInMeters;
+            double east = random.nextGaussian() * noiseInMeters;
+            fixes[i] = route.getLatitude(vertex) + north / METERS_PER_DEGREE;
+            fixes[i + 1] = route.getLongitude(vertex) + east / (METERS_PER_DEGREE * longitudeScale);
+        }
+        return fixes;
+    }
+}
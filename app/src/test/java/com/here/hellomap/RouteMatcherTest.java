@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RouteMatcherTest {
+
+    private final CountingListener listener = new CountingListener();
+    private RouteMatcher matcher;
+
+    @Before
+    public void setUp() {
+        // Straight east along the equator, about 5.5 km with a vertex every 111 meters.
+        CoordinateBuffer route = new CoordinateBuffer();
+        for (int i = 0; i <= 50; i++) {
+            route.add(0, i * 0.001);
+        }
+        matcher = new RouteMatcher(route, listener);
+    }
+
+    @Test
+    public void snapsAFixToTheRoute() {
+        matcher.update(0.0001, 0.0105, 90);
+
+        assertEquals(0, matcher.getMatchedLatitude(), 1e-9);
+        assertEquals(0.0105, matcher.getMatchedLongitude(), 1e-9);
+        assertEquals(alongEquator(0.0105), matcher.getDistanceAlongRoute(), 1);
+        assertEquals(CoordinateBuffer.distanceInMeters(0, 0, 0.0001, 0), matcher.getDistanceFromRoute(), 1);
+        assertEquals(10, matcher.getSegmentIndex());
+        assertFalse(matcher.isOffRoute());
+    }
+
+    @Test
+    public void progressDoesNotJitterBackwards() {
+        matcher.update(0, 0.0105, 90);
+        double progress = matcher.getDistanceAlongRoute();
+        matcher.update(0, 0.01049, 90);
+
+        assertEquals(progress, matcher.getDistanceAlongRoute(), 0);
+    }
+
+    @Test
+    public void reportsOffRouteOnlyAfterSeveralFixes() {
+        matcher.update(0, 0.01, 90);
+        matcher.update(0.001, 0.011, 90);
+        matcher.update(0.001, 0.012, 90);
+        assertEquals(0, listener.offRoute);
+
+        matcher.update(0.001, 0.013, 90);
+        assertEquals(1, listener.offRoute);
+        assertTrue(matcher.isOffRoute());
+
+        matcher.update(0.001, 0.014, 90);
+        assertEquals(1, listener.offRoute);
+
+        matcher.update(0, 0.015, 90);
+        assertEquals(0, listener.backOnRoute);
+        matcher.update(0, 0.016, 90);
+        assertEquals(1, listener.backOnRoute);
+        assertFalse(matcher.isOffRoute());
+    }
+
+    @Test
+    public void findsTheRouteAgainAfterAJump() {
+        matcher.update(0, 0.001, 90);
+        matcher.update(0, 0.045, 90);
+
+        assertEquals(alongEquator(0.045), matcher.getDistanceAlongRoute(), 1);
+    }
+
+    @Test
+    public void reportsArrivalOnce() {
+        matcher.update(0, 0.0499, 90);
+        matcher.update(0, 0.04995, 90);
+        matcher.update(0, 0.05, 90);
+
+        assertEquals(1, listener.arrived);
+        assertTrue(matcher.hasArrived());
+    }
+
+    private static double alongEquator(double longitude) {
+        return CoordinateBuffer.distanceInMeters(0, 0, 0, longitude);
+    }
+
+    private static class CountingListener implements RouteMatcher.Listener {
+        int offRoute;
+        int backOnRoute;
+        int arrived;
+
+        @Override
+        public void onOffRoute(double distanceFromRouteInMeters) {
+            offRoute++;
+        }
+
+        @Override
+        public void onBackOnRoute() {
+            backOnRoute++;
+        }
+
+        @Override
+        public void onArrived() {
+            arrived++;
+        }
+    }
+}
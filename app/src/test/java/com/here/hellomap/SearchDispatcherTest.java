@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.search.Place;
+import com.here.sdk.search.SearchCallback;
+import com.here.sdk.search.SearchError;
+import com.here.sdk.search.SuggestCallback;
+import com.here.sdk.search.Suggestion;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchDispatcherTest {
+
+    private static final GeoCoordinates CENTER = new GeoCoordinates(52.52, 13.405);
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    @Test
+    public void debouncesSuggestionsWhileTyping() {
+        StubSearchBackend backend = new StubSearchBackend(100, scheduler);
+        SearchDispatcher dispatcher = new SearchDispatcher(backend, 300, scheduler);
+        Suggestions first = new Suggestions();
+        Suggestions last = new Suggestions();
+
+        dispatcher.suggest("b", CENTER, null, first);
+        scheduler.advance(200);
+        dispatcher.suggest("be", CENTER, null, first);
+        scheduler.advance(200);
+        dispatcher.suggest("ber", CENTER, null, last);
+        scheduler.advance(299);
+        assertEquals(0, backend.getRequestCount());
+
+        scheduler.advance(101);
+        assertEquals(1, backend.getRequestCount());
+        assertEquals(0, first.count);
+        assertEquals(1, last.count);
+        assertEquals(3, dispatcher.getRequestCount());
+        assertEquals(1, dispatcher.getEngineCallCount());
+    }
+
+    @Test
+    public void coalescedSearchesAnswerEveryCaller() {
+        StubSearchBackend backend = new StubSearchBackend(100, scheduler);
+        SearchDispatcher dispatcher = new SearchDispatcher(backend, 300, scheduler);
+        Results first = new Results();
+        Results second = new Results();
+
+        dispatcher.searchAddress("Invalidenstr. 116", CENTER, null, first);
+        scheduler.advance(50);
+        dispatcher.searchAddress("invalidenstr. 116 ", new GeoCoordinates(52.5201, 13.4051), null, second);
+        scheduler.advance(50);
+
+        assertEquals(1, backend.getRequestCount());
+        assertEquals(1, dispatcher.getCoalescedCount());
+        assertEquals(1, first.count);
+        assertEquals(1, second.count);
+    }
+
+    @Test
+    public void synchronousAnswerLeavesNothingInFlight() {
+        StubSearchBackend backend = new StubSearchBackend(0, scheduler);
+        SearchDispatcher dispatcher = new SearchDispatcher(backend, 300, scheduler);
+        Results first = new Results();
+        Results second = new Results();
+
+        dispatcher.searchPlaces("pizza", CENTER, null, first);
+        dispatcher.searchPlaces("pizza", CENTER, null, second);
+
+        assertEquals(2, backend.getRequestCount());
+        assertEquals(0, dispatcher.getCoalescedCount());
+        assertEquals(1, first.count);
+        assertEquals(1, second.count);
+
+        // Nothing is in flight, so cancelling must not touch the finished handles.
+        dispatcher.cancelAll();
+        assertEquals(0, backend.getCancelledCount());
+        assertEquals(0, dispatcher.getCancelledCount());
+    }
+
+    @Test
+    public void newerSearchCancelsTheOlderOne() {
+        StubSearchBackend backend = new StubSearchBackend(100, scheduler);
+        SearchDispatcher dispatcher = new SearchDispatcher(backend, 300, scheduler);
+        Results older = new Results();
+        Results newer = new Results();
+
+        dispatcher.searchPlaces("pizza", CENTER, null, older);
+        scheduler.advance(50);
+        dispatcher.searchPlaces("pasta", CENTER, null, newer);
+        scheduler.advance(100);
+
+        assertEquals(2, backend.getRequestCount());
+        assertEquals(1, backend.getCancelledCount());
+        assertEquals(0, older.count);
+        assertEquals(1, newer.count);
+    }
+
+    @Test
+    public void cancelSuggestionsDropsPendingAndInFlightRequests() {
+        StubSearchBackend backend = new StubSearchBackend(100, scheduler);
+        SearchDispatcher dispatcher = new SearchDispatcher(backend, 300, scheduler);
+        Suggestions inFlight = new Suggestions();
+        Suggestions pending = new Suggestions();
+
+        dispatcher.suggest("ber", CENTER, null, inFlight);
+        scheduler.advance(350);
+        dispatcher.suggest("berl", CENTER, null, pending);
+        dispatcher.cancelSuggestions();
+        scheduler.advance(1000);
+
+        assertEquals(1, backend.getRequestCount());
+        assertEquals(1, backend.getCancelledCount());
+        assertEquals(0, inFlight.count);
+        assertEquals(0, pending.count);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    private static class Suggestions implements SuggestCallback {
+        int count;
+
+        @Override
+        public void onSuggestCompleted(SearchError searchError, List<Suggestion> list) {
+            count++;
+        }
+    }
+
+    private static class Results implements SearchCallback {
+        int count;
+
+        @Override
+        public void onSearchCompleted(SearchError searchError, List<Place> list) {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SessionJournalTest {
+
+    // Header, then per waypoint a length, a type byte, two doubles and a CRC.
+    private static final int HEADER_SIZE = 8;
+    private static final int WAYPOINT_RECORD_SIZE = 4 + 1 + 16 + 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysWaypointsAndRoute() throws IOException {
+        File file = folder.newFile("session.journal");
+        SessionJournal journal = SessionJournal.open(file);
+        journal.appendWaypoint(52.5, 13.4);
+        journal.appendWaypoint(52.6, 13.5);
+        CoordinateBuffer route = new CoordinateBuffer();
+        route.add(52.5, 13.4);
+        route.add(52.55, 13.45);
+        route.add(52.6, 13.5);
+        journal.setRoute(route);
+        journal.close();
+
+        SessionJournal.Session session = SessionJournal.open(file).getSession();
+        assertEquals(2, session.waypoints.size());
+        assertEquals(13.5, session.waypoints.getLongitude(1), 0);
+        assertNotNull(session.route);
+        assertEquals(3, session.route.size());
+        assertEquals(52.55, session.route.getLatitude(1), 1e-6);
+    }
+
+    @Test
+    public void dropsACorruptTailAndKeepsAppending() throws IOException {
+        File file = folder.newFile("session.journal");
+        SessionJournal journal = SessionJournal.open(file);
+        journal.appendWaypoint(1, 1);
+        journal.appendWaypoint(2, 2);
+        journal.appendWaypoint(3, 3);
+        journal.close();
+
+        // Flip a byte inside the payload of the last record, its CRC no longer matches.
+        flipByte(file, HEADER_SIZE + 2 * WAYPOINT_RECORD_SIZE + 6);
+
+        journal = SessionJournal.open(file);
+        assertEquals(2, journal.getSession().waypoints.size());
+        assertEquals(HEADER_SIZE + 2 * WAYPOINT_RECORD_SIZE, journal.getSizeInBytes());
+
+        // The next record overwrites the torn one instead of hiding behind it.
+        journal.appendWaypoint(4, 4);
+        journal.close();
+        CoordinateBuffer waypoints = SessionJournal.open(file).getSession().waypoints;
+        assertEquals(3, waypoints.size());
+        assertEquals(4, waypoints.getLatitude(2), 0);
+    }
+
+    @Test
+    public void stopsAtALengthThatRunsPastTheEnd() throws IOException {
+        File file = folder.newFile("session.journal");
+        SessionJournal journal = SessionJournal.open(file);
+        journal.appendWaypoint(1, 1);
+        journal.appendWaypoint(2, 2);
+        journal.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(HEADER_SIZE + WAYPOINT_RECORD_SIZE);
+            randomAccessFile.writeInt(Integer.MAX_VALUE - 4);
+        }
+
+        CoordinateBuffer waypoints = SessionJournal.open(file).getSession().waypoints;
+        assertEquals(1, waypoints.size());
+        assertEquals(1, waypoints.getLongitude(0), 0);
+    }
+
+    @Test
+    public void clearDropsEarlierState() throws IOException {
+        File file = folder.newFile("session.journal");
+        SessionJournal journal = SessionJournal.open(file);
+        journal.appendWaypoint(1, 1);
+        CoordinateBuffer route = new CoordinateBuffer();
+        route.add(1, 1);
+        route.add(2, 2);
+        journal.setRoute(route);
+        journal.clear();
+        journal.appendWaypoint(5, 5);
+        journal.close();
+
+        SessionJournal.Session session = SessionJournal.open(file).getSession();
+        assertEquals(1, session.waypoints.size());
+        assertEquals(5, session.waypoints.getLatitude(0), 0);
+        assertNull(session.route);
+    }
+
+    @Test
+    public void discardsAFileWithoutTheJournalHeader() throws IOException {
+        File file = folder.newFile("session.journal");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.write(new byte[]{'n', 'o', 'p', 'e', 0, 0, 0, 0, 0, 0, 0, 25});
+        }
+
+        SessionJournal journal = SessionJournal.open(file);
+        assertEquals(0, journal.getSession().waypoints.size());
+        assertEquals(HEADER_SIZE, journal.getSizeInBytes());
+        journal.close();
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xFF);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Add, move, nearest and bounding box costs of the spatial index at 10k, 100k and 1M items spread over
+ * a country, nearest against a linear scan over the same points.
+ */
+public class SpatialIndexBenchmark {
+
+    private static final int QUERY_COUNT = 10_000;
+
+    @Test
+    public void itemsAcrossACountry() {
+        Benchmark.assumeEnabled();
+        // The first round only warms up the JIT.
+        int[] itemCounts = {10_000, 10_000, 100_000, 1_000_000};
+        for (int round = 0; round < itemCounts.length; round++) {
+            int itemCount = itemCounts[round];
+            Random random = new Random(itemCount);
+            final double[] latitudes = new double[itemCount];
+            final double[] longitudes = new double[itemCount];
+            final Object[] items = new Object[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                latitudes[i] = 47 + random.nextDouble() * 8;
+                longitudes[i] = 6 + random.nextDouble() * 9;
+                items[i] = new Object();
+            }
+            final double[] queries = new double[QUERY_COUNT * 2];
+            for (int i = 0; i < queries.length; i += 2) {
+                // Taps land near an item, as on a map full of markers.
+                int target = random.nextInt(itemCount);
+                queries[i] = latitudes[target] + (random.nextDouble() - 0.5) * 0.0005;
+                queries[i + 1] = longitudes[target] + (random.nextDouble() - 0.5) * 0.0005;
+            }
+
+            final SpatialIndex<Object> index = new SpatialIndex<>();
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < itemCount; i++) {
+                index.add(latitudes[i], longitudes[i], items[i]);
+            }
+            // The first query rebuilds the tree over the tail of adds.
+            index.nearest(50, 10, 1);
+            double addNanos = (double) (System.nanoTime() - startNanos) / itemCount;
+
+            long nearestNanos = Benchmark.medianNanos(3, 11, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < queries.length; i += 2) {
+                        index.nearest(queries[i], queries[i + 1], 50);
+                    }
+                }
+            }) / QUERY_COUNT;
+            final List<Object> result = new ArrayList<>();
+            long boxNanos = Benchmark.medianNanos(3, 11, new Runnable() {
+                @Override
+                public void run() {
+                    result.clear();
+                    for (int i = 0; i < queries.length; i += 2) {
+                        // About 1 km by 1 km.
+                        index.query(queries[i] - 0.0045, queries[i + 1] - 0.0067,
+                                queries[i] + 0.0045, queries[i + 1] + 0.0067, result);
+                    }
+                }
+            }) / QUERY_COUNT;
+            long scanNanos = Benchmark.medianNanos(1, 3, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        nearestByScan(latitudes, longitudes, queries[2 * i], queries[2 * i + 1]);
+                    }
+                }
+            }) / 100;
+
+            final Random moves = new Random(1);
+            final int moveCount = itemCount / 100;
+            long moveNanos = Benchmark.medianNanos(1, 5, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < moveCount; i++) {
+                        int item = moves.nextInt(latitudes.length);
+                        index.add(latitudes[item] + 0.0001, longitudes[item], items[item]);
+                    }
+                    index.nearest(50, 10, 1);
+                }
+            }) / moveCount;
+
+            if (round == 0) {
+                continue;
+            }
+            Benchmark.report("%,9d items: add %5.0f ns, move %5d ns, nearest %5.2f us (scan %8.1f us), "
+                            + "1 km box %5.2f us with %.1f items",
+                    itemCount, addNanos, moveNanos, nearestNanos / 1e3, scanNanos / 1e3, boxNanos / 1e3,
+                    (double) result.size() / QUERY_COUNT);
+        }
+    }
+
+    private static int nearestByScan(double[] latitudes, double[] longitudes, double latitude, double longitude) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        double longitudeScale = Math.cos(Math.toRadians(latitude));
+        for (int i = 0; i < latitudes.length; i++) {
+            double dLat = latitudes[i] - latitude;
+            double dLon = (longitudes[i] - longitude) * longitudeScale;
+            double distance = dLat * dLat + dLon * dLon;
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+}
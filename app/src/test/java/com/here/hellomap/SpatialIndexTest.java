@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialIndexTest {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    @Test
+    public void matchesALinearScanWhileChanging() {
+        Random random = new Random(5);
+        SpatialIndex<Point> index = new SpatialIndex<>();
+        List<Point> points = new ArrayList<>();
+        for (int step = 0; step < 20_000; step++) {
+            int action = random.nextInt(10);
+            if (action < 5 || points.isEmpty()) {
+                Point point = new Point(52 + random.nextDouble(), 13 + random.nextDouble());
+                points.add(point);
+                index.add(point.latitude, point.longitude, point);
+            } else if (action < 8) {
+                Point point = points.remove(random.nextInt(points.size()));
+                assertTrue(index.remove(point));
+                assertFalse(index.remove(point));
+            } else if (action < 9) {
+                double latitude = 52 + random.nextDouble();
+                double longitude = 13 + random.nextDouble();
+                double radiusInMeters = random.nextDouble() * 2000;
+                Point expected = nearest(points, latitude, longitude, radiusInMeters);
+                Point actual = index.nearest(latitude, longitude, radiusInMeters);
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    // Ties between equally distant points may go either way.
+                    assertEquals(distanceSquared(expected, latitude, longitude),
+                            distanceSquared(actual, latitude, longitude), 0);
+                }
+            } else {
+                double south = 52 + random.nextDouble() * 0.9;
+                double west = 13 + random.nextDouble() * 0.9;
+                List<Point> result = new ArrayList<>();
+                index.query(south, west, south + 0.1, west + 0.1, result);
+                List<Point> expected = new ArrayList<>();
+                for (Point point : points) {
+                    if (point.latitude >= south && point.latitude <= south + 0.1
+                            && point.longitude >= west && point.longitude <= west + 0.1) {
+                        expected.add(point);
+                    }
+                }
+                assertEquals(expected.size(), result.size());
+                assertEquals(new HashSet<>(expected), new HashSet<>(result));
+            }
+            assertEquals(points.size(), index.size());
+        }
+    }
+
+    @Test
+    public void addingAgainMovesTheItem() {
+        SpatialIndex<String> index = new SpatialIndex<>();
+        String depot = "depot";
+        index.add(52.5, 13.4, depot);
+        index.add(48.1, 11.6, depot);
+
+        assertEquals(1, index.size());
+        assertNull(index.nearest(52.5, 13.4, 100));
+        assertSame(depot, index.nearest(48.1, 11.6, 100));
+    }
+
+    @Test
+    public void clearEmptiesTheIndex() {
+        SpatialIndex<String> index = new SpatialIndex<>();
+        for (int i = 0; i < 1000; i++) {
+            index.add(52.5, 13.4 + i * 0.001, "item " + i);
+        }
+        index.nearest(52.5, 13.4, 10);
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertNull(index.nearest(52.5, 13.4, 1000));
+        List<String> result = new ArrayList<>();
+        index.query(-90, -180, 90, 180, result);
+        assertEquals(Collections.<String>emptyList(), result);
+    }
+
+    private static Point nearest(List<Point> points, double latitude, double longitude, double radiusInMeters) {
+        double radius = radiusInMeters / METERS_PER_DEGREE;
+        Point best = null;
+        double bestDistanceSquared = radius * radius;
+        for (Point point : points) {
+            double distanceSquared = distanceSquared(point, latitude, longitude);
+            if (distanceSquared <= bestDistanceSquared) {
+                bestDistanceSquared = distanceSquared;
+                best = point;
+            }
+        }
+        return best;
+    }
+
+    // Same planar approximation as the index.
+    private static double distanceSquared(Point point, double latitude, double longitude) {
+        double dLat = point.latitude - latitude;
+        double dLon = (point.longitude - longitude) * Math.cos(Math.toRadians(latitude));
+        return dLat * dLat + dLon * dLon;
+    }
+
+    private static class Point {
+        final double latitude;
+        final double longitude;
+
+        Point(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tour length against time budget for growing numbers of stops, relative to the plain greedy tour.
+ */
+public class StopSequenceOptimizerBenchmark {
+
+    @Test
+    public void qualityAgainstTime() {
+        Benchmark.assumeEnabled();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        StopSequenceOptimizer optimizer = new StopSequenceOptimizer(pool);
+        try {
+            for (int count : new int[]{10, 50, 100, 250, 500}) {
+                CoordinateBuffer stops = createStops(count);
+                double[] costs = StopSequenceOptimizer.createCostMatrix(stops);
+                // A zero budget stops after the greedy tours, the baseline the improvement is measured against.
+                double greedyLength = StopSequenceOptimizer.pathLength(costs, count,
+                        optimizer.optimize(stops, true, false, 0));
+                for (long budgetMillis : new long[]{10, 50, 250, 1000}) {
+                    long startNanos = System.nanoTime();
+                    int[] order = optimizer.optimize(stops, true, false, budgetMillis);
+                    double elapsedMillis = (System.nanoTime() - startNanos) / 1e6;
+                    double length = StopSequenceOptimizer.pathLength(costs, count, order);
+                    Benchmark.report("%4d stops, budget %5d ms: %7.1f ms, %5.1f %% shorter than greedy",
+                            count, budgetMillis, elapsedMillis, 100 * (1 - length / greedyLength));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static CoordinateBuffer createStops(int count) {
+        Random random = new Random(count);
+        CoordinateBuffer stops = new CoordinateBuffer(count);
+        for (int i = 0; i < count; i++) {
+            stops.add(52.4 + random.nextDouble() * 0.2, 13.3 + random.nextDouble() * 0.3);
+        }
+        return stops;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StopSequenceOptimizerTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool() {
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterClass
+    public static void shutDownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void keepsShortSequences() {
+        CoordinateBuffer stops = new CoordinateBuffer();
+        stops.add(0, 0);
+        stops.add(0, 2);
+        stops.add(0, 1);
+
+        assertArrayEquals(new int[]{0, 1, 2}, new StopSequenceOptimizer(pool).optimize(stops, true, false, 100));
+    }
+
+    @Test
+    public void untanglesStopsOnALine() {
+        CoordinateBuffer stops = new CoordinateBuffer();
+        double[] longitudes = {0, 0.05, 0.01, 0.04, 0.02, 0.03};
+        for (double longitude : longitudes) {
+            stops.add(0, longitude);
+        }
+
+        int[] order = new StopSequenceOptimizer(pool).optimize(stops, true, false, 1000);
+
+        assertArrayEquals(new int[]{0, 2, 4, 5, 3, 1}, order);
+    }
+
+    @Test
+    public void answersOnAPoolThreadWithoutBlockingTheCaller() throws InterruptedException {
+        CoordinateBuffer stops = new CoordinateBuffer();
+        double[] longitudes = {0, 0.05, 0.01, 0.04, 0.02, 0.03};
+        for (double longitude : longitudes) {
+            stops.add(0, longitude);
+        }
+        final int[][] result = new int[1][];
+        final boolean[] onPoolThread = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+
+        new StopSequenceOptimizer(pool).optimize(stops, true, false, 1000, new StopSequenceOptimizer.Callback() {
+            @Override
+            public void onOptimized(int[] order) {
+                result[0] = order;
+                onPoolThread[0] = ForkJoinTask.getPool() == pool;
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(onPoolThread[0]);
+        assertArrayEquals(new int[]{0, 2, 4, 5, 3, 1}, result[0]);
+    }
+
+    @Test
+    public void neverReturnsALongerTour() {
+        Random random = new Random(3);
+        StopSequenceOptimizer optimizer = new StopSequenceOptimizer(pool);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            int count = 4 + random.nextInt(40);
+            CoordinateBuffer stops = new CoordinateBuffer();
+            for (int i = 0; i < count; i++) {
+                stops.add(52.4 + random.nextDouble() * 0.2, 13.3 + random.nextDouble() * 0.2);
+            }
+            boolean keepFirst = random.nextBoolean();
+            boolean keepLast = random.nextBoolean();
+
+            int[] order = optimizer.optimize(stops, keepFirst, keepLast, 200);
+
+            int[] sorted = order.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, sorted[i]);
+            }
+            if (keepFirst) {
+                assertEquals(0, order[0]);
+            }
+            if (keepLast) {
+                assertEquals(count - 1, order[count - 1]);
+            }
+            int[] identity = sorted;
+            double[] costs = StopSequenceOptimizer.createCostMatrix(stops);
+            assertTrue(StopSequenceOptimizer.pathLength(costs, count, order)
+                    <= StopSequenceOptimizer.pathLength(costs, count, identity));
+        }
+    }
+}
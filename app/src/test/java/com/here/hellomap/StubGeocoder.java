@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.hellomap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Geocoder that answers from a fixed table instead of the search engine, so address lookups
+ * and the geocoding cache can be exercised offline. Unknown queries resolve to no results.
+ */
+class StubGeocoder implements GeocodingCache.Geocoder {
+
+    private final Map<String, List<GeocodingCache.Result>> results = new HashMap<>();
+    private int requestCount;
+
+    synchronized void put(String query, GeocodingCache.Result result) {
+        String key = GeocodingCache.normalize(query);
+        List<GeocodingCache.Result> list = results.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            results.put(key, list);
+        }
+        list.add(result);
+    }
+
+    @Override
+    public void geocode(String query, double latitude, double longitude, GeocodingCache.Callback callback) {
+        List<GeocodingCache.Result> found;
+        synchronized (this) {
+            requestCount++;
+            found = results.get(GeocodingCache.normalize(query));
+        }
+        callback.onGeocoded(null, found == null
+                ? Collections.<GeocodingCache.Result>emptyList() : new ArrayList<>(found));
+    }
+
+    /**
+     * Number of lookups that reached this geocoder, i.e. cache misses.
+     */
+    synchronized int getRequestCount() {
+        return requestCount;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import com.google.gson.JsonParser;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * What the style pack costs at startup and what the renderer still pays on every scene load.
+ * Opening the pack and extracting it once are timed against parsing the extracted style, the
+ * renderer parses that JSON itself, Gson stands in for its parser. Needs the pack written by
+ * compileMapStyles, which runs before every build.
+ */
+public class StylePackBenchmark {
+
+    private static final String STYLE_NAME = "omv-traffic-traffic-normal-night.jss";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void extractionAgainstParsing() throws IOException {
+        Benchmark.assumeEnabled();
+        final File packFile = new File("build/generated/assets/styles/map-styles.pack");
+        Assume.assumeTrue("Run compileMapStyles first.", packFile.exists());
+
+        long openNanos = Benchmark.medianNanos(20, 101, new Runnable() {
+            @Override
+            public void run() {
+                open(packFile);
+            }
+        });
+
+        final StylePack pack = open(packFile);
+        long allocatedBefore = Benchmark.allocatedBytes();
+        long extractNanos = Benchmark.medianNanos(3, 11, new Runnable() {
+            @Override
+            public void run() {
+                extract(pack, newFolder());
+            }
+        });
+        long extractBytes = (Benchmark.allocatedBytes() - allocatedBefore) / 14;
+
+        final File extracted = extract(pack, newFolder());
+        long reuseNanos = Benchmark.medianNanos(20, 101, new Runnable() {
+            @Override
+            public void run() {
+                extract(pack, extracted.getParentFile());
+            }
+        });
+        Benchmark.report("open %.0f us, first extraction %.2f ms and %d KB allocated, later starts %.0f us",
+                openNanos / 1e3, extractNanos / 1e6, extractBytes / 1024, reuseNanos / 1e3);
+
+        File source = new File("src/main/styles", STYLE_NAME);
+        File compiled = new File(extracted, STYLE_NAME);
+        // The parser needs far more runs than one measurement to be compiled by the JIT.
+        for (int i = 0; i < 100; i++) {
+            parse(source);
+            parse(compiled);
+        }
+        report("source", source);
+        report("compiled", compiled);
+    }
+
+    private static void report(String name, final File style) {
+        long allocatedBefore = Benchmark.allocatedBytes();
+        long parseNanos = Benchmark.medianNanos(20, 51, new Runnable() {
+            @Override
+            public void run() {
+                parse(style);
+            }
+        });
+        long parseBytes = (Benchmark.allocatedBytes() - allocatedBefore) / 71;
+        Benchmark.report("%s style, %d KB: parse %.2f ms and %d KB allocated per scene load",
+                name, style.length() / 1024, parseNanos / 1e6, parseBytes / 1024);
+    }
+
+    private File newFolder() {
+        try {
+            return folder.newFolder();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static StylePack open(File packFile) {
+        try {
+            return StylePack.open(packFile);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File extract(StylePack pack, File parentDirectory) {
+        try {
+            return pack.extractTo(parentDirectory);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void parse(File style) {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(style.toPath()), StandardCharsets.UTF_8)) {
+            JsonParser.parseReader(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
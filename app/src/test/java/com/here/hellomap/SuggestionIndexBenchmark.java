@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Suggestion latency by prefix length, insert cost, memory and load time of a synthetic index of one
+ * million street names, a few of which are searched far more often than the rest.
+ */
+public class SuggestionIndexBenchmark {
+
+    private static final int ENTRY_COUNT = 1_000_000;
+    private static final String[] SYLLABLES = {"al", "an", "ber", "burg", "dorf", "el", "feld", "gar", "hau",
+            "hof", "in", "kirch", "lin", "mar", "mol", "ner", "o", "pa", "ring", "ro", "sch", "see", "stein",
+            "tal", "ten", "u", "ver", "wald", "weg", "zell"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void millionEntries() throws IOException {
+        Benchmark.assumeEnabled();
+        Random random = new Random(1);
+        long heapBefore = Benchmark.usedHeapBytes();
+        SuggestionIndex index = new SuggestionIndex();
+        String[] samples = new String[1000];
+        int sampleInterval = ENTRY_COUNT / samples.length;
+        long startNanos = System.nanoTime();
+        int added = 0;
+        while (index.size() < ENTRY_COUNT) {
+            String text = createStreet(random);
+            index.add(text, 52.3 + random.nextDouble() * 0.4, 13.1 + random.nextDouble() * 0.6);
+            if (added % sampleInterval == 0) {
+                samples[(added / sampleInterval) % samples.length] = text;
+            }
+            added++;
+        }
+        double addMicros = (System.nanoTime() - startNanos) / 1e3 / added;
+        long heapBytes = Benchmark.usedHeapBytes() - heapBefore;
+        // Skewed repeats, the first streets recorded are the popular ones.
+        Random repeats = new Random(2);
+        for (int i = 0; i < ENTRY_COUNT / 10; i++) {
+            String text = samples[(int) (samples.length * Math.pow(repeats.nextDouble(), 3))];
+            index.add(text, 52.5, 13.4);
+        }
+        assertEquals(ENTRY_COUNT, index.size());
+        Benchmark.report("%d entries: %.2f us per add, %d bytes per entry", index.size(), addMicros,
+                heapBytes / ENTRY_COUNT);
+
+        for (int length : new int[]{1, 2, 3, 5, 8}) {
+            final String[] prefixes = new String[samples.length];
+            for (int i = 0; i < samples.length; i++) {
+                prefixes[i] = samples[i].substring(0, Math.min(length, samples[i].length()));
+            }
+            final SuggestionIndex queried = index;
+            long nanos = Benchmark.medianNanos(3, 11, new Runnable() {
+                @Override
+                public void run() {
+                    for (String prefix : prefixes) {
+                        queried.suggest(prefix, 52.5, 13.4, 3);
+                    }
+                }
+            });
+            Benchmark.report("prefix of %d chars: %.1f us per suggest", length, nanos / 1e3 / prefixes.length);
+        }
+
+        File file = new File(folder.getRoot(), "suggestions.idx");
+        startNanos = System.nanoTime();
+        index.save(file);
+        double saveMillis = (System.nanoTime() - startNanos) / 1e6;
+        index = null;
+        startNanos = System.nanoTime();
+        SuggestionIndex loaded = SuggestionIndex.load(file);
+        double loadMillis = (System.nanoTime() - startNanos) / 1e6;
+        Benchmark.report("save %.0f ms, load %.0f ms, file %d bytes", saveMillis, loadMillis, file.length());
+        assertEquals(ENTRY_COUNT, loaded.size());
+    }
+
+    private static String createStreet(Random random) {
+        StringBuilder street = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            street.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        street.setCharAt(0, Character.toUpperCase(street.charAt(0)));
+        street.append(random.nextBoolean() ? "str. " : "weg ").append(1 + random.nextInt(150));
+        return street.toString();
+    }
+}
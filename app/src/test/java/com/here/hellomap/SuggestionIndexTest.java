@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019-2021 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+
+package com.here.hellomap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SuggestionIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ranksTheWholePrefixRange() {
+        SuggestionIndex index = new SuggestionIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.add(String.format("Bakery %04d", i), 52.5, 13.4);
+        }
+        // Sorts last in the range but was searched most often.
+        for (int i = 0; i < 5; i++) {
+            index.add("Bakery 9999", 52.5, 13.4);
+        }
+        index.add("Bakery 0500", 52.5, 13.4);
+
+        assertEquals(Arrays.asList("Bakery 9999", "Bakery 0500"), index.suggest("bak", 52.5, 13.4, 2));
+    }
+
+    @Test
+    public void prefersNearbyEntriesOfEqualFrequency() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("Station Far", 48.1, 11.6);
+        index.add("Station Near", 52.51, 13.41);
+
+        assertEquals(Arrays.asList("Station Near", "Station Far"), index.suggest("STATION ", 52.5, 13.4, 5));
+        assertEquals(Collections.singletonList("Station Near"), index.suggest("station n", 52.5, 13.4, 5));
+        assertTrue(index.suggest("stations", 52.5, 13.4, 5).isEmpty());
+        assertTrue(index.suggest("  ", 52.5, 13.4, 5).isEmpty());
+    }
+
+    @Test
+    public void mergeSumsFrequencies() {
+        SuggestionIndex loaded = new SuggestionIndex();
+        loaded.add("Harbor", 53.5, 10.0);
+        loaded.add("Market", 53.5, 10.0);
+        SuggestionIndex recorded = new SuggestionIndex();
+        recorded.add("Museum", 53.5, 10.0);
+        recorded.add("market", 53.5, 10.0);
+        recorded.add("market", 53.5, 10.0);
+
+        loaded.merge(recorded);
+
+        assertEquals(3, loaded.size());
+        assertEquals(Arrays.asList("Market", "Museum"), loaded.suggest("m", 53.5, 10.0, 5));
+    }
+
+    @Test
+    public void mergeKeepsTheNewerCoordinates() {
+        SuggestionIndex loaded = new SuggestionIndex();
+        loaded.add("Cafe", 48.1, 11.6);
+        loaded.add("Cinema", 52.52, 13.42);
+        SuggestionIndex recorded = new SuggestionIndex();
+        recorded.add("cafe", 52.5, 13.4);
+
+        loaded.merge(recorded);
+
+        // At equal frequency the nearer one wins, the cafe only is near with the recorded coordinates.
+        loaded.add("Cinema", 52.52, 13.42);
+        assertEquals(Arrays.asList("Cafe", "Cinema"), loaded.suggest("c", 52.5, 13.4, 2));
+    }
+
+    @Test
+    public void rankingFollowsFrequencyChanges() {
+        SuggestionIndex index = new SuggestionIndex();
+        int count = SuggestionIndex.RANKED_CANDIDATES * 4;
+        for (int i = 0; i < count; i++) {
+            index.add(String.format("Pharmacy %03d", i), 52.5, 13.4);
+        }
+        // Rarer than the rest until it is searched again, then it has to reach the ranked candidates.
+        index.add("Pharmacy 000", 52.5, 13.4);
+        for (int i = 0; i < 3; i++) {
+            index.add(String.format("Pharmacy %03d", count - 1), 52.5, 13.4);
+        }
+        index.add("Pharmacy new", 52.5, 13.4);
+
+        assertEquals(Arrays.asList(String.format("Pharmacy %03d", count - 1), "Pharmacy 000"),
+                index.suggest("ph", 52.5, 13.4, 2));
+        assertEquals(Collections.singletonList("Pharmacy new"), index.suggest("pharmacy n", 52.5, 13.4, 5));
+    }
+
+    @Test
+    public void loadedRankingMatchesTheRecordedOne() throws IOException {
+        Random random = new Random(7);
+        SuggestionIndex index = new SuggestionIndex();
+        String[] streets = {"Alexanderplatz", "Alexanderstr.", "Allee", "Bahnhofstr.", "Berliner Str."};
+        for (int i = 0; i < 2000; i++) {
+            String text = streets[random.nextInt(streets.length)] + " " + random.nextInt(300);
+            index.add(text, 52.4 + random.nextDouble() * 0.2, 13.3 + random.nextDouble() * 0.2);
+        }
+        File file = new File(folder.getRoot(), "suggestions.idx");
+        index.save(file);
+        SuggestionIndex loaded = SuggestionIndex.load(file);
+
+        for (String prefix : new String[]{"a", "al", "alexander", "alexanderp", "b", "bahnhofstr. 1", "berliner str. 29"}) {
+            assertEquals(prefix, index.suggest(prefix, 52.5, 13.4, 5), loaded.suggest(prefix, 52.5, 13.4, 5));
+        }
+    }
+
+    @Test
+    public void saveAndLoadKeepTheEntries() throws IOException {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("Zoo", 52.5, 13.4);
+        index.add("Airport", 52.5, 13.4);
+        index.add("Airport", 52.5, 13.4);
+        index.add("Aquarium", 52.5, 13.4);
+        File file = new File(folder.getRoot(), "suggestions.idx");
+
+        index.save(file);
+        assertFalse(index.isDirty());
+        SuggestionIndex loaded = SuggestionIndex.load(file);
+
+        assertEquals(3, loaded.size());
+        assertEquals(Arrays.asList("Airport", "Aquarium"), loaded.suggest("a", 52.5, 13.4, 5));
+        assertEquals(0, SuggestionIndex.load(new File(folder.getRoot(), "missing.idx")).size());
+    }
+}